@@ -0,0 +1,25 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Creates the sequence booking ids are taken from, starting after the ids already in the table.
+ * Hibernate reserves 50 ids per call to the sequence, so the increment has to match.
+ */
+public class V4__create_booking_sequence extends BaseJavaMigration {
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            long start;
+            try (ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM bookings")) {
+                rs.next();
+                start = rs.getLong(1);
+            }
+            statement.execute("CREATE SEQUENCE IF NOT EXISTS booking_seq START WITH " + start + " INCREMENT BY 50");
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Drops the unnamed CHECK(start_date >= CURRENT_TIMESTAMP) of V1, which is evaluated on every UPDATE
+ * and so rejects status changes of bookings that have already started. The start date is validated
+ * by the service on create instead.
+ */
+public class V6__drop_booking_start_check extends BaseJavaMigration {
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            List<String> constraints = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery("SELECT tc.constraint_name, cc.check_clause " +
+                    "FROM information_schema.table_constraints tc " +
+                    "JOIN information_schema.check_constraints cc ON cc.constraint_name = tc.constraint_name " +
+                    "AND cc.constraint_schema = tc.constraint_schema " +
+                    "WHERE LOWER(tc.table_name) = 'bookings' AND tc.constraint_type = 'CHECK'")) {
+                while (rs.next()) {
+                    String clause = rs.getString(2).toLowerCase(Locale.ROOT);
+                    if (clause.contains("start_date") && clause.contains("current_timestamp")) {
+                        constraints.add(rs.getString(1));
+                    }
+                }
+            }
+            for (String constraint : constraints) {
+                statement.execute("ALTER TABLE bookings DROP CONSTRAINT \"" + constraint + "\"");
+            }
+        }
+    }
+}
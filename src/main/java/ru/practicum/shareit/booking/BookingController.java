@@ -1,17 +1,36 @@
 package ru.practicum.shareit.booking;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.shareit.booking.dto.BatchBookingResult;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingSummaryDto;
 import ru.practicum.shareit.booking.dto.IncomingBookingDto;
 import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.booking.storage.BookingQuery;
+import ru.practicum.shareit.exceptions.ValidatonException;
+import ru.practicum.shareit.utils.CursorPage;
+import ru.practicum.shareit.utils.IdempotencyStore;
 
 import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.PositiveOrZero;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
+import java.util.List;
 
 @Validated
 @RestController
@@ -19,17 +38,35 @@ import java.util.Collection;
 @RequestMapping(path = "/bookings")
 public class BookingController {
     private static final String USER_ID = "X-Sharer-User-Id";
+    private static final String NEXT_CURSOR = "X-Next-Cursor";
+    private static final String TOTAL_COUNT = "X-Total-Count";
+    private static final String ITEM_COMMENTS = "item.comments";
+    private static final int MAX_BATCH_SIZE = 1000;
     private final BookingService service;
+    private final IdempotencyStore idempotencyStore;
+    private final ObjectWriter exportWriter;
 
     @Autowired
-    public BookingController(BookingService service) {
+    public BookingController(BookingService service, IdempotencyStore idempotencyStore, ObjectMapper objectMapper) {
         this.service = service;
+        this.idempotencyStore = idempotencyStore;
+        this.exportWriter = objectMapper.writerFor(BookingDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @PostMapping
     public BookingDto create(@Valid @RequestBody IncomingBookingDto incomingBookingDto,
-                             @RequestHeader(USER_ID) int bookerId) {
-        return service.create(incomingBookingDto, bookerId);
+                             @RequestHeader(USER_ID) int bookerId,
+                             @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return idempotencyStore.execute("bookings", bookerId, idempotencyKey, incomingBookingDto,
+                () -> service.create(incomingBookingDto, bookerId));
+    }
+
+    @PostMapping("/batch")
+    public List<BatchBookingResult> createBatch(
+            @RequestBody @NotEmpty @Size(max = MAX_BATCH_SIZE) List<@Valid @NotNull IncomingBookingDto> bookings,
+            @RequestHeader(USER_ID) int bookerId) {
+        return service.createBatch(bookings, bookerId);
     }
 
     @PatchMapping("/{bookingId}")
@@ -39,31 +76,137 @@ public class BookingController {
         return service.update(bookingId, userId, approved);
     }
 
+    @PatchMapping("/owner/bulk")
+    public List<BatchBookingResult> updateBatch(
+            @RequestBody @NotEmpty @Size(max = MAX_BATCH_SIZE) List<@NotNull Integer> bookingIds,
+            @RequestHeader(USER_ID) int userId,
+            @RequestParam Boolean approved) {
+        return service.updateBatch(bookingIds, userId, approved);
+    }
+
     @GetMapping("/{bookingId}")
     public BookingDto getBookingById(@PathVariable int bookingId,
-                                     @RequestHeader(USER_ID) int userId) {
-        return service.getBookingById(bookingId, userId);
+                                     @RequestHeader(USER_ID) int userId,
+                                     @RequestParam(required = false) String expand) {
+        BookingDto booking = service.getBookingById(bookingId, userId);
+        expand(expand, List.of(booking));
+        return booking;
     }
 
 
     @GetMapping
-    public Collection<BookingDto> getBookings(@RequestParam(name = "state", defaultValue = "ALL") String state,
-                                              @RequestHeader(USER_ID) int userId,
-                                              @RequestParam(defaultValue = "0") @PositiveOrZero(message = "from should be more than zero") int from,
-                                              @RequestParam(required = false, defaultValue = "10") @Positive int size) {
+    public ResponseEntity<Collection<BookingDto>> getBookings(
+            @RequestParam(name = "state", defaultValue = "ALL") String state,
+            @RequestHeader(USER_ID) int userId,
+            @RequestParam(defaultValue = "0") @PositiveOrZero(message = "from should be more than zero") int from,
+            @RequestParam(required = false, defaultValue = "10") @Positive int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            @RequestParam(required = false) String expand) {
 
         log.debug("GetBookings request received");
-        log.debug("Parameters: state={}, userId={}, from={}, size={}", state, userId, from, size);
-        return service.getBookingsPageable(state, userId, from, size);
+        log.debug("Parameters: state={}, userId={}, from={}, size={}, cursor={}", state, userId, from, size, cursor);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        Collection<BookingDto> bookings;
+        if (cursor != null) {
+            bookings = withNextCursor(response, service.getBookingsByCursor(state, userId, cursor, size));
+        } else {
+            bookings = service.getBookingsPageable(state, userId, from, size);
+        }
+        expand(expand, bookings);
+        if (withTotal) {
+            response.header(TOTAL_COUNT, String.valueOf(service.countBookings(state, userId)));
+        }
+        return response.body(bookings);
     }
 
+    @GetMapping("/owner")
+    public ResponseEntity<Collection<BookingDto>> getBookingsOwner(
+            @RequestParam(name = "state", defaultValue = "ALL") String state,
+            @RequestHeader(USER_ID) int userId,
+            @RequestParam(defaultValue = "0") @PositiveOrZero int from,
+            @RequestParam(defaultValue = "10") @Positive int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            @RequestParam(required = false) String expand) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        Collection<BookingDto> bookings;
+        if (cursor != null) {
+            bookings = withNextCursor(response, service.getBookingsOwnerByCursor(state, userId, cursor, size));
+        } else {
+            bookings = service.getBookingsOwner(state, userId, from, size);
+        }
+        expand(expand, bookings);
+        if (withTotal) {
+            response.header(TOTAL_COUNT, String.valueOf(service.countBookingsOwner(state, userId)));
+        }
+        return response.body(bookings);
+    }
 
+    @GetMapping("/summary")
+    public BookingSummaryDto getSummary(@RequestHeader(USER_ID) int userId) {
+        return service.getSummary(userId);
+    }
 
-    @GetMapping("/owner")
-    public Collection<BookingDto> getBookingsOwner(@RequestParam(name = "state", defaultValue = "ALL") String state,
-                                                   @RequestHeader(USER_ID) int userId,
-                                                   @RequestParam(defaultValue = "0") @PositiveOrZero int from,
-                                                   @RequestParam(defaultValue = "10") int size) {
-        return service.getBookingsOwner(state, userId, from, size);
+    @GetMapping("/owner/summary")
+    public BookingSummaryDto getSummaryOwner(@RequestHeader(USER_ID) int userId) {
+        return service.getSummaryOwner(userId);
+    }
+
+    @GetMapping(path = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportBookings(
+            @RequestParam(name = "state", defaultValue = "ALL") String state,
+            @RequestHeader(USER_ID) int userId) {
+        return export(service.prepareExport(state, userId));
+    }
+
+    @GetMapping(path = "/owner/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportBookingsOwner(
+            @RequestParam(name = "state", defaultValue = "ALL") String state,
+            @RequestHeader(USER_ID) int userId) {
+        return export(service.prepareExportOwner(state, userId));
+    }
+
+    /**
+     * Writes one JSON document per line as rows arrive; the output is flushed by the servlet buffer,
+     * not per booking.
+     */
+    private ResponseEntity<StreamingResponseBody> export(BookingQuery query) {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = exportWriter.createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                service.export(query, booking -> {
+                    try {
+                        exportWriter.writeValue(generator, booking);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private void expand(String expand, Collection<BookingDto> bookings) {
+        if (expand == null) {
+            return;
+        }
+        for (String path : expand.split(",")) {
+            if (!ITEM_COMMENTS.equals(path.trim())) {
+                throw new ValidatonException("Unknown expand: " + path);
+            }
+        }
+        service.expandItemComments(bookings);
+    }
+
+    private Collection<BookingDto> withNextCursor(ResponseEntity.BodyBuilder response, CursorPage<BookingDto> page) {
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR, page.getNextCursor());
+        }
+        return page.getContent();
     }
 }
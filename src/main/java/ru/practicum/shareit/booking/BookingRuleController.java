@@ -0,0 +1,79 @@
+package ru.practicum.shareit.booking;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import ru.practicum.shareit.booking.dto.BookingRuleDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingRuleDto;
+import ru.practicum.shareit.booking.dto.TimeSlot;
+import ru.practicum.shareit.booking.service.BookingRuleService;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Recurring bookings. Their occurrences are listed by GET /bookings/rules/{ruleId}/occurrences only: they
+ * don't show up in GET /bookings, its counts and summaries, or as an item's lastBooking and nextBooking.
+ * The booker of an APPROVED rule may comment on the item once the first occurrence has ended.
+ */
+@Validated
+@RestController
+@RequestMapping(path = "/bookings/rules")
+public class BookingRuleController {
+    private static final String USER_ID = "X-Sharer-User-Id";
+    private final BookingRuleService service;
+
+    @Autowired
+    public BookingRuleController(BookingRuleService service) {
+        this.service = service;
+    }
+
+    @PostMapping
+    public BookingRuleDto create(@Valid @RequestBody IncomingBookingRuleDto ruleDto,
+                                 @RequestHeader(USER_ID) int bookerId) {
+        return service.create(ruleDto, bookerId);
+    }
+
+    @PatchMapping("/{ruleId}")
+    public BookingRuleDto update(@PathVariable int ruleId,
+                                 @RequestHeader(USER_ID) int userId,
+                                 @RequestParam boolean approved) {
+        return service.update(ruleId, userId, approved);
+    }
+
+    @GetMapping("/{ruleId}")
+    public BookingRuleDto getById(@PathVariable int ruleId, @RequestHeader(USER_ID) int userId) {
+        return service.getById(ruleId, userId);
+    }
+
+    @GetMapping
+    public List<BookingRuleDto> getRules(@RequestHeader(USER_ID) int userId,
+                                         @RequestParam(defaultValue = "0") @PositiveOrZero int from,
+                                         @RequestParam(defaultValue = "10") @Positive int size) {
+        return service.getRules(userId, from, size);
+    }
+
+    @GetMapping("/owner")
+    public List<BookingRuleDto> getRulesOwner(@RequestHeader(USER_ID) int userId,
+                                              @RequestParam(defaultValue = "0") @PositiveOrZero int from,
+                                              @RequestParam(defaultValue = "10") @Positive int size) {
+        return service.getRulesOwner(userId, from, size);
+    }
+
+    /**
+     * Occurrences that end after from, now by default, in time order.
+     */
+    @GetMapping("/{ruleId}/occurrences")
+    public List<TimeSlot> getOccurrences(
+            @PathVariable int ruleId,
+            @RequestHeader(USER_ID) int userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(defaultValue = "10") @Positive @Max(1000) int size) {
+        return service.getOccurrences(ruleId, userId, from == null ? LocalDateTime.now() : from, size);
+    }
+}
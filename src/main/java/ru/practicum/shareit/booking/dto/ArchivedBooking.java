@@ -0,0 +1,21 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.Value;
+import ru.practicum.shareit.booking.model.BookingStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Booking as it is kept in the archive: only ids, period and status.
+ * Names of the item and the booker are joined from their tables when the booking is read.
+ */
+@Value
+public class ArchivedBooking {
+    int id;
+    LocalDateTime start;
+    LocalDateTime end;
+    BookingStatus status;
+    int itemId;
+    int ownerId;
+    int bookerId;
+}
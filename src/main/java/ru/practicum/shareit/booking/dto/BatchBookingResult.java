@@ -0,0 +1,24 @@
+package ru.practicum.shareit.booking.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Outcome of one entry of a batch booking request. status is the HTTP status the entry would get
+ * from the single-booking endpoint; booking is set for accepted entries and error for rejected ones.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchBookingResult {
+    int index;
+    int status;
+    BookingDto booking;
+    String error;
+}
@@ -0,0 +1,22 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.Value;
+
+/**
+ * Everything a new booking is checked against, selected with one query: the booker and,
+ * if it exists, the requested item with its owner. Item fields are null when the item wasn't found.
+ */
+@Value
+public class BookingAdmission {
+    int bookerId;
+    String bookerName;
+    String bookerEmail;
+    Integer itemId;
+    String itemName;
+    Boolean itemAvailable;
+    Integer ownerId;
+
+    public boolean isItemFound() {
+        return itemId != null;
+    }
+}
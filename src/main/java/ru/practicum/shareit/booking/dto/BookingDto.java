@@ -6,7 +6,6 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.experimental.FieldDefaults;
 import ru.practicum.shareit.booking.model.BookingStatus;
-import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.user.dto.UserDto;
 
 import javax.validation.constraints.Future;
@@ -25,7 +24,7 @@ public class BookingDto {
     LocalDateTime start;
     @Future
     LocalDateTime end;
-    ItemDto item;
+    ShortItemInfo item;
     UserDto booker;
     BookingStatus status;
 }
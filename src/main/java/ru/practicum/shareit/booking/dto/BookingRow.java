@@ -0,0 +1,24 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.Value;
+import ru.practicum.shareit.booking.model.BookingStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Flat read-only row of a booking list, selected with a constructor expression
+ * so that list queries don't hydrate and dirty-check managed entities.
+ */
+@Value
+public class BookingRow {
+    int id;
+    LocalDateTime start;
+    LocalDateTime end;
+    BookingStatus status;
+    int itemId;
+    String itemName;
+    Boolean itemAvailable;
+    int bookerId;
+    String bookerName;
+    String bookerEmail;
+}
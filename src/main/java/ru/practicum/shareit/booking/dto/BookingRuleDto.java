@@ -0,0 +1,34 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.model.RecurrenceFrequency;
+import ru.practicum.shareit.user.dto.UserDto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Booking rule as returned to the booker and the item owner. nextOccurrence is the first occurrence
+ * that hasn't ended yet, null once the rule is over.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BookingRuleDto {
+    int id;
+    LocalDateTime start;
+    LocalDateTime end;
+    RecurrenceFrequency frequency;
+    int interval;
+    int count;
+    LocalDateTime lastEnd;
+    TimeSlot nextOccurrence;
+    ShortItemInfo item;
+    UserDto booker;
+    BookingStatus status;
+}
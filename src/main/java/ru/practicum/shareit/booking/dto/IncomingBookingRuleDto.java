@@ -0,0 +1,41 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import ru.practicum.shareit.booking.model.RecurrenceFrequency;
+
+import javax.validation.constraints.Future;
+import javax.validation.constraints.FutureOrPresent;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+import java.time.LocalDateTime;
+
+/**
+ * Recurring booking request: start and end are the first occurrence, repeated every interval
+ * (1 by default) days or weeks, either count times or while occurrences start before until.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class IncomingBookingRuleDto {
+    int itemId;
+    @NotNull
+    @FutureOrPresent
+    LocalDateTime start;
+    @NotNull
+    @Future
+    LocalDateTime end;
+    @NotNull
+    RecurrenceFrequency frequency;
+    @Positive
+    @Max(365)
+    Integer interval;
+    @Positive
+    Integer count;
+    LocalDateTime until;
+}
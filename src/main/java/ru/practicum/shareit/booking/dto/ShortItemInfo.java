@@ -0,0 +1,26 @@
+package ru.practicum.shareit.booking.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import ru.practicum.shareit.item.dto.CommentDto;
+
+import java.util.List;
+
+/**
+ * Item as embedded into booking responses. Comments are only present when requested with expand=item.comments.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ShortItemInfo {
+    int id;
+    String name;
+    Boolean available;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    List<CommentDto> comments;
+}
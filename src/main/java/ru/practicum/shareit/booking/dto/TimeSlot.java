@@ -0,0 +1,14 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Half-open period [start, end) of an item's calendar.
+ */
+@Value
+public class TimeSlot {
+    LocalDateTime start;
+    LocalDateTime end;
+}
@@ -0,0 +1,42 @@
+package ru.practicum.shareit.booking.model;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Booking lifecycle event waiting in the outbox until the relay hands it to the sinks.
+ * Payload is the BookingDto as JSON at the time of the change.
+ */
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "booking_outbox")
+public class BookingEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "booking_outbox_seq")
+    @GenericGenerator(name = "booking_outbox_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+            parameters = {
+                    @Parameter(name = "sequence_name", value = "booking_outbox_seq"),
+                    @Parameter(name = "increment_size", value = "50"),
+                    @Parameter(name = "optimizer", value = "pooled-lo")
+            })
+    long id;
+    @Column(name = "booking_id")
+    int bookingId;
+    @Column(name = "event_type")
+    @Enumerated(EnumType.STRING)
+    BookingEventType type;
+    @JsonRawValue
+    String payload;
+    LocalDateTime created;
+    int attempts;
+}
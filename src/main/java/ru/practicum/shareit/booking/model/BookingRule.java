@@ -0,0 +1,57 @@
+package ru.practicum.shareit.booking.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.model.User;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.time.LocalDateTime;
+
+/**
+ * Recurring booking: the first occurrence [start, end) repeated every interval days or weeks.
+ * Occurrences are not stored, see Recurrence.
+ */
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "booking_rules")
+@NamedEntityGraph(name = BookingRule.WITH_ITEM_AND_BOOKER, attributeNodes = {
+        @NamedAttributeNode("item"),
+        @NamedAttributeNode("booker")
+})
+public class BookingRule {
+    public static final String WITH_ITEM_AND_BOOKER = "BookingRule.withItemAndBooker";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    int id;
+    @Column(name = "start_date")
+    @NotNull
+    LocalDateTime start;
+    @Column(name = "end_date")
+    @NotNull
+    LocalDateTime end;
+    @Enumerated(EnumType.STRING)
+    @NotNull
+    RecurrenceFrequency frequency;
+    @Column(name = "repeat_interval")
+    int interval;
+    int occurrences;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "item_id", referencedColumnName = "id")
+    @ToString.Exclude
+    Item item;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "booker_id", referencedColumnName = "id")
+    @ToString.Exclude
+    User booker;
+    @Enumerated(EnumType.STRING)
+    BookingStatus status;
+    @Version
+    long version;
+}
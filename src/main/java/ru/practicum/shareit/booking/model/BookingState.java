@@ -0,0 +1,22 @@
+package ru.practicum.shareit.booking.model;
+
+import ru.practicum.shareit.exceptions.UnknownStateException;
+
+public enum BookingState {
+    ALL,
+    CURRENT,
+    PAST,
+    FUTURE,
+    WAITING,
+    REJECTED,
+    CANCELLED,
+    EXPIRED;
+
+    public static BookingState from(String state) {
+        try {
+            return valueOf(state);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new UnknownStateException(state);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ru.practicum.shareit.booking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.shareit.booking.dto.ArchivedBooking;
+import ru.practicum.shareit.booking.storage.BookingArchive;
+import ru.practicum.shareit.booking.storage.BookingRepository;
+import ru.practicum.shareit.booking.utils.BookingArchiveProperties;
+import ru.practicum.shareit.booking.utils.BookingAvailabilityIndex;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Moves bookings that ended more than the retention period ago from the bookings table to the archive.
+ * Every batch is written as an archive segment and deleted from the table in one short transaction;
+ * the segment is published when the delete commits and removed on rollback. Segments left behind by
+ * a crash are settled against the bookings table on start-up. Every run also prunes ended bookings from
+ * the cached availability timelines in place; dropping a timeline instead would let a reload miss
+ * reservations that are not committed yet.
+ */
+@Component
+@Slf4j
+public class BookingArchiveJob {
+    private final BookingRepository bookingRepository;
+    private final BookingArchive archive;
+    private final BookingAvailabilityIndex availabilityIndex;
+    private final BookingArchiveProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public BookingArchiveJob(BookingRepository bookingRepository,
+                             BookingArchive archive,
+                             BookingAvailabilityIndex availabilityIndex,
+                             BookingArchiveProperties properties,
+                             PlatformTransactionManager transactionManager) {
+        this.bookingRepository = bookingRepository;
+        this.archive = archive;
+        this.availabilityIndex = availabilityIndex;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${shareit.booking.archive.interval:PT1H}",
+            initialDelayString = "${shareit.booking.archive.interval:PT1H}")
+    public void run() {
+        if (properties.isEnabled()) {
+            archiveEnded(LocalDateTime.now());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void recover() {
+        transactionTemplate.executeWithoutResult(status -> archive.recover(bookingRepository::findExistingIds));
+    }
+
+    /**
+     * Archives bookings that ended before now minus the retention period and returns how many were moved.
+     */
+    public synchronized int archiveEnded(LocalDateTime now) {
+        long started = System.nanoTime();
+        LocalDateTime before = now.minus(properties.getRetention());
+        int archived = 0;
+        while (true) {
+            int batch = transactionTemplate.execute(status -> archiveBatch(before));
+            archived += batch;
+            if (batch < properties.getBatchSize()) {
+                break;
+            }
+        }
+        int pruned = availabilityIndex.pruneEnded(LocalDateTime.now());
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        if (archived > 0) {
+            log.info("Archived {} bookings ended before {}, pruned {} from timelines, {} ms", archived, before,
+                    pruned, millis);
+        } else {
+            log.debug("No bookings to archive, pruned {} from timelines, {} ms", pruned, millis);
+        }
+        return archived;
+    }
+
+    private int archiveBatch(LocalDateTime before) {
+        List<ArchivedBooking> ended = bookingRepository.findArchivable(before,
+                PageRequest.of(0, properties.getBatchSize()));
+        if (ended.isEmpty()) {
+            return 0;
+        }
+        archive.append(ended);
+        bookingRepository.deleteAllByIdInBatch(ended.stream().map(ArchivedBooking::getId).collect(toList()));
+        return ended.size();
+    }
+}
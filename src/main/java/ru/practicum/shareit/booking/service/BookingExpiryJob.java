@@ -0,0 +1,172 @@
+package ru.practicum.shareit.booking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingRow;
+import ru.practicum.shareit.booking.model.BookingEventType;
+import ru.practicum.shareit.booking.model.BookingRule;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.storage.BookingRepository;
+import ru.practicum.shareit.booking.storage.BookingRuleRepository;
+import ru.practicum.shareit.booking.utils.BookingAvailabilityIndex;
+import ru.practicum.shareit.booking.utils.BookingExpiryProperties;
+import ru.practicum.shareit.booking.utils.BookingMapper;
+import ru.practicum.shareit.booking.utils.BookingOutbox;
+import ru.practicum.shareit.booking.utils.BookingSummaryCache;
+import ru.practicum.shareit.booking.utils.ItemLocks;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Moves WAITING bookings whose start has passed to EXPIRED, and WAITING booking rules whose first
+ * occurrence has started, so an undecided rule doesn't hold its occurrences forever.
+ * Every batch selects up to batchSize ids and updates them in its own short transaction, so a sweep
+ * never holds locks on bookings for longer than one batch. Rows approved or cancelled in between
+ * are skipped by the status check of the UPDATE. A batch frees the slots of expired bookings in the
+ * availability index while holding the locks of their items, as a rejection does, and writes an EXPIRED
+ * outbox event for each of them. Expired rules free their occurrences the same way; rules have no events.
+ */
+@Component
+@Slf4j
+public class BookingExpiryJob {
+    private final BookingRepository bookingRepository;
+    private final BookingRuleRepository ruleRepository;
+    private final BookingAvailabilityIndex availabilityIndex;
+    private final BookingExpiryProperties properties;
+    private final BookingSummaryCache summaryCache;
+    private final ItemLocks itemLocks;
+    private final BookingOutbox outbox;
+    private final BookingMapper mapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public BookingExpiryJob(BookingRepository bookingRepository,
+                            BookingRuleRepository ruleRepository,
+                            BookingAvailabilityIndex availabilityIndex,
+                            BookingExpiryProperties properties,
+                            BookingSummaryCache summaryCache,
+                            ItemLocks itemLocks,
+                            BookingOutbox outbox,
+                            BookingMapper mapper,
+                            PlatformTransactionManager transactionManager) {
+        this.bookingRepository = bookingRepository;
+        this.ruleRepository = ruleRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.properties = properties;
+        this.summaryCache = summaryCache;
+        this.itemLocks = itemLocks;
+        this.outbox = outbox;
+        this.mapper = mapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${shareit.booking.expiry.interval:PT1M}",
+            initialDelayString = "${shareit.booking.expiry.interval:PT1M}")
+    public void sweep() {
+        if (properties.isEnabled()) {
+            expireStale(LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Expires WAITING bookings and booking rules that started before the given moment and returns
+     * how many of both were expired.
+     */
+    public int expireStale(LocalDateTime now) {
+        long started = System.nanoTime();
+        int expired = 0;
+        int batches = 0;
+        while (true) {
+            Batch batch = transactionTemplate.execute(status -> expireBatch(now));
+            expired += batch.expired;
+            batches++;
+            if (batch.selected < properties.getBatchSize()) {
+                break;
+            }
+        }
+        int expiredRules = 0;
+        while (true) {
+            Batch batch = transactionTemplate.execute(status -> expireRuleBatch(now));
+            expiredRules += batch.expired;
+            batches++;
+            if (batch.selected < properties.getBatchSize()) {
+                break;
+            }
+        }
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        if (expired > 0) {
+            summaryCache.evictAll();
+        }
+        if (expired + expiredRules > 0) {
+            log.info("Expired {} WAITING bookings and {} rules in {} batches, {} ms", expired, expiredRules,
+                    batches, millis);
+        } else {
+            log.debug("No WAITING bookings or rules to expire, {} ms", millis);
+        }
+        return expired + expiredRules;
+    }
+
+    private Batch expireBatch(LocalDateTime now) {
+        List<BookingRow> stale = bookingRepository.findRowsByStatusAndStartBefore(BookingStatus.WAITING, now,
+                PageRequest.of(0, properties.getBatchSize()));
+        if (stale.isEmpty()) {
+            return new Batch(0, 0);
+        }
+        Set<Integer> itemIds = stale.stream().map(BookingRow::getItemId).collect(toSet());
+        itemLocks.lockAll(itemIds);
+        List<Integer> ids = stale.stream().map(BookingRow::getId).collect(toList());
+        int expired = bookingRepository.updateStatus(ids, BookingStatus.WAITING, BookingStatus.EXPIRED);
+        Set<Integer> expiredIds = expired == ids.size()
+                ? Set.copyOf(ids)
+                : bookingRepository.findIdsByStatus(ids, BookingStatus.EXPIRED);
+        for (BookingRow row : stale) {
+            if (expiredIds.contains(row.getId())) {
+                availabilityIndex.release(row.getItemId(), row.getId(), row.getStart(), row.getEnd());
+                BookingDto booking = mapper.toBookingDto(row);
+                booking.setStatus(BookingStatus.EXPIRED);
+                outbox.add(BookingEventType.EXPIRED, booking);
+            }
+        }
+        return new Batch(stale.size(), expired);
+    }
+
+    private Batch expireRuleBatch(LocalDateTime now) {
+        Map<Integer, Integer> itemIdsByRule = ruleRepository.findByStatusAndStartBefore(BookingStatus.WAITING, now,
+                        PageRequest.of(0, properties.getBatchSize())).stream()
+                .collect(toMap(BookingRule::getId, rule -> rule.getItem().getId()));
+        if (itemIdsByRule.isEmpty()) {
+            return new Batch(0, 0);
+        }
+        itemLocks.lockAll(Set.copyOf(itemIdsByRule.values()));
+        int expired = ruleRepository.updateStatus(itemIdsByRule.keySet(), BookingStatus.WAITING,
+                BookingStatus.EXPIRED);
+        Set<Integer> expiredIds = expired == itemIdsByRule.size()
+                ? itemIdsByRule.keySet()
+                : ruleRepository.findIdsByStatus(itemIdsByRule.keySet(), BookingStatus.EXPIRED);
+        expiredIds.forEach(ruleId -> availabilityIndex.releaseRule(itemIdsByRule.get(ruleId), ruleId));
+        return new Batch(itemIdsByRule.size(), expired);
+    }
+
+    private static final class Batch {
+        private final int selected;
+        private final int expired;
+
+        private Batch(int selected, int expired) {
+            this.selected = selected;
+            this.expired = expired;
+        }
+    }
+}
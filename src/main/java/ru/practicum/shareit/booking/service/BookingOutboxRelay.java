@@ -0,0 +1,89 @@
+package ru.practicum.shareit.booking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.shareit.booking.model.BookingEvent;
+import ru.practicum.shareit.booking.storage.BookingEventRepository;
+import ru.practicum.shareit.booking.utils.BookingEventSink;
+import ru.practicum.shareit.booking.utils.BookingOutboxProperties;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Drains the booking outbox on the scheduler thread. A batch is read in one transaction, published to
+ * every sink outside of any transaction and deleted in another one, so events are delivered at least once:
+ * a crash between publishing and deleting publishes the batch again. A failed batch stays in the outbox
+ * with its attempts counter increased and is retried, in order, on the next run.
+ */
+@Component
+@Slf4j
+public class BookingOutboxRelay {
+    private final BookingEventRepository eventRepository;
+    private final List<BookingEventSink> sinks;
+    private final BookingOutboxProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @Autowired
+    public BookingOutboxRelay(BookingEventRepository eventRepository,
+                              ObjectProvider<BookingEventSink> sinks,
+                              BookingOutboxProperties properties,
+                              PlatformTransactionManager transactionManager) {
+        this.eventRepository = eventRepository;
+        this.sinks = sinks.orderedStream().collect(toList());
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    @Scheduled(fixedDelayString = "${shareit.booking.outbox.interval:PT1S}")
+    public void scheduledRelay() {
+        if (properties.isEnabled()) {
+            relay();
+        }
+    }
+
+    /**
+     * Publishes pending events until the outbox is empty or a sink fails; returns the number delivered.
+     */
+    public int relay() {
+        if (sinks.isEmpty()) {
+            log.debug("No booking event sinks configured, outbox is not drained");
+            return 0;
+        }
+        int delivered = 0;
+        while (true) {
+            List<BookingEvent> batch = readOnlyTransactionTemplate.execute(status ->
+                    eventRepository.findByOrderById(PageRequest.of(0, properties.getBatchSize())));
+            if (batch.isEmpty()) {
+                break;
+            }
+            List<Long> ids = batch.stream().map(BookingEvent::getId).collect(toList());
+            try {
+                sinks.forEach(sink -> sink.publish(batch));
+            } catch (RuntimeException e) {
+                log.warn("Publishing {} booking events from id={} failed, will retry", batch.size(), ids.get(0), e);
+                transactionTemplate.executeWithoutResult(status -> eventRepository.incrementAttempts(ids));
+                break;
+            }
+            transactionTemplate.executeWithoutResult(status -> eventRepository.deleteAllByIdInBatch(ids));
+            delivered += batch.size();
+            if (batch.size() < properties.getBatchSize()) {
+                break;
+            }
+        }
+        if (delivered > 0) {
+            log.info("{} booking events delivered", delivered);
+        }
+        return delivered;
+    }
+}
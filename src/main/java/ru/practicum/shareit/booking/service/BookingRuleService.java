@@ -0,0 +1,29 @@
+package ru.practicum.shareit.booking.service;
+
+import ru.practicum.shareit.booking.dto.BookingRuleDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingRuleDto;
+import ru.practicum.shareit.booking.dto.TimeSlot;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Recurring bookings are read through their own endpoints. GET /bookings, its counts and the booking
+ * summaries cover single bookings only: an occurrence has no id, status or cursor position of its own,
+ * and listing occurrences there would expand every rule for every page. getOccurrences lists them.
+ * For the same reason an item's lastBooking and nextBooking are single bookings. Comment eligibility
+ * does count rules: the booker of an APPROVED rule may comment once its first occurrence has ended.
+ */
+public interface BookingRuleService {
+    BookingRuleDto create(IncomingBookingRuleDto ruleDto, int bookerId);
+
+    BookingRuleDto update(int ruleId, int userId, boolean approved);
+
+    BookingRuleDto getById(int ruleId, int userId);
+
+    List<BookingRuleDto> getRules(int bookerId, int from, int size);
+
+    List<BookingRuleDto> getRulesOwner(int ownerId, int from, int size);
+
+    List<TimeSlot> getOccurrences(int ruleId, int userId, LocalDateTime from, int size);
+}
@@ -0,0 +1,233 @@
+package ru.practicum.shareit.booking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.shareit.booking.dto.BookingRuleDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingRuleDto;
+import ru.practicum.shareit.booking.dto.TimeSlot;
+import ru.practicum.shareit.booking.model.BookingRule;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.storage.BookingRuleRepository;
+import ru.practicum.shareit.booking.utils.BookingAvailabilityIndex;
+import ru.practicum.shareit.booking.utils.BookingMapper;
+import ru.practicum.shareit.booking.utils.ItemLocks;
+import ru.practicum.shareit.booking.utils.Recurrence;
+import ru.practicum.shareit.exceptions.ConflictException;
+import ru.practicum.shareit.exceptions.NotFoundException;
+import ru.practicum.shareit.exceptions.ValidatonException;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.storage.ItemRepository;
+import ru.practicum.shareit.user.model.User;
+import ru.practicum.shareit.user.storage.UserRepository;
+import ru.practicum.shareit.user.utils.UserValidator;
+
+import javax.transaction.Transactional;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Recurring bookings. A rule is one row however many occurrences it has; overlaps with bookings and
+ * other rules are checked against the availability index, which expands occurrences only where needed.
+ */
+@Service
+@Transactional
+@Slf4j
+public class BookingRuleServiceImpl implements BookingRuleService {
+    public static final int MAX_OCCURRENCES = 520;
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
+
+    private final BookingRuleRepository ruleRepository;
+    private final ItemRepository itemRepository;
+    private final UserRepository userRepository;
+    private final UserValidator userValidator;
+    private final BookingMapper mapper;
+    private final BookingAvailabilityIndex availabilityIndex;
+    private final ItemLocks itemLocks;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public BookingRuleServiceImpl(BookingRuleRepository ruleRepository,
+                                  ItemRepository itemRepository,
+                                  UserRepository userRepository,
+                                  UserValidator userValidator,
+                                  BookingMapper mapper,
+                                  BookingAvailabilityIndex availabilityIndex,
+                                  ItemLocks itemLocks,
+                                  PlatformTransactionManager transactionManager) {
+        this.ruleRepository = ruleRepository;
+        this.itemRepository = itemRepository;
+        this.userRepository = userRepository;
+        this.userValidator = userValidator;
+        this.mapper = mapper;
+        this.availabilityIndex = availabilityIndex;
+        this.itemLocks = itemLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public BookingRuleDto create(IncomingBookingRuleDto ruleDto, int bookerId) {
+        log.info("Booking rule request from userId={} to itemId={}", bookerId, ruleDto.getItemId());
+        User booker = userRepository.findById(bookerId).orElseThrow(
+                () -> new NotFoundException(String.format("User id=%s not found", bookerId)));
+        Item item = itemRepository.findById(ruleDto.getItemId()).orElseThrow(
+                () -> new NotFoundException(String.format("Item id=%s was not found", ruleDto.getItemId())));
+        if (!item.getAvailable()) {
+            throw new ValidatonException(String.format("Item id=%s is not available for booking", item.getId()));
+        }
+        if (item.getOwner().getId() == bookerId) {
+            throw new NotFoundException("Booking can't be made by item's owner");
+        }
+        if (ruleDto.getStart().isBefore(LocalDateTime.now()) || !ruleDto.getEnd().isAfter(ruleDto.getStart())) {
+            throw new ValidatonException("Wrong start or end date");
+        }
+        itemLocks.lock(item.getId());
+
+        BookingRule rule = ruleRepository.saveAndFlush(
+                mapper.toBookingRule(ruleDto, occurrences(ruleDto), item, booker));
+        availabilityIndex.reserveRule(item.getId(), rule.getId(), Recurrence.of(rule));
+        log.info("Booking rule id={} with {} occurrences created", rule.getId(), rule.getOccurrences());
+        return mapper.toBookingRuleDto(rule, LocalDateTime.now());
+    }
+
+    /**
+     * Validates the repetition and returns the number of occurrences, counting those that start
+     * no later than until when no count is given.
+     */
+    private int occurrences(IncomingBookingRuleDto ruleDto) {
+        int interval = ruleDto.getInterval() == null ? 1 : ruleDto.getInterval();
+        Duration step = Duration.ofDays((long) ruleDto.getFrequency().getDays() * interval);
+        if (Duration.between(ruleDto.getStart(), ruleDto.getEnd()).compareTo(step) > 0) {
+            throw new ValidatonException("Occurrence should not be longer than the repeat interval");
+        }
+        if ((ruleDto.getCount() == null) == (ruleDto.getUntil() == null)) {
+            throw new ValidatonException("Either count or until should be set");
+        }
+        long count;
+        if (ruleDto.getCount() != null) {
+            count = ruleDto.getCount();
+        } else if (ruleDto.getUntil().isBefore(ruleDto.getStart())) {
+            throw new ValidatonException("Until should not be before start");
+        } else {
+            count = Duration.between(ruleDto.getStart(), ruleDto.getUntil()).dividedBy(step) + 1;
+        }
+        if (count > MAX_OCCURRENCES) {
+            throw new ValidatonException(String.format("A booking rule can't have more than %s occurrences",
+                    MAX_OCCURRENCES));
+        }
+        return (int) count;
+    }
+
+    /**
+     * The owner approves or rejects a WAITING rule; the booker cancels a rule that is WAITING or APPROVED,
+     * which frees all its occurrences still to come. Every change holds the item lock, as for a single booking,
+     * so no other booking takes an occurrence while the change may still roll back. Each attempt runs in its
+     * own transaction and is retried when the rule was changed concurrently, e.g. expired by the sweeper;
+     * the next attempt sees the new status and usually ends in a validation error.
+     */
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public BookingRuleDto update(int ruleId, int userId, boolean approved) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> changeStatus(ruleId, userId, approved));
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (attempt == MAX_UPDATE_ATTEMPTS || TransactionSynchronizationManager.isActualTransactionActive()) {
+                    log.warn("Booking rule id={} was changed concurrently, giving up after {} attempts", ruleId,
+                            attempt);
+                    throw new ConflictException(
+                            String.format("Booking rule id=%s was changed concurrently, try again", ruleId));
+                }
+                log.info("Booking rule id={} was changed concurrently, retrying", ruleId);
+            }
+        }
+    }
+
+    private BookingRuleDto changeStatus(int ruleId, int userId, boolean approved) {
+        userValidator.validateUserById(userId);
+        BookingRule rule = getRule(ruleId);
+        LocalDateTime now = LocalDateTime.now();
+        if (Recurrence.of(rule).lastEnd().isBefore(now)) {
+            throw new ValidatonException("Booking rule time has expired");
+        }
+        if (rule.getItem().getOwner().getId() == userId) {
+            if (rule.getStatus() != BookingStatus.WAITING) {
+                throw new ValidatonException(String.format("No way to change status %s", rule.getStatus()));
+            }
+            rule.setStatus(approved ? BookingStatus.APPROVED : BookingStatus.REJECTED);
+        } else if (rule.getBooker().getId() == userId) {
+            if (approved) {
+                throw new NotFoundException("Only item's owner can approve the booking rule");
+            }
+            if (rule.getStatus() != BookingStatus.WAITING && rule.getStatus() != BookingStatus.APPROVED) {
+                throw new ValidatonException(String.format("No way to change status %s", rule.getStatus()));
+            }
+            rule.setStatus(BookingStatus.CANCELLED);
+        } else {
+            throw new NotFoundException("Operation on allowed for userId=" + userId);
+        }
+        itemLocks.lock(rule.getItem().getId());
+        if (rule.getStatus() == BookingStatus.APPROVED) {
+            availabilityIndex.approveRule(rule.getId());
+        } else {
+            availabilityIndex.releaseRule(rule);
+        }
+        log.info("Booking rule id={} has been {} by user id={}", ruleId, rule.getStatus(), userId);
+        return mapper.toBookingRuleDto(ruleRepository.saveAndFlush(rule), now);
+    }
+
+    @Override
+    public BookingRuleDto getById(int ruleId, int userId) {
+        userValidator.validateUserById(userId);
+        return mapper.toBookingRuleDto(getVisibleRule(ruleId, userId), LocalDateTime.now());
+    }
+
+    @Override
+    public List<BookingRuleDto> getRules(int bookerId, int from, int size) {
+        userValidator.validateUserById(bookerId);
+        LocalDateTime now = LocalDateTime.now();
+        return ruleRepository.findByBooker_IdOrderByIdDesc(bookerId, PageRequest.of(from / size, size)).stream()
+                .map(rule -> mapper.toBookingRuleDto(rule, now))
+                .collect(toList());
+    }
+
+    @Override
+    public List<BookingRuleDto> getRulesOwner(int ownerId, int from, int size) {
+        userValidator.validateUserById(ownerId);
+        LocalDateTime now = LocalDateTime.now();
+        return ruleRepository.findByItem_Owner_IdOrderByIdDesc(ownerId, PageRequest.of(from / size, size)).stream()
+                .map(rule -> mapper.toBookingRuleDto(rule, now))
+                .collect(toList());
+    }
+
+    /**
+     * Expands up to size occurrences that end after from; nothing is read besides the rule itself.
+     */
+    @Override
+    public List<TimeSlot> getOccurrences(int ruleId, int userId, LocalDateTime from, int size) {
+        userValidator.validateUserById(userId);
+        return Recurrence.of(getVisibleRule(ruleId, userId)).between(from, LocalDateTime.MAX, size);
+    }
+
+    private BookingRule getRule(int ruleId) {
+        return ruleRepository.findById(ruleId).orElseThrow(
+                () -> new NotFoundException(String.format("Booking rule id=%s was not found", ruleId)));
+    }
+
+    private BookingRule getVisibleRule(int ruleId, int userId) {
+        BookingRule rule = getRule(ruleId);
+        if (rule.getItem().getOwner().getId() != userId && rule.getBooker().getId() != userId) {
+            log.warn("UserId={} can't get booking rule id={}", userId, ruleId);
+            throw new NotFoundException("Only item owner or booking requester can view booking rule information");
+        }
+        return rule;
+    }
+}
@@ -1,14 +1,24 @@
 package ru.practicum.shareit.booking.service;
 
+import ru.practicum.shareit.booking.dto.BatchBookingResult;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingSummaryDto;
 import ru.practicum.shareit.booking.dto.IncomingBookingDto;
 import ru.practicum.shareit.booking.dto.ShortBookingInfo;
+import ru.practicum.shareit.booking.storage.BookingQuery;
+import ru.practicum.shareit.utils.CursorPage;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface BookingService {
     BookingDto create(IncomingBookingDto bookingDto, int bookerId);
 
+    List<BatchBookingResult> createBatch(List<IncomingBookingDto> bookings, int bookerId);
+
+    List<BatchBookingResult> updateBatch(List<Integer> bookingIds, int ownerId, boolean approved);
+
     BookingDto update(int bookingId, int userId, Boolean approved);
 
     BookingDto getBookingById(int bookingId, int userId);
@@ -17,6 +27,26 @@ public interface BookingService {
 
     List<BookingDto> getBookingsOwner(String state, int userId, Integer from, Integer size);
 
+    long countBookings(String state, int userId);
+
+    long countBookingsOwner(String state, int userId);
+
+    BookingSummaryDto getSummary(int userId);
+
+    BookingSummaryDto getSummaryOwner(int userId);
+
+    CursorPage<BookingDto> getBookingsByCursor(String state, int userId, String cursor, int size);
+
+    CursorPage<BookingDto> getBookingsOwnerByCursor(String state, int userId, String cursor, int size);
+
+    BookingQuery prepareExport(String state, int userId);
+
+    BookingQuery prepareExportOwner(String state, int userId);
+
+    void export(BookingQuery query, Consumer<BookingDto> consumer);
+
+    void expandItemComments(Collection<BookingDto> bookings);
+
     ShortBookingInfo getLastBooking(int itemId);
 
     ShortBookingInfo getNextBooking(int itemId);
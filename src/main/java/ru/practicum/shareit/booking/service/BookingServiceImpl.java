@@ -2,78 +2,276 @@ package ru.practicum.shareit.booking.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.shareit.booking.dto.ArchivedBooking;
+import ru.practicum.shareit.booking.dto.BatchBookingResult;
+import ru.practicum.shareit.booking.dto.BookingAdmission;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingSummaryDto;
+import ru.practicum.shareit.booking.dto.BookingRow;
 import ru.practicum.shareit.booking.dto.IncomingBookingDto;
 import ru.practicum.shareit.booking.dto.ShortBookingInfo;
 import ru.practicum.shareit.booking.model.Booking;
+import ru.practicum.shareit.booking.model.BookingEventType;
+import ru.practicum.shareit.booking.model.BookingState;
 import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.storage.BookingArchive;
+import ru.practicum.shareit.booking.storage.BookingQuery;
 import ru.practicum.shareit.booking.storage.BookingRepository;
+import ru.practicum.shareit.booking.utils.BookingAvailabilityIndex;
+import ru.practicum.shareit.booking.utils.BookingCursor;
 import ru.practicum.shareit.booking.utils.BookingMapper;
+import ru.practicum.shareit.booking.utils.BookingOutbox;
+import ru.practicum.shareit.booking.utils.BookingSummaryCache;
+import ru.practicum.shareit.booking.utils.IntervalTree;
+import ru.practicum.shareit.booking.utils.ItemLocks;
+import ru.practicum.shareit.exceptions.ConflictException;
 import ru.practicum.shareit.exceptions.NotFoundException;
-import ru.practicum.shareit.exceptions.UnknownStateException;
 import ru.practicum.shareit.exceptions.ValidatonException;
+import ru.practicum.shareit.item.dto.CommentDto;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.storage.ItemRepository;
+import ru.practicum.shareit.item.utils.ItemDtoAssembler;
 import ru.practicum.shareit.item.utils.ItemsValidator;
+import ru.practicum.shareit.user.model.User;
+import ru.practicum.shareit.user.storage.UserRepository;
 import ru.practicum.shareit.user.utils.UserValidator;
+import ru.practicum.shareit.utils.CursorPage;
 
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 
 @Service
 @Transactional
 @Slf4j
 public class BookingServiceImpl implements BookingService {
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
 
     private final BookingRepository bookingRepository;
     private final ItemsValidator itemsValidator;
     private final UserValidator userValidator;
     private final BookingMapper mapper;
+    private final BookingAvailabilityIndex availabilityIndex;
+    private final ItemDtoAssembler itemDtoAssembler;
+    private final ItemLocks itemLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final ItemRepository itemRepository;
+    private final UserRepository userRepository;
+    private final BookingOutbox outbox;
+    private final BookingArchive archive;
+    private final BookingSummaryCache summaryCache;
 
     @Autowired
     public BookingServiceImpl(ItemsValidator itemsValidator,
                               UserValidator userValidator,
                               BookingMapper mapper,
-                              BookingRepository bookingRepository) {
+                              BookingRepository bookingRepository,
+                              BookingAvailabilityIndex availabilityIndex,
+                              ItemDtoAssembler itemDtoAssembler,
+                              ItemLocks itemLocks,
+                              PlatformTransactionManager transactionManager,
+                              ItemRepository itemRepository,
+                              UserRepository userRepository,
+                              BookingOutbox outbox,
+                              BookingArchive archive,
+                              BookingSummaryCache summaryCache) {
         this.itemsValidator = itemsValidator;
         this.userValidator = userValidator;
         this.mapper = mapper;
         this.bookingRepository = bookingRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.itemDtoAssembler = itemDtoAssembler;
+        this.itemLocks = itemLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.itemRepository = itemRepository;
+        this.userRepository = userRepository;
+        this.outbox = outbox;
+        this.archive = archive;
+        this.summaryCache = summaryCache;
     }
 
+    /**
+     * Booker, item availability and item owner are checked against one admission query,
+     * and the booking is saved with references to them, so a create costs one read and one insert.
+     */
     @Override
     public BookingDto create(IncomingBookingDto incomingBookingDto, int bookerId) {
         log.info("Booking request from userId={} to itemId={}", bookerId, incomingBookingDto.getItemId());
-        userValidator.validateUserById(bookerId);
-        if (!itemsValidator.isAvailable(incomingBookingDto.getItemId())) {
+        int itemId = incomingBookingDto.getItemId();
+        BookingAdmission admission = bookingRepository.findAdmission(bookerId, itemId).orElseThrow(
+                () -> new NotFoundException(String.format("User id=%s not found", bookerId)));
+        if (!admission.isItemFound()) {
+            throw new NotFoundException(String.format("Item id=%s was not found", itemId));
+        }
+        if (!admission.getItemAvailable()) {
             log.warn("Item is not available for booking");
-            throw new ValidatonException(
-                    String.format("Item id=%s is not available for booking", incomingBookingDto.getItemId()));
+            throw new ValidatonException(String.format("Item id=%s is not available for booking", itemId));
         }
-
-        if (!incomingBookingDto.getEnd().isAfter(incomingBookingDto.getStart())) {
+        if (incomingBookingDto.getStart().isBefore(LocalDateTime.now())
+                || !incomingBookingDto.getEnd().isAfter(incomingBookingDto.getStart())) {
             log.warn("Wrong start or end date");
             throw new ValidatonException("Wrong start or end date");
         }
-        Booking newBooking = mapper.toBooking(incomingBookingDto, bookerId);
-        if (itemsValidator.ownerMatch(newBooking.getItem().getId(), bookerId)) {
-            log.warn("User id={} can't perform a booking of an owned item id = {}",
-                    incomingBookingDto.getItemId(), bookerId);
+        if (admission.getOwnerId() == bookerId) {
+            log.warn("User id={} can't perform a booking of an owned item id = {}", bookerId, itemId);
             throw new NotFoundException("Booking can't be made by item's owner");
         }
-        BookingDto result = mapper.toBookingDto(bookingRepository.save(newBooking));
+        itemLocks.lock(itemId);
+        Booking newBooking = mapper.toBooking(incomingBookingDto,
+                itemRepository.getReferenceById(itemId), userRepository.getReferenceById(bookerId));
+        if (!availabilityIndex.isFree(itemId, newBooking.getStart(), newBooking.getEnd())) {
+            log.warn("Item id={} is already booked from {} to {}", itemId, newBooking.getStart(), newBooking.getEnd());
+            throw new ConflictException(String.format("Item id=%s is already booked for the requested period",
+                    itemId));
+        }
+        Booking savedBooking = bookingRepository.saveAndFlush(newBooking);
+        availabilityIndex.reserve(itemId, savedBooking.getId(), savedBooking.getStart(), savedBooking.getEnd());
+        BookingDto result = mapper.toBookingDto(savedBooking, admission);
+        outbox.add(BookingEventType.CREATED, result);
+        summaryCache.bookingCreated(bookerId, admission.getOwnerId(), savedBooking.getStart(), savedBooking.getEnd(),
+                savedBooking.getStatus());
         log.info("Creation of booking id={} performed", result.getId());
         return result;
     }
 
+    /**
+     * Creates every acceptable entry in one transaction. Items and the booker are loaded with one query each,
+     * overlaps are checked against the availability index and earlier entries of the same batch,
+     * and new bookings are inserted in JDBC batches.
+     */
     @Override
+    public List<BatchBookingResult> createBatch(List<IncomingBookingDto> entries, int bookerId) {
+        log.info("Batch of {} bookings from userId={} received", entries.size(), bookerId);
+        User booker = userRepository.findById(bookerId).orElseThrow(
+                () -> new NotFoundException(String.format("User id=%s not found", bookerId)));
+        Map<Integer, Item> items = itemRepository.findAllById(entries.stream()
+                        .map(IncomingBookingDto::getItemId)
+                        .collect(toSet())).stream()
+                .collect(toMap(Item::getId, identity()));
+        itemLocks.lockAll(items.keySet());
+        availabilityIndex.load(items.keySet());
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<Integer, IntervalTree<Integer>> batchTimelines = new HashMap<>();
+        BatchBookingResult[] results = new BatchBookingResult[entries.size()];
+        Map<Integer, Booking> accepted = new LinkedHashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            IncomingBookingDto entry = entries.get(i);
+            try {
+                Booking booking = mapper.toBooking(entry, admitBatchEntry(entry, items, bookerId, now), booker);
+                IntervalTree<Integer> batchTimeline = batchTimelines.computeIfAbsent(
+                        entry.getItemId(), itemId -> new IntervalTree<>());
+                if (batchTimeline.overlaps(booking.getStart(), booking.getEnd())
+                        || !availabilityIndex.isFree(entry.getItemId(), booking.getStart(), booking.getEnd())) {
+                    throw new ConflictException(String.format("Item id=%s is already booked for the requested period",
+                            entry.getItemId()));
+                }
+                batchTimeline.insert(booking.getStart(), booking.getEnd(), i);
+                accepted.put(i, booking);
+            } catch (NotFoundException | ValidatonException | ConflictException e) {
+                results[i] = BatchBookingResult.builder()
+                        .index(i)
+                        .status(statusOf(e).value())
+                        .error(e.getMessage())
+                        .build();
+            }
+        }
+
+        bookingRepository.saveAll(accepted.values());
+        bookingRepository.flush();
+        accepted.forEach((i, booking) -> {
+            availabilityIndex.reserve(booking.getItem().getId(), booking.getId(), booking.getStart(), booking.getEnd());
+            BookingDto created = mapper.toBookingDto(booking);
+            outbox.add(BookingEventType.CREATED, created);
+            summaryCache.bookingCreated(bookerId, booking.getItem().getOwner().getId(), booking.getStart(),
+                    booking.getEnd(), booking.getStatus());
+            results[i] = BatchBookingResult.builder()
+                    .index(i)
+                    .status(HttpStatus.CREATED.value())
+                    .booking(created)
+                    .build();
+        });
+        log.info("Batch from userId={}: {} of {} bookings created", bookerId, accepted.size(), entries.size());
+        return Arrays.asList(results);
+    }
+
+    private Item admitBatchEntry(IncomingBookingDto entry, Map<Integer, Item> items, int bookerId,
+                                 LocalDateTime now) {
+        Item item = items.get(entry.getItemId());
+        if (item == null) {
+            throw new NotFoundException(String.format("Item id=%s was not found", entry.getItemId()));
+        }
+        if (!item.getAvailable()) {
+            throw new ValidatonException(String.format("Item id=%s is not available for booking", item.getId()));
+        }
+        if (entry.getStart() == null || entry.getEnd() == null || entry.getStart().isBefore(now)
+                || !entry.getEnd().isAfter(entry.getStart())) {
+            throw new ValidatonException("Wrong start or end date");
+        }
+        if (item.getOwner().getId() == bookerId) {
+            throw new NotFoundException("Booking can't be made by item's owner");
+        }
+        return item;
+    }
+
+    private HttpStatus statusOf(RuntimeException e) {
+        if (e instanceof NotFoundException) {
+            return HttpStatus.NOT_FOUND;
+        }
+        if (e instanceof ConflictException) {
+            return HttpStatus.CONFLICT;
+        }
+        return HttpStatus.BAD_REQUEST;
+    }
+
+    /**
+     * Runs each attempt in its own transaction and retries when the booking was changed concurrently
+     * (version check failed). The next attempt sees the new status and usually ends in a validation error.
+     */
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
     public BookingDto update(int bookingId, int userId, Boolean approved) {
         log.info("UPDATE method for bookingId={}, from userId={}, approved={}", bookingId, userId, approved);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> changeStatus(bookingId, userId, approved));
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (attempt == MAX_UPDATE_ATTEMPTS || TransactionSynchronizationManager.isActualTransactionActive()) {
+                    log.warn("Booking id={} was changed concurrently, giving up after {} attempts", bookingId, attempt);
+                    throw new ConflictException(
+                            String.format("Booking id=%s was changed concurrently, try again", bookingId));
+                }
+                log.info("Booking id={} was changed concurrently, retrying", bookingId);
+            }
+        }
+    }
+
+    private BookingDto changeStatus(int bookingId, int userId, Boolean approved) {
         userValidator.validateUserById(userId);
         Booking booking = bookingRepository.findById(bookingId).orElseThrow(() -> new NotFoundException(
                 String.format("Booking id=%s was not found", bookingId)
@@ -89,14 +287,18 @@ public class BookingServiceImpl implements BookingService {
                     log.info("Booking id={} has been {} by owner id={}", bookingId, booking.getStatus().toString(), userId);
                 } else {
                     booking.setStatus(BookingStatus.REJECTED);
+                    itemLocks.lock(booking.getItem().getId());
+                    availabilityIndex.release(booking);
                     log.info("Booking id={} has been {} by owner id={}", bookingId, booking.getStatus().toString(), userId);
                 }
-                return mapper.toBookingDto(bookingRepository.save(booking));
+                return saveStatusChange(booking);
             } else if (booking.getBooker().getId() == userId) {
                 if (!approved) {
                     booking.setStatus(BookingStatus.CANCELLED);
+                    itemLocks.lock(booking.getItem().getId());
+                    availabilityIndex.release(booking);
                     log.info("Booking id={} has been {} by booker id={}", bookingId, booking.getStatus().toString(), userId);
-                    return mapper.toBookingDto(bookingRepository.save(booking));
+                    return saveStatusChange(booking);
                 } else {
                     log.warn("Access violation for booking id={} for user id={}", bookingId, userId);
                     throw new NotFoundException("Only item's owner can approve the booking");
@@ -111,12 +313,116 @@ public class BookingServiceImpl implements BookingService {
         }
     }
 
+    /**
+     * Approves or rejects WAITING bookings of the owner's items. The whole set is loaded with one query that
+     * also checks ownership, and the accepted entries change status with one set-based UPDATE. Entries are
+     * reported with the status a single PATCH would get; ones changed concurrently in between get 409.
+     * Rejections hold the locks of their items, as a single rejection does, so no other booking can take
+     * a freed slot while the decision may still roll back.
+     */
+    @Override
+    public List<BatchBookingResult> updateBatch(List<Integer> bookingIds, int ownerId, boolean approved) {
+        log.info("Batch of {} decisions from ownerId={}, approved={}", bookingIds.size(), ownerId, approved);
+        userValidator.validateUserById(ownerId);
+        Map<Integer, Booking> owned = bookingRepository.findOwnedByIds(Set.copyOf(bookingIds), ownerId).stream()
+                .collect(toMap(Booking::getId, identity()));
+        BookingStatus decision = approved ? BookingStatus.APPROVED : BookingStatus.REJECTED;
+        LocalDateTime now = LocalDateTime.now();
+        Map<Integer, RuntimeException> refused = new HashMap<>();
+        Map<Integer, Booking> accepted = new LinkedHashMap<>();
+        for (Integer bookingId : bookingIds) {
+            try {
+                accepted.put(bookingId, admitDecision(owned.get(bookingId), bookingId, now));
+            } catch (NotFoundException | ValidatonException e) {
+                refused.put(bookingId, e);
+            }
+        }
+        if (decision == BookingStatus.REJECTED) {
+            itemLocks.lockAll(accepted.values().stream()
+                    .map(booking -> booking.getItem().getId())
+                    .collect(toSet()));
+        }
+        Set<Integer> changed = applyDecision(accepted, decision);
+
+        Map<Integer, BookingDto> decided = new HashMap<>();
+        for (Booking booking : accepted.values()) {
+            if (!changed.contains(booking.getId())) {
+                refused.put(booking.getId(), new ConflictException(String.format(
+                        "Booking id=%s was changed concurrently, try again", booking.getId())));
+                continue;
+            }
+            if (decision == BookingStatus.REJECTED) {
+                availabilityIndex.release(booking);
+            }
+            booking.setStatus(decision);
+            BookingDto result = mapper.toBookingDto(booking);
+            outbox.add(BookingEventType.valueOf(decision.name()), result);
+            summaryCache.statusChanged(booking.getBooker().getId(), ownerId, BookingStatus.WAITING, decision);
+            decided.put(booking.getId(), result);
+        }
+        BatchBookingResult[] results = new BatchBookingResult[bookingIds.size()];
+        for (int i = 0; i < results.length; i++) {
+            RuntimeException error = refused.get(bookingIds.get(i));
+            results[i] = BatchBookingResult.builder()
+                    .index(i)
+                    .status(error == null ? HttpStatus.OK.value() : statusOf(error).value())
+                    .booking(error == null ? decided.get(bookingIds.get(i)) : null)
+                    .error(error == null ? null : error.getMessage())
+                    .build();
+        }
+        log.info("Batch from ownerId={}: {} of {} bookings {}", ownerId, decided.size(), bookingIds.size(), decision);
+        return Arrays.asList(results);
+    }
+
+    private Booking admitDecision(Booking booking, int bookingId, LocalDateTime now) {
+        if (booking == null) {
+            throw new NotFoundException(String.format("Booking id=%s was not found", bookingId));
+        }
+        if (booking.getEnd().isBefore(now)) {
+            throw new ValidatonException("Booking time has expired");
+        }
+        if (booking.getStatus() != BookingStatus.WAITING) {
+            throw new ValidatonException(String.format("No way to change status %s", booking.getStatus()));
+        }
+        return booking;
+    }
+
+    /**
+     * Returns the ids this UPDATE changed: normally all of them, otherwise the ones whose version
+     * moved by exactly one step to the decided status.
+     */
+    private Set<Integer> applyDecision(Map<Integer, Booking> accepted, BookingStatus decision) {
+        if (accepted.isEmpty()) {
+            return Set.of();
+        }
+        int updated = bookingRepository.updateStatus(accepted.keySet(), BookingStatus.WAITING, decision);
+        if (updated == accepted.size()) {
+            return accepted.keySet();
+        }
+        return bookingRepository.findAllById(accepted.keySet()).stream()
+                .filter(current -> current.getStatus() == decision
+                        && current.getVersion() == accepted.get(current.getId()).getVersion() + 1)
+                .map(Booking::getId)
+                .collect(toSet());
+    }
+
+    private BookingDto saveStatusChange(Booking booking) {
+        BookingDto result = mapper.toBookingDto(bookingRepository.saveAndFlush(booking));
+        outbox.add(BookingEventType.valueOf(booking.getStatus().name()), result);
+        summaryCache.statusChanged(booking.getBooker().getId(), booking.getItem().getOwner().getId(),
+                BookingStatus.WAITING, booking.getStatus());
+        return result;
+    }
+
     @Override
     public BookingDto getBookingById(int bookingId, int userId) {
         log.info("getBookingById request received");
         userValidator.validateUserById(userId);
-        Booking booking = bookingRepository.findById(bookingId).orElseThrow(
-                () -> new NotFoundException(String.format("Booking id=%s was not found", bookingId)));
+        Optional<Booking> live = bookingRepository.findById(bookingId);
+        if (live.isEmpty()) {
+            return getArchivedBooking(bookingId, userId);
+        }
+        Booking booking = live.get();
         if (itemsValidator.ownerMatch(booking.getItem().getId(), userId) ||
                 booking.getBooker().getId() == userId) {
             log.info("getBookingById request is served");
@@ -127,112 +433,173 @@ public class BookingServiceImpl implements BookingService {
         }
     }
 
+    private BookingDto getArchivedBooking(int bookingId, int userId) {
+        ArchivedBooking booking = archive.findById(bookingId).orElseThrow(
+                () -> new NotFoundException(String.format("Booking id=%s was not found", bookingId)));
+        if (booking.getOwnerId() != userId && booking.getBookerId() != userId) {
+            log.warn("UserId={} can't get booking information for archived bookingId={}", userId, bookingId);
+            throw new NotFoundException("Only item owner or booking requester can view booking information");
+        }
+        log.info("getBookingById request is served from the archive");
+        return mapper.toBookingDto(bookingRepository.findArchivedRows(List.of(booking)).get(0));
+    }
+
     @Override
     public List<BookingDto> getBookingsPageable(String state, int userId, int from, int size) {
         log.info("getBookings with pagination request received");
         log.debug("Parameters: state={}, userId={}, from={}, size={}", state, userId, from, size);
         userValidator.validateUserById(userId);
-        Sort sort = Sort.by(Sort.Direction.DESC, "start");
-        PageRequest pageRequest = PageRequest.of(from / size, size, sort);
-        log.debug("PageRequest created: {}", pageRequest.toString());
-        return getPageForBookings(state, userId, pageRequest)
-                .getContent()
-                .stream()
-                .map(mapper::toBookingDto)
-                .collect(toList());
-    }
-
-    private Page<Booking> getPageForBookings(String state, int userId, PageRequest pageRequest) {
-        Page<Booking> page;
-        switch (state) {
-            case "ALL":
-                page = bookingRepository.findByBookerId(userId, pageRequest);
-                log.info("Result is {} bookings", page.getSize());
-                break;
-            case "CURRENT":
-                page = bookingRepository.findByBookerIdAndStartIsBeforeAndEndIsAfter(userId, LocalDateTime.now(),
-                        LocalDateTime.now(), pageRequest);
-                log.info("Result is {} bookings", page.getSize());
-                break;
-            case "PAST":
-                page = bookingRepository.findByBookerIdAndEndIsBefore(userId, LocalDateTime.now(), pageRequest);
-                log.info("Result is {} bookings", page.getSize());
-                break;
-            case "FUTURE":
-                page = bookingRepository.findByBookerIdAndStartIsAfter(userId, LocalDateTime.now(), pageRequest);
-                log.info("Result is {} bookings", page.getSize());
-                break;
-            case "WAITING":
-                page = bookingRepository.findByBookerIdAndStatus(userId, BookingStatus.WAITING, pageRequest);
-                log.info("Result is {} bookings", page.getSize());
-                break;
-            case "REJECTED":
-                page = bookingRepository.findByBookerIdAndStatus(userId, BookingStatus.REJECTED, pageRequest);
-                log.info("Result is {} bookings", page.getSize());
-                break;
-            case "CANCELLED":
-                page = bookingRepository.findByBookerIdAndStatus(userId, BookingStatus.CANCELLED, pageRequest);
-                log.info("Result is {} bookings", page.getSize());
-                break;
-            default:
-                throw new UnknownStateException(state);
-        }
-        return page;
+        return findBookings(query(BookingQuery.Role.BOOKER, state, userId)
+                .offset(from / size * size)
+                .limit(size)
+                .build());
     }
 
+    @Override
     public List<BookingDto> getBookingsOwner(String state, int userId, Integer from, Integer size) {
         log.info("getBookingsOwner request received");
         userValidator.validateUserById(userId);
-        Sort sort = Sort.by(Sort.Direction.DESC, "start");
-        PageRequest pageRequest = PageRequest.of(from, size, sort);
-        return getPageBookingsOwner(state, userId, pageRequest)
-                .getContent()
-                .stream()
+        return findBookings(query(BookingQuery.Role.OWNER, state, userId)
+                .offset(from / size * size)
+                .limit(size)
+                .build());
+    }
+
+    @Override
+    public long countBookings(String state, int userId) {
+        return bookingRepository.count(query(BookingQuery.Role.BOOKER, state, userId).build());
+    }
+
+    @Override
+    public long countBookingsOwner(String state, int userId) {
+        return bookingRepository.count(query(BookingQuery.Role.OWNER, state, userId).build());
+    }
+
+    /**
+     * Counts the user's bookings in every state. The counters are cached per user and updated by booking
+     * writes, so only the first request and a request after a start or end has passed run the count query.
+     */
+    @Override
+    public BookingSummaryDto getSummary(int userId) {
+        log.info("getSummary request received for userId={}", userId);
+        userValidator.validateUserById(userId);
+        return summary(BookingQuery.Role.BOOKER, userId);
+    }
+
+    @Override
+    public BookingSummaryDto getSummaryOwner(int userId) {
+        log.info("getSummaryOwner request received for userId={}", userId);
+        userValidator.validateUserById(userId);
+        return summary(BookingQuery.Role.OWNER, userId);
+    }
+
+    private BookingSummaryDto summary(BookingQuery.Role role, int userId) {
+        LocalDateTime now = LocalDateTime.now();
+        return summaryCache.get(role, userId, now, () -> readOnlyTransactionTemplate.execute(
+                status -> bookingRepository.countByState(role, userId, now)));
+    }
+
+    @Override
+    public CursorPage<BookingDto> getBookingsByCursor(String state, int userId, String cursor, int size) {
+        log.info("getBookings with cursor request received");
+        log.debug("Parameters: state={}, userId={}, cursor={}, size={}", state, userId, cursor, size);
+        userValidator.validateUserById(userId);
+        return findBookingsByCursor(query(BookingQuery.Role.BOOKER, state, userId), cursor, size);
+    }
+
+    @Override
+    public CursorPage<BookingDto> getBookingsOwnerByCursor(String state, int userId, String cursor, int size) {
+        log.info("getBookingsOwner with cursor request received");
+        log.debug("Parameters: state={}, userId={}, cursor={}, size={}", state, userId, cursor, size);
+        userValidator.validateUserById(userId);
+        return findBookingsByCursor(query(BookingQuery.Role.OWNER, state, userId), cursor, size);
+    }
+
+    @Override
+    public BookingQuery prepareExport(String state, int userId) {
+        userValidator.validateUserById(userId);
+        return query(BookingQuery.Role.BOOKER, state, userId).build();
+    }
+
+    @Override
+    public BookingQuery prepareExportOwner(String state, int userId) {
+        userValidator.validateUserById(userId);
+        return query(BookingQuery.Role.OWNER, state, userId).build();
+    }
+
+    /**
+     * Hands every matching booking to the consumer while the rows are read from a database cursor.
+     * Rows are projections, not entities, so memory use doesn't depend on the size of the export.
+     */
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public void export(BookingQuery query, Consumer<BookingDto> consumer) {
+        log.info("Export of {} bookings for {} id={} started", query.getState(), query.getRole(), query.getUserId());
+        long exported = readOnlyTransactionTemplate.execute(status -> {
+            long count = 0;
+            try (Stream<BookingRow> rows = bookingRepository.streamRows(query)) {
+                Iterator<BookingRow> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    consumer.accept(mapper.toBookingDto(iterator.next()));
+                    count++;
+                }
+            }
+            return count;
+        });
+        log.info("Export for {} id={} finished with {} bookings", query.getRole(), query.getUserId(), exported);
+    }
+
+    private BookingQuery.BookingQueryBuilder query(BookingQuery.Role role, String state, int userId) {
+        return BookingQuery.builder()
+                .role(role)
+                .state(BookingState.from(state))
+                .userId(userId)
+                .now(LocalDateTime.now());
+    }
+
+    private List<BookingDto> findBookings(BookingQuery query) {
+        List<BookingDto> result = bookingRepository.findRows(query).stream()
                 .map(mapper::toBookingDto)
                 .collect(toList());
+        log.info("State '{}' is served with {} bookings", query.getState(), result.size());
+        return result;
     }
 
-    private Page<Booking> getPageBookingsOwner(String state, int userId, PageRequest pageRequest) {
-        Page<Booking> page;
-        switch (state) {
-            case "ALL":
-                page = bookingRepository.findByItem_Owner_Id(userId, pageRequest);
-                log.info("State 'ALL' is served");
-                break;
-            case "CURRENT":
-                page = bookingRepository.findByItem_Owner_IdAndStartIsBeforeAndEndIsAfter(
-                        userId, LocalDateTime.now(), LocalDateTime.now(), pageRequest);
-                log.info("State 'CURRENT' is served");
-                break;
-            case "PAST":
-                page = bookingRepository.findByItem_Owner_IdAndEndIsBefore(userId, LocalDateTime.now(), pageRequest);
-                log.info("State 'PAST' is served");
-                break;
-            case "FUTURE":
-                page = bookingRepository.findByItem_Owner_IdAndStartIsAfter(userId, LocalDateTime.now(), pageRequest);
-                log.info("State 'FUTURE' is served");
-                break;
-            case "WAITING":
-                page = bookingRepository.findByItem_Owner_IdAndStatus(userId, BookingStatus.WAITING, pageRequest);
-                log.info("State 'WAITING' is served");
-                break;
-            case "REJECTED":
-                page = bookingRepository.findByItem_Owner_IdAndStatus(userId, BookingStatus.REJECTED, pageRequest);
-                log.info("State 'REJECTED' is served");
-                break;
-            case "CANCELLED":
-                page = bookingRepository.findByItem_Owner_IdAndStatus(userId, BookingStatus.CANCELLED, pageRequest);
-                log.info("State 'CANCELLED' is served");
-                break;
-            default:
-                throw new UnknownStateException(state);
-        }
-        return page;
+    private CursorPage<BookingDto> findBookingsByCursor(BookingQuery.BookingQueryBuilder query,
+                                                        String cursor, int size) {
+        List<BookingRow> bookings = bookingRepository.findRows(query
+                .cursor(BookingCursor.decode(cursor))
+                .limit(size + 1)
+                .build());
+        String nextCursor = null;
+        if (bookings.size() > size) {
+            bookings = bookings.subList(0, size);
+            nextCursor = BookingCursor.after(bookings.get(size - 1)).encode();
+        }
+        return new CursorPage<>(bookings.stream().map(mapper::toBookingDto).collect(toList()), nextCursor);
+    }
+
+    @Override
+    public void expandItemComments(Collection<BookingDto> bookings) {
+        if (bookings.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<CommentDto>> comments = itemDtoAssembler.getComments(bookings.stream()
+                .map(booking -> booking.getItem().getId())
+                .collect(toSet()));
+        bookings.forEach(booking -> booking.getItem().setComments(
+                comments.getOrDefault(booking.getItem().getId(), List.of())));
     }
 
     @Override
     public ShortBookingInfo getLastBooking(int itemId) {
-        Booking result = bookingRepository.findFirstByItem_IdAndStartBeforeOrderByEndDesc(itemId, LocalDateTime.now());
+        LocalDateTime now = LocalDateTime.now();
+        Booking result = bookingRepository.findStartedBefore(itemId, now, PageRequest.of(0, 1)).stream()
+                .findFirst()
+                .orElse(null);
+        if (result == null && !archive.isEmpty()) {
+            return mapper.toShortBookingInfo(archive.findLast(List.of(itemId), now).get(itemId));
+        }
         return mapper.toShortBookingInfo(result);
     }
 
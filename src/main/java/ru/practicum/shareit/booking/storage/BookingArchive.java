@@ -0,0 +1,719 @@
+package ru.practicum.shareit.booking.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.booking.dto.ArchivedBooking;
+import ru.practicum.shareit.booking.model.BookingState;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.utils.BookingArchiveProperties;
+import ru.practicum.shareit.booking.utils.BookingCounters;
+import ru.practicum.shareit.utils.TransactionCallbacks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Append-only store of bookings moved out of the bookings table by BookingArchiveJob.
+ * Every archived batch becomes one immutable segment file laid out column by column (ids, starts, ends,
+ * item ids, owner ids, booker ids, statuses) with rows ordered by start and id descending, the order of
+ * booking lists. Segments are memory-mapped, so a lookup by booker, owner or item reads a single column
+ * straight from the page cache. Statuses are stored as ordinals: BookingStatus constants may only be appended.
+ * After the columns every segment stores postings of its ids, items, owners and bookers: the row numbers
+ * sorted by that column, so the rows of one booking, item or user are found with a binary search and read
+ * in list order, and a lookup costs the user's own rows rather than the size of the archive.
+ * A segment is written under a temporary name and only renamed and made readable once the transaction that
+ * deletes its rows from the table commits, so a booking is never read from both places.
+ */
+@Component
+@Slf4j
+public class BookingArchive {
+    public static final Comparator<ArchivedBooking> LIST_ORDER = Comparator
+            .comparing(ArchivedBooking::getStart)
+            .thenComparingInt(ArchivedBooking::getId)
+            .reversed();
+
+    private static final int MAGIC = 0x53484241;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 12;
+    private static final int COLUMN_BYTES = 4 + 8 + 8 + 4 + 4 + 4 + 1;
+    private static final int POSTING_BYTES = 4 + 4;
+    private static final int POSTINGS_PER_ROW = 4;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final BookingStatus[] STATUSES = BookingStatus.values();
+
+    private final Path dir;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final List<Path> unsettled = new ArrayList<>();
+    private long nextSegment = 1;
+
+    @Autowired
+    public BookingArchive(BookingArchiveProperties properties) {
+        this.dir = Paths.get(properties.getDir());
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.sorted().collect(toList())) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        unsettled.add(file);
+                        name = name.substring(0, name.length() - TEMP_SUFFIX.length());
+                    } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                        segments.add(Segment.open(file));
+                    } else {
+                        continue;
+                    }
+                    nextSegment = Math.max(nextSegment, segmentNumber(name) + 1);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Booking archive {} opened with {} segments, {} bookings", dir, segments.size(), size());
+    }
+
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    public long size() {
+        return segments.stream().mapToLong(segment -> segment.count).sum();
+    }
+
+    /**
+     * Tells without scanning rows whether some archived booking could match the query,
+     * e.g. CURRENT and FUTURE never match bookings that ended before the query time.
+     */
+    public boolean mayContain(BookingQuery query) {
+        Filter filter = new Filter(query);
+        return segments.stream().anyMatch(filter::mayMatch);
+    }
+
+    /**
+     * Returns up to max matching bookings in list order. Offset is not applied, the cursor is.
+     */
+    public List<ArchivedBooking> find(BookingQuery query, int max) {
+        List<ArchivedBooking> result = new ArrayList<>();
+        Iterator<ArchivedBooking> matches = iterate(query);
+        while (result.size() < max && matches.hasNext()) {
+            result.add(matches.next());
+        }
+        return result;
+    }
+
+    /**
+     * Iterates over all matching bookings in list order. Segments are already sorted, so they are merged
+     * lazily and only the next matching row of every segment is held in memory. Offset is not applied.
+     */
+    public Iterator<ArchivedBooking> iterate(BookingQuery query) {
+        return new MergedSegments(new Filter(query));
+    }
+
+    public long count(BookingQuery query) {
+        Filter filter = new Filter(query);
+        long count = 0;
+        for (Segment segment : segments) {
+            if (!filter.mayMatch(segment)) {
+                continue;
+            }
+            Postings postings = filter.postings(segment);
+            for (int i = postings.find(filter.key, filter.firstRow(segment)); postings.has(i, filter.key); i++) {
+                if (filter.matches(segment, postings.row(i))) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the archived bookings of the user to the per-state counters in one pass.
+     */
+    public void addCounts(BookingQuery.Role role, int userId, LocalDateTime now, BookingCounters counters) {
+        for (Segment segment : segments) {
+            Postings postings = segment.users(role);
+            for (int i = postings.find(userId, 0); postings.has(i, userId); i++) {
+                int row = postings.row(i);
+                counters.addBooking(fromMicros(segment.start(row)), fromMicros(segment.end(row)),
+                        segment.status(row), now);
+            }
+        }
+    }
+
+    public Optional<ArchivedBooking> findById(int bookingId) {
+        for (Segment segment : segments) {
+            int i = segment.ids.find(bookingId, 0);
+            if (segment.ids.has(i, bookingId)) {
+                return Optional.of(segment.read(segment.ids.row(i)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * For every item returns the archived booking that started before the given moment and ended last.
+     */
+    public Map<Integer, ArchivedBooking> findLast(Collection<Integer> itemIds, LocalDateTime before) {
+        Set<Integer> items = Set.copyOf(itemIds);
+        long beforeMicros = toMicros(before);
+        Map<Integer, ArchivedBooking> result = new HashMap<>();
+        for (Segment segment : segments) {
+            if (segment.minStart() >= beforeMicros) {
+                continue;
+            }
+            int firstRow = segment.firstRowStartingBy(beforeMicros - 1);
+            for (int itemId : items) {
+                for (int i = segment.items.find(itemId, firstRow); segment.items.has(i, itemId); i++) {
+                    int row = segment.items.row(i);
+                    ArchivedBooking last = result.get(itemId);
+                    if (last == null || segment.end(row) > toMicros(last.getEnd())) {
+                        result.put(itemId, segment.read(row));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public boolean hasApproved(int itemId, int bookerId, LocalDateTime endBefore) {
+        long endBeforeMicros = toMicros(endBefore);
+        for (Segment segment : segments) {
+            if (segment.minEnd >= endBeforeMicros) {
+                continue;
+            }
+            for (int i = segment.items.find(itemId, 0); segment.items.has(i, itemId); i++) {
+                int row = segment.items.row(i);
+                if (segment.booker(row) == bookerId && segment.end(row) < endBeforeMicros
+                        && segment.status(row) == BookingStatus.APPROVED) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Settles segment files left by a crash, before the first archival run. A temporary segment whose
+     * bookings are gone from the table had its delete committed and is published; one whose bookings are
+     * still there is deleted, as is a published segment whose bookings are still in the table.
+     * findLive returns those of the given booking ids that are still in the bookings table.
+     */
+    public synchronized void recover(Function<Collection<Integer>, Collection<Integer>> findLive) {
+        for (Segment segment : segments) {
+            if (!findLive.apply(segment.ids()).isEmpty()) {
+                log.warn("Archive segment {} holds bookings that are still in the table", segment.file);
+                drop(segment);
+            }
+        }
+        for (Path temp : unsettled) {
+            Segment segment;
+            try {
+                segment = Segment.open(temp);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Incomplete archive segment {} deleted", temp, e);
+                deleteTemp(temp);
+                continue;
+            }
+            if (findLive.apply(segment.ids()).isEmpty()) {
+                log.info("Archive segment {} recovered with {} bookings", temp, segment.count);
+                publish(temp);
+            } else {
+                deleteTemp(temp);
+            }
+        }
+        unsettled.clear();
+    }
+
+    /**
+     * Writes the bookings as a new segment under a temporary name. It becomes readable when the surrounding
+     * transaction commits and is deleted if it rolls back. A segment that can't be renamed after the commit
+     * stays temporary and is published by recover on the next start.
+     */
+    public synchronized void append(List<ArchivedBooking> bookings) {
+        if (bookings.isEmpty()) {
+            return;
+        }
+        List<ArchivedBooking> rows = new ArrayList<>(bookings);
+        rows.sort(LIST_ORDER);
+        Path temp = dir.resolve(String.format("%010d%s%s", nextSegment++, SEGMENT_SUFFIX, TEMP_SUFFIX));
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = encode(rows);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            deleteTemp(temp);
+            throw new UncheckedIOException(e);
+        }
+        log.debug("Archive segment {} written with {} bookings", temp.getFileName(), rows.size());
+        TransactionCallbacks.afterRollback(() -> deleteTemp(temp));
+        TransactionCallbacks.afterCommit(() -> publish(temp));
+    }
+
+    private synchronized void publish(Path temp) {
+        String name = temp.getFileName().toString();
+        Path file = temp.resolveSibling(name.substring(0, name.length() - TEMP_SUFFIX.length()));
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            segments.add(Segment.open(file));
+        } catch (IOException e) {
+            log.error("Archive segment {} could not be published, it will be recovered on restart", temp, e);
+            return;
+        }
+        log.debug("Archive segment {} published", file.getFileName());
+    }
+
+    private void deleteTemp(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            log.warn("Temporary archive segment {} could not be deleted", temp, e);
+        }
+    }
+
+    private synchronized void drop(Segment segment) {
+        segments.remove(segment);
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            log.warn("Archive segment {} could not be deleted", segment.file, e);
+        }
+        log.debug("Archive segment {} dropped", segment.file.getFileName());
+    }
+
+    private static ByteBuffer encode(List<ArchivedBooking> rows) {
+        int count = rows.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + count * rowBytes(FORMAT_VERSION));
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(count);
+        rows.forEach(row -> buffer.putInt(row.getId()));
+        rows.forEach(row -> buffer.putLong(toMicros(row.getStart())));
+        rows.forEach(row -> buffer.putLong(toMicros(row.getEnd())));
+        rows.forEach(row -> buffer.putInt(row.getItemId()));
+        rows.forEach(row -> buffer.putInt(row.getOwnerId()));
+        rows.forEach(row -> buffer.putInt(row.getBookerId()));
+        rows.forEach(row -> buffer.put((byte) row.getStatus().ordinal()));
+        putPostings(buffer, count, row -> rows.get(row).getId());
+        putPostings(buffer, count, row -> rows.get(row).getItemId());
+        putPostings(buffer, count, row -> rows.get(row).getOwnerId());
+        putPostings(buffer, count, row -> rows.get(row).getBookerId());
+        return buffer.flip();
+    }
+
+    /**
+     * Writes the rows as (key, row) pairs sorted by key and then by row. Ids are positive, so packing
+     * both into a long keeps that order.
+     */
+    private static void putPostings(ByteBuffer buffer, int count, IntUnaryOperator keyOfRow) {
+        long[] postings = new long[count];
+        for (int row = 0; row < count; row++) {
+            postings[row] = (long) keyOfRow.applyAsInt(row) << 32 | row;
+        }
+        Arrays.sort(postings);
+        for (long posting : postings) {
+            buffer.putInt((int) (posting >>> 32)).putInt((int) posting);
+        }
+    }
+
+    /**
+     * Version 1 segments have no postings, they are built in memory when such a segment is opened.
+     */
+    private static int rowBytes(int version) {
+        return version == 1 ? COLUMN_BYTES : COLUMN_BYTES + POSTINGS_PER_ROW * POSTING_BYTES;
+    }
+
+    private static long segmentNumber(String name) {
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final int count;
+        private final int startOffset;
+        private final int endOffset;
+        private final int itemOffset;
+        private final int ownerOffset;
+        private final int bookerOffset;
+        private final int statusOffset;
+        private final long minEnd;
+        private final long maxEnd;
+        private final Postings ids;
+        private final Postings items;
+        private final Postings owners;
+        private final Postings bookers;
+
+        private Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+            this.count = buffer.getInt(8);
+            this.startOffset = HEADER_BYTES + count * 4;
+            this.endOffset = startOffset + count * 8;
+            this.itemOffset = endOffset + count * 8;
+            this.ownerOffset = itemOffset + count * 4;
+            this.bookerOffset = ownerOffset + count * 4;
+            this.statusOffset = bookerOffset + count * 4;
+            long earliestEnd = Long.MAX_VALUE;
+            long latestEnd = Long.MIN_VALUE;
+            for (int row = 0; row < count; row++) {
+                earliestEnd = Math.min(earliestEnd, end(row));
+                latestEnd = Math.max(latestEnd, end(row));
+            }
+            this.minEnd = earliestEnd;
+            this.maxEnd = latestEnd;
+            ByteBuffer postings = buffer;
+            int postingsOffset = statusOffset + count;
+            if (buffer.getInt(4) == 1) {
+                postings = ByteBuffer.allocate(count * POSTINGS_PER_ROW * POSTING_BYTES);
+                putPostings(postings, count, this::id);
+                putPostings(postings, count, this::item);
+                putPostings(postings, count, this::owner);
+                putPostings(postings, count, this::booker);
+                postingsOffset = 0;
+            }
+            int postingsBytes = count * POSTING_BYTES;
+            this.ids = new Postings(postings, postingsOffset, count);
+            this.items = new Postings(postings, postingsOffset + postingsBytes, count);
+            this.owners = new Postings(postings, postingsOffset + 2 * postingsBytes, count);
+            this.bookers = new Postings(postings, postingsOffset + 3 * postingsBytes, count);
+        }
+
+        private static Segment open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_BYTES) {
+                    throw new IllegalStateException("Truncated booking archive segment: " + file);
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int version = buffer.getInt(4);
+                if (buffer.getInt(0) != MAGIC || version < 1 || version > FORMAT_VERSION) {
+                    throw new IllegalStateException("Not a booking archive segment: " + file);
+                }
+                if (channel.size() != HEADER_BYTES + (long) buffer.getInt(8) * rowBytes(version)) {
+                    throw new IllegalStateException("Truncated booking archive segment: " + file);
+                }
+                return new Segment(file, buffer);
+            }
+        }
+
+        private Postings users(BookingQuery.Role role) {
+            return role == BookingQuery.Role.OWNER ? owners : bookers;
+        }
+
+        /**
+         * Rows are sorted by start descending, so the last one started first.
+         */
+        private long minStart() {
+            return start(count - 1);
+        }
+
+        /**
+         * First row that started at or before the bound; the rows before it started later.
+         */
+        private int firstRowStartingBy(long bound) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (start(middle) > bound) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private List<Integer> ids() {
+            List<Integer> ids = new ArrayList<>(count);
+            for (int row = 0; row < count; row++) {
+                ids.add(id(row));
+            }
+            return ids;
+        }
+
+        private int id(int row) {
+            return buffer.getInt(HEADER_BYTES + row * 4);
+        }
+
+        private long start(int row) {
+            return buffer.getLong(startOffset + row * 8);
+        }
+
+        private long end(int row) {
+            return buffer.getLong(endOffset + row * 8);
+        }
+
+        private int item(int row) {
+            return buffer.getInt(itemOffset + row * 4);
+        }
+
+        private int owner(int row) {
+            return buffer.getInt(ownerOffset + row * 4);
+        }
+
+        private int booker(int row) {
+            return buffer.getInt(bookerOffset + row * 4);
+        }
+
+        private BookingStatus status(int row) {
+            return STATUSES[buffer.get(statusOffset + row)];
+        }
+
+        private ArchivedBooking read(int row) {
+            return new ArchivedBooking(id(row), fromMicros(start(row)), fromMicros(end(row)), status(row),
+                    item(row), owner(row), booker(row));
+        }
+    }
+
+    /**
+     * Row numbers of a segment sorted by the value of one column and then by row, stored as (key, row) pairs.
+     * Rows of one key follow each other in list order.
+     */
+    private static final class Postings {
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int count;
+
+        private Postings(ByteBuffer buffer, int offset, int count) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.count = count;
+        }
+
+        /**
+         * Index of the first posting of the key with a row at or after the given one.
+         */
+        private int find(int key, int fromRow) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int middleKey = key(middle);
+                if (middleKey < key || middleKey == key && row(middle) < fromRow) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private boolean has(int index, int key) {
+            return index < count && key(index) == key;
+        }
+
+        private boolean contains(int key) {
+            return has(find(key, 0), key);
+        }
+
+        private int key(int index) {
+            return buffer.getInt(offset + index * POSTING_BYTES);
+        }
+
+        private int row(int index) {
+            return buffer.getInt(offset + index * POSTING_BYTES + 4);
+        }
+    }
+
+    /**
+     * BookingQuery predicates evaluated against segment columns, with times converted once.
+     */
+    private static final class Filter {
+        private final BookingQuery query;
+        private final long now;
+        private final Long windowStart;
+        private final Long windowEnd;
+        private final Long cursorStart;
+        private final BookingStatus status;
+        private final int key;
+
+        private Filter(BookingQuery query) {
+            this.query = query;
+            this.key = query.getItemId() == null ? query.getUserId() : query.getItemId();
+            this.now = toMicros(query.getNow());
+            this.windowStart = query.getWindowStart() == null ? null : toMicros(query.getWindowStart());
+            this.windowEnd = query.getWindowEnd() == null ? null : toMicros(query.getWindowEnd());
+            this.cursorStart = query.getCursor() == null ? null : toMicros(query.getCursor().getStart());
+            BookingState state = query.getState();
+            this.status = state == BookingState.ALL || state == BookingState.CURRENT || state == BookingState.PAST
+                    || state == BookingState.FUTURE ? null : BookingStatus.valueOf(state.name());
+        }
+
+        private boolean mayMatch(Segment segment) {
+            BookingState state = query.getState();
+            if ((state == BookingState.CURRENT || state == BookingState.FUTURE) && segment.maxEnd <= now) {
+                return false;
+            }
+            if (windowStart != null && segment.maxEnd <= windowStart) {
+                return false;
+            }
+            return segment.users(query.getRole()).contains(query.getUserId())
+                    && (query.getItemId() == null || segment.items.contains(query.getItemId()));
+        }
+
+        /**
+         * Postings holding the candidate rows: those of the item when the query has one, else the user's.
+         */
+        private Postings postings(Segment segment) {
+            return query.getItemId() == null ? segment.users(query.getRole()) : segment.items;
+        }
+
+        /**
+         * First row that may match: rows sorted by start descending can be skipped while they start
+         * at or after the window end, or after the cursor.
+         */
+        private int firstRow(Segment segment) {
+            long bound = Long.MAX_VALUE;
+            if (windowEnd != null) {
+                bound = windowEnd - 1;
+            }
+            if (cursorStart != null) {
+                bound = Math.min(bound, cursorStart);
+            }
+            return bound == Long.MAX_VALUE ? 0 : segment.firstRowStartingBy(bound);
+        }
+
+        private boolean matches(Segment segment, int row) {
+            int user = query.getRole() == BookingQuery.Role.OWNER ? segment.owner(row) : segment.booker(row);
+            if (user != query.getUserId()) {
+                return false;
+            }
+            if (query.getItemId() != null && segment.item(row) != query.getItemId()) {
+                return false;
+            }
+            long start = segment.start(row);
+            long end = segment.end(row);
+            switch (query.getState()) {
+                case ALL:
+                    break;
+                case CURRENT:
+                    if (start >= now || end <= now) {
+                        return false;
+                    }
+                    break;
+                case PAST:
+                    if (end >= now) {
+                        return false;
+                    }
+                    break;
+                case FUTURE:
+                    if (start <= now) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (segment.status(row) != status) {
+                        return false;
+                    }
+            }
+            if (windowStart != null && end <= windowStart || windowEnd != null && start >= windowEnd) {
+                return false;
+            }
+            return cursorStart == null || start < cursorStart
+                    || start == cursorStart && segment.id(row) < query.getCursor().getId();
+        }
+    }
+
+    /**
+     * K-way merge of the matching rows of all segments in list order, each segment read through its postings.
+     */
+    private final class MergedSegments implements Iterator<ArchivedBooking> {
+        private final Filter filter;
+        private final PriorityQueue<SegmentCursor> heads = new PriorityQueue<>(
+                Comparator.comparing((SegmentCursor cursor) -> cursor.current, LIST_ORDER));
+
+        private MergedSegments(Filter filter) {
+            this.filter = filter;
+            for (Segment segment : segments) {
+                if (filter.mayMatch(segment)) {
+                    Postings postings = filter.postings(segment);
+                    SegmentCursor cursor = new SegmentCursor(segment, postings,
+                            postings.find(filter.key, filter.firstRow(segment)));
+                    if (cursor.advance()) {
+                        heads.add(cursor);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public ArchivedBooking next() {
+            SegmentCursor cursor = heads.poll();
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+            ArchivedBooking booking = cursor.current;
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+            return booking;
+        }
+
+        private final class SegmentCursor {
+            private final Segment segment;
+            private final Postings postings;
+            private int index;
+            private ArchivedBooking current;
+
+            private SegmentCursor(Segment segment, Postings postings, int index) {
+                this.segment = segment;
+                this.postings = postings;
+                this.index = index;
+            }
+
+            private boolean advance() {
+                while (postings.has(index, filter.key)) {
+                    int row = postings.row(index++);
+                    if (filter.matches(segment, row)) {
+                        current = segment.read(row);
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
+}
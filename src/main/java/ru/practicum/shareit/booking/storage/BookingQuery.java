@@ -0,0 +1,44 @@
+package ru.practicum.shareit.booking.storage;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import ru.practicum.shareit.booking.model.BookingState;
+import ru.practicum.shareit.booking.utils.BookingCursor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filter for booking lists. Only userId, role, state and now are required; any other field left null
+ * is not part of the query.
+ */
+@Data
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BookingQuery {
+    public enum Role {
+        BOOKER,
+        OWNER
+    }
+
+    Role role;
+    int userId;
+    BookingState state;
+    /**
+     * Request time that CURRENT, PAST and FUTURE are evaluated against.
+     */
+    LocalDateTime now;
+    Integer itemId;
+    /**
+     * Keeps bookings overlapping [windowStart, windowEnd).
+     */
+    LocalDateTime windowStart;
+    LocalDateTime windowEnd;
+    /**
+     * Keeps bookings ordered after the cursor; offset is ignored when it is set.
+     */
+    BookingCursor cursor;
+    int offset;
+    int limit;
+}
@@ -1,46 +1,109 @@
 package ru.practicum.shareit.booking.storage;
 
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import ru.practicum.shareit.booking.dto.ArchivedBooking;
+import ru.practicum.shareit.booking.dto.BookingAdmission;
+import ru.practicum.shareit.booking.dto.BookingRow;
 import ru.practicum.shareit.booking.model.Booking;
 import ru.practicum.shareit.booking.model.BookingStatus;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 @Repository
-public interface BookingRepository extends JpaRepository<Booking, Integer> {
-
-    Page<Booking> findByBookerId(int bookerId, PageRequest pageRequest);
-
-    Page<Booking> findByBookerIdAndStartIsBeforeAndEndIsAfter(
-            int userId, LocalDateTime start, LocalDateTime end, Pageable pageable);
-
-    Page<Booking> findByBookerIdAndEndIsBefore(int userId, LocalDateTime end, Pageable pageable);
-
-    Page<Booking> findByBookerIdAndStartIsAfter(int userId, LocalDateTime start, Pageable pageable);
-
-    Page<Booking> findByBookerIdAndStatus(int userId, BookingStatus status, Pageable pageable);
-
-    Page<Booking> findByItem_Owner_Id(int userId, Pageable pageable);
-
-    Page<Booking> findByItem_Owner_IdAndStartIsBeforeAndEndIsAfter(
-            int userId, LocalDateTime start, LocalDateTime end, Pageable pageable);
-
-    Page<Booking> findByItem_Owner_IdAndStartIsAfter(int userId, LocalDateTime start, Pageable pageable);
-
-    Page<Booking> findByItem_Owner_IdAndEndIsBefore(int userId, LocalDateTime end, Pageable pageable);
-
-    Page<Booking> findByItem_Owner_IdAndStatus(int userId, BookingStatus status, Pageable pageable);
-
-    Booking findFirstByItem_IdAndStartBeforeOrderByEndDesc(int itemId, LocalDateTime end);
-
+public interface BookingRepository extends JpaRepository<Booking, Integer>, BookingRepositoryCustom {
+    @Override
+    @EntityGraph(Booking.WITH_ITEM_AND_BOOKER)
+    Optional<Booking> findById(Integer id);
+
+    @Query("select new ru.practicum.shareit.booking.dto.BookingAdmission(u.id, u.name, u.email, " +
+            "i.id, i.name, i.available, i.owner.id) " +
+            "from User u left join Item i on i.id = :itemId where u.id = :bookerId")
+    Optional<BookingAdmission> findAdmission(@Param("bookerId") int bookerId, @Param("itemId") int itemId);
+
+    /**
+     * Derived finders on item.id outer-join items and filter on items.id, which keeps the bookings indexes
+     * on item_id out of the plan; the explicit queries here compare the foreign key column itself.
+     */
+    @Query("select b from Booking b where b.item.id = :itemId and b.start < :now order by b.end desc")
+    List<Booking> findStartedBefore(@Param("itemId") int itemId, @Param("now") LocalDateTime now, Pageable pageable);
+
+    @EntityGraph(Booking.WITH_ITEM_AND_BOOKER)
     Booking findFirstByItem_IdAndBooker_IdAndEndIsBeforeAndStatus(
             int itemId, int userId, LocalDateTime end, BookingStatus status);
 
+    @Query("select b from Booking b where b.item.id in :itemIds and b.start < :now " +
+            "and b.end = (select max(l.end) from Booking l where l.item.id = b.item.id and l.start < :now)")
+    List<Booking> findLastBookings(@Param("itemIds") Collection<Integer> itemIds, @Param("now") LocalDateTime now);
+
+    @Query("select b from Booking b where b.item.id in :itemIds and b.start > :now " +
+            "and b.status <> ru.practicum.shareit.booking.model.BookingStatus.REJECTED " +
+            "and b.start = (select min(n.start) from Booking n where n.item.id = b.item.id and n.start > :now " +
+            "and n.status <> ru.practicum.shareit.booking.model.BookingStatus.REJECTED)")
+    List<Booking> findNextBookings(@Param("itemIds") Collection<Integer> itemIds, @Param("now") LocalDateTime now);
+
+    @Query("select b from Booking b where b.item.id = :itemId and b.status in :statuses and b.end > :end")
+    List<Booking> findByItem_IdAndStatusInAndEndIsAfter(@Param("itemId") int itemId,
+                                                        @Param("statuses") Collection<BookingStatus> statuses,
+                                                        @Param("end") LocalDateTime end);
+
+    @Query("select b from Booking b where b.item.id in :itemIds and b.status in :statuses and b.end > :end")
+    List<Booking> findByItem_IdInAndStatusInAndEndIsAfter(@Param("itemIds") Collection<Integer> itemIds,
+                                                          @Param("statuses") Collection<BookingStatus> statuses,
+                                                          @Param("end") LocalDateTime end);
+
+    /**
+     * Bookings among the given ids that belong to items of the owner, with item and booker fetched.
+     */
+    @Query("select b from Booking b join fetch b.item i join fetch b.booker " +
+            "where b.id in :ids and i.owner.id = :ownerId")
+    List<Booking> findOwnedByIds(@Param("ids") Collection<Integer> ids, @Param("ownerId") int ownerId);
+
+    /**
+     * Rows of bookings in the given status that start before the given moment, oldest id first.
+     */
+    @Query("select new ru.practicum.shareit.booking.dto.BookingRow(b.id, b.start, b.end, b.status, " +
+            "i.id, i.name, i.available, u.id, u.name, u.email) from Booking b join b.item i join b.booker u " +
+            "where b.status = :status and b.start < :before order by b.id")
+    List<BookingRow> findRowsByStatusAndStartBefore(@Param("status") BookingStatus status,
+                                                    @Param("before") LocalDateTime before,
+                                                    Pageable pageable);
+
+    @Query("select b.id from Booking b where b.id in :ids and b.status = :status")
+    Set<Integer> findIdsByStatus(@Param("ids") Collection<Integer> ids, @Param("status") BookingStatus status);
+
+    /**
+     * Set-based status change that skips rows whose status is no longer {@code from}.
+     * Bumps the version so that concurrent entity updates fail their optimistic check.
+     * The persistence context is cleared afterwards, loaded bookings become detached and stale.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Booking b set b.status = :to, b.version = b.version + 1 where b.id in :ids and b.status = :from")
+    int updateStatus(@Param("ids") Collection<Integer> ids,
+                     @Param("from") BookingStatus from,
+                     @Param("to") BookingStatus to);
+
+    /**
+     * Bookings ready for the archive: ended before the given moment and no longer WAITING,
+     * so the expiry job can't change them after they were archived.
+     */
+    @Query("select new ru.practicum.shareit.booking.dto.ArchivedBooking(b.id, b.start, b.end, b.status, " +
+            "b.item.id, b.item.owner.id, b.booker.id) from Booking b where b.end < :before " +
+            "and b.status <> ru.practicum.shareit.booking.model.BookingStatus.WAITING order by b.id")
+    List<ArchivedBooking> findArchivable(@Param("before") LocalDateTime before, Pageable pageable);
+
+    @Query("select b.id from Booking b where b.id in :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
     @Query(value = "SELECT b.*" +
             "FROM BOOKINGS b " +
             "JOIN ITEMS i ON b.ITEM_ID = i.ID " +
@@ -49,6 +112,4 @@ public interface BookingRepository extends JpaRepository<Booking, Integer> {
             "ORDER BY START_DATE ASC " +
             "LIMIT 1", nativeQuery = true)
     Booking findNextBooking(int itemId);
-
-
 }
@@ -0,0 +1,21 @@
+package ru.practicum.shareit.booking.storage;
+
+import ru.practicum.shareit.booking.dto.ArchivedBooking;
+import ru.practicum.shareit.booking.dto.BookingRow;
+import ru.practicum.shareit.booking.utils.BookingCounters;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface BookingRepositoryCustom {
+    List<BookingRow> findRows(BookingQuery query);
+
+    Stream<BookingRow> streamRows(BookingQuery query);
+
+    long count(BookingQuery query);
+
+    BookingCounters countByState(BookingQuery.Role role, int userId, LocalDateTime now);
+
+    List<BookingRow> findArchivedRows(List<ArchivedBooking> bookings);
+}
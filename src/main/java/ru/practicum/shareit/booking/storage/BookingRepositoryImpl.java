@@ -0,0 +1,363 @@
+package ru.practicum.shareit.booking.storage;
+
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.practicum.shareit.booking.dto.ArchivedBooking;
+import ru.practicum.shareit.booking.dto.BookingRow;
+import ru.practicum.shareit.booking.model.Booking;
+import ru.practicum.shareit.booking.model.BookingState;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.utils.BookingCounters;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.model.User;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Builds booking list queries from a BookingQuery with the Criteria API.
+ * Values are always bound as parameters (see hibernate.criteria.literal_handling_mode), so queries
+ * of the same shape render the same JPQL and share one cached query plan.
+ * Bookings moved to the BookingArchive are merged into the results in list order, so callers
+ * see one list whether a booking still lives in the table or not.
+ */
+public class BookingRepositoryImpl implements BookingRepositoryCustom {
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private final BookingArchive archive;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public BookingRepositoryImpl(BookingArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * When the archive may hold matches, the offset is split between the sources: the archived rows among
+     * the first offset rows are found with a binary search over count queries, and the rest of the offset
+     * is still skipped by the database. One page is then read from each source and merged; names for
+     * the archived rows of the page are read with one query per table.
+     */
+    @Override
+    public List<BookingRow> findRows(BookingQuery query) {
+        int offset = query.getCursor() == null ? query.getOffset() : 0;
+        if (!archive.mayContain(query)) {
+            return entityManager.createQuery(selectRows(query))
+                    .setFirstResult(offset)
+                    .setMaxResults(query.getLimit())
+                    .getResultList();
+        }
+        List<ArchivedBooking> archived = archive.find(query, offset + query.getLimit());
+        int a = countArchivedBefore(query, archived, offset);
+        List<BookingRow> live = entityManager.createQuery(selectRows(query))
+                .setFirstResult(offset - a)
+                .setMaxResults(query.getLimit())
+                .getResultList();
+        Set<Integer> liveIds = live.stream().map(BookingRow::getId).collect(toSet());
+
+        List<BookingRow> page = new ArrayList<>();
+        List<ArchivedBooking> archivedOnPage = new ArrayList<>();
+        int l = 0;
+        while (page.size() < query.getLimit()) {
+            while (a < archived.size() && liveIds.contains(archived.get(a).getId())) {
+                a++;
+            }
+            boolean hasLive = l < live.size();
+            boolean hasArchived = a < archived.size();
+            if (!hasLive && !hasArchived) {
+                break;
+            }
+            if (hasLive && (!hasArchived || !precedes(archived.get(a), live.get(l)))) {
+                page.add(live.get(l++));
+            } else {
+                page.add(null);
+                archivedOnPage.add(archived.get(a++));
+            }
+        }
+        Iterator<BookingRow> archivedRows = findArchivedRows(archivedOnPage).iterator();
+        page.replaceAll(row -> row != null ? row : archivedRows.next());
+        return page;
+    }
+
+    /**
+     * Number of archived rows among the first offset rows of the merged list. The archived row at index j
+     * is at position j + the number of live rows preceding it, which grows with j, so the answer is the
+     * first j whose position is at least offset. Every probe is one count query.
+     */
+    private int countArchivedBefore(BookingQuery query, List<ArchivedBooking> archived, int offset) {
+        int low = 0;
+        int high = Math.min(offset, archived.size());
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (middle + countPreceding(query, archived.get(middle)) >= offset) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private long countPreceding(BookingQuery query, ArchivedBooking archived) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> select = cb.createQuery(Long.class);
+        Root<Booking> booking = select.from(Booking.class);
+        List<Predicate> where = filter(query, cb, booking);
+        Path<LocalDateTime> start = booking.get("start");
+        where.add(cb.or(cb.greaterThan(start, archived.getStart()), cb.and(cb.equal(start, archived.getStart()),
+                cb.greaterThan(booking.get("id"), archived.getId()))));
+        select.select(cb.count(booking))
+                .where(where.toArray(new Predicate[0]));
+        return entityManager.createQuery(select).getSingleResult();
+    }
+
+    /**
+     * Streams all matching rows (offset and limit are ignored) over a forward-only cursor.
+     * Must be called and fully consumed inside a transaction: drivers like PostgreSQL only honour
+     * the fetch size with autocommit off, otherwise the whole result is read into memory.
+     */
+    @Override
+    public Stream<BookingRow> streamRows(BookingQuery query) {
+        Stream<BookingRow> live = entityManager.createQuery(selectRows(query))
+                .setHint(QueryHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream();
+        if (!archive.mayContain(query)) {
+            return live;
+        }
+        Iterator<BookingRow> merged = new MergedRows(live.iterator(), archive.iterate(query));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false)
+                .onClose(live::close);
+    }
+
+    /**
+     * Joins archived bookings with the current names of their items and bookers, keeping their order.
+     */
+    @Override
+    public List<BookingRow> findArchivedRows(List<ArchivedBooking> bookings) {
+        if (bookings.isEmpty()) {
+            return List.of();
+        }
+        Set<Integer> itemIds = new HashSet<>();
+        Set<Integer> bookerIds = new HashSet<>();
+        bookings.forEach(booking -> {
+            itemIds.add(booking.getItemId());
+            bookerIds.add(booking.getBookerId());
+        });
+        Map<Integer, Object[]> items = byId(entityManager.createQuery(
+                        "select i.id, i.name, i.available from Item i where i.id in :ids", Object[].class)
+                .setParameter("ids", itemIds)
+                .getResultList());
+        Map<Integer, Object[]> bookers = byId(entityManager.createQuery(
+                        "select u.id, u.name, u.email from User u where u.id in :ids", Object[].class)
+                .setParameter("ids", bookerIds)
+                .getResultList());
+        List<BookingRow> rows = new ArrayList<>(bookings.size());
+        for (ArchivedBooking booking : bookings) {
+            Object[] item = items.getOrDefault(booking.getItemId(), new Object[3]);
+            Object[] booker = bookers.getOrDefault(booking.getBookerId(), new Object[3]);
+            rows.add(new BookingRow(booking.getId(), booking.getStart(), booking.getEnd(), booking.getStatus(),
+                    booking.getItemId(), (String) item[1], (Boolean) item[2],
+                    booking.getBookerId(), (String) booker[1], (String) booker[2]));
+        }
+        return rows;
+    }
+
+    private Map<Integer, Object[]> byId(List<Object[]> tuples) {
+        Map<Integer, Object[]> result = new HashMap<>();
+        tuples.forEach(tuple -> result.put((Integer) tuple[0], tuple));
+        return result;
+    }
+
+    private static boolean precedes(ArchivedBooking archived, BookingRow live) {
+        return precedes(archived.getStart(), archived.getId(), live);
+    }
+
+    private static boolean precedes(LocalDateTime start, int id, BookingRow live) {
+        int byStart = start.compareTo(live.getStart());
+        return byStart > 0 || byStart == 0 && id > live.getId();
+    }
+
+    private CriteriaQuery<BookingRow> selectRows(BookingQuery query) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<BookingRow> select = cb.createQuery(BookingRow.class);
+        Root<Booking> booking = select.from(Booking.class);
+        Join<Booking, Item> item = booking.join("item");
+        Join<Booking, User> booker = booking.join("booker");
+        select.select(cb.construct(BookingRow.class,
+                booking.get("id"), booking.get("start"), booking.get("end"), booking.get("status"),
+                item.get("id"), item.get("name"), item.get("available"),
+                booker.get("id"), booker.get("name"), booker.get("email")));
+
+        List<Predicate> where = filter(query, cb, booking);
+        Path<LocalDateTime> start = booking.get("start");
+        Path<Integer> id = booking.get("id");
+        if (query.getCursor() != null) {
+            LocalDateTime cursorStart = query.getCursor().getStart();
+            where.add(cb.or(cb.lessThan(start, cursorStart),
+                    cb.and(cb.equal(start, cursorStart), cb.lessThan(id, query.getCursor().getId()))));
+        }
+        return select.where(where.toArray(new Predicate[0]))
+                .orderBy(cb.desc(start), cb.desc(id));
+    }
+
+    @Override
+    public long count(BookingQuery query) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> select = cb.createQuery(Long.class);
+        Root<Booking> booking = select.from(Booking.class);
+        select.select(cb.count(booking))
+                .where(filter(query, cb, booking).toArray(new Predicate[0]));
+        long live = entityManager.createQuery(select).getSingleResult();
+        return archive.mayContain(query) ? live + archive.count(query) : live;
+    }
+
+    /**
+     * Counts the bookings of the user in every state with one conditional-aggregation query, which also finds
+     * the first start or end at or after now: the moment the time-based counts change.
+     */
+    @Override
+    public BookingCounters countByState(BookingQuery.Role role, int userId, LocalDateTime now) {
+        Object[] row = entityManager.createQuery("select count(b), " +
+                        "sum(case when b.start < :now and b.end > :now then 1 else 0 end), " +
+                        "sum(case when b.end < :now then 1 else 0 end), " +
+                        "sum(case when b.start > :now then 1 else 0 end), " +
+                        "sum(case when b.status = :waiting then 1 else 0 end), " +
+                        "sum(case when b.status = :rejected then 1 else 0 end), " +
+                        "sum(case when b.status = :cancelled then 1 else 0 end), " +
+                        "sum(case when b.status = :expired then 1 else 0 end), " +
+                        "min(case when b.start >= :now then b.start end), " +
+                        "min(case when b.end >= :now then b.end end) " +
+                        "from Booking b where " + (role == BookingQuery.Role.OWNER
+                        ? "b.item.owner.id = :userId" : "b.booker.id = :userId"), Object[].class)
+                .setParameter("now", now)
+                .setParameter("waiting", BookingStatus.WAITING)
+                .setParameter("rejected", BookingStatus.REJECTED)
+                .setParameter("cancelled", BookingStatus.CANCELLED)
+                .setParameter("expired", BookingStatus.EXPIRED)
+                .setParameter("userId", userId)
+                .getSingleResult();
+        BookingCounters counters = new BookingCounters(null);
+        BookingState[] states = {BookingState.ALL, BookingState.CURRENT, BookingState.PAST, BookingState.FUTURE,
+                BookingState.WAITING, BookingState.REJECTED, BookingState.CANCELLED, BookingState.EXPIRED};
+        for (int i = 0; i < states.length; i++) {
+            counters.add(states[i], row[i] == null ? 0 : ((Number) row[i]).longValue());
+        }
+        counters.limitValidity((LocalDateTime) row[8], now);
+        counters.limitValidity((LocalDateTime) row[9], now);
+        archive.addCounts(role, userId, now, counters);
+        return counters;
+    }
+
+    private List<Predicate> filter(BookingQuery query, CriteriaBuilder cb, Root<Booking> booking) {
+        List<Predicate> where = new ArrayList<>();
+        Path<LocalDateTime> start = booking.get("start");
+        Path<LocalDateTime> end = booking.get("end");
+        Path<BookingStatus> status = booking.get("status");
+        if (query.getRole() == BookingQuery.Role.OWNER) {
+            where.add(cb.equal(booking.get("item").get("owner").get("id"), query.getUserId()));
+        } else {
+            where.add(cb.equal(booking.get("booker").get("id"), query.getUserId()));
+        }
+        switch (query.getState()) {
+            case ALL:
+                break;
+            case CURRENT:
+                where.add(cb.lessThan(start, query.getNow()));
+                where.add(cb.greaterThan(end, query.getNow()));
+                break;
+            case PAST:
+                where.add(cb.lessThan(end, query.getNow()));
+                break;
+            case FUTURE:
+                where.add(cb.greaterThan(start, query.getNow()));
+                break;
+            default:
+                where.add(cb.equal(status, BookingStatus.valueOf(query.getState().name())));
+        }
+        if (query.getItemId() != null) {
+            where.add(cb.equal(booking.get("item").get("id"), query.getItemId()));
+        }
+        if (query.getWindowStart() != null) {
+            where.add(cb.greaterThan(end, query.getWindowStart()));
+        }
+        if (query.getWindowEnd() != null) {
+            where.add(cb.lessThan(start, query.getWindowEnd()));
+        }
+        return where;
+    }
+
+    /**
+     * Merges streamed rows with archived bookings in list order. Archived bookings are pulled from the archive
+     * iterator and joined with their names in chunks of STREAM_FETCH_SIZE as the merge reaches them, so
+     * neither source is held in memory as a whole.
+     */
+    private class MergedRows implements Iterator<BookingRow> {
+        private final Iterator<BookingRow> live;
+        private final Iterator<ArchivedBooking> archived;
+        private BookingRow nextLive;
+        private List<BookingRow> chunk = List.of();
+        private int nextInChunk;
+
+        private MergedRows(Iterator<BookingRow> live, Iterator<ArchivedBooking> archived) {
+            this.live = live;
+            this.archived = archived;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextLive != null || live.hasNext() || nextInChunk < chunk.size() || archived.hasNext();
+        }
+
+        @Override
+        public BookingRow next() {
+            if (nextLive == null && live.hasNext()) {
+                nextLive = live.next();
+            }
+            if (nextInChunk == chunk.size() && archived.hasNext()) {
+                List<ArchivedBooking> bookings = new ArrayList<>(STREAM_FETCH_SIZE);
+                while (bookings.size() < STREAM_FETCH_SIZE && archived.hasNext()) {
+                    bookings.add(archived.next());
+                }
+                chunk = findArchivedRows(bookings);
+                nextInChunk = 0;
+            }
+            if (nextInChunk < chunk.size()) {
+                BookingRow row = chunk.get(nextInChunk);
+                if (nextLive == null || precedes(row.getStart(), row.getId(), nextLive)) {
+                    nextInChunk++;
+                    return row;
+                }
+            }
+            if (nextLive == null) {
+                throw new NoSuchElementException();
+            }
+            BookingRow row = nextLive;
+            nextLive = null;
+            return row;
+        }
+    }
+}
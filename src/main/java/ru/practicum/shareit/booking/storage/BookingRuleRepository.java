@@ -0,0 +1,75 @@
+package ru.practicum.shareit.booking.storage;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.practicum.shareit.booking.model.BookingRule;
+import ru.practicum.shareit.booking.model.BookingStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Filters on item.id and booker.id are written as queries, so they compare the foreign key columns
+ * covered by the booking_rules indexes instead of the joined table's id.
+ */
+@Repository
+public interface BookingRuleRepository extends JpaRepository<BookingRule, Integer> {
+    @Override
+    @EntityGraph(BookingRule.WITH_ITEM_AND_BOOKER)
+    Optional<BookingRule> findById(Integer id);
+
+    @Query("select r from BookingRule r where r.item.id = :itemId and r.status in :statuses")
+    List<BookingRule> findByItem_IdAndStatusIn(@Param("itemId") int itemId,
+                                               @Param("statuses") Collection<BookingStatus> statuses);
+
+    @Query("select r from BookingRule r where r.item.id in :itemIds and r.status in :statuses")
+    List<BookingRule> findByItem_IdInAndStatusIn(@Param("itemIds") Collection<Integer> itemIds,
+                                                 @Param("statuses") Collection<BookingStatus> statuses);
+
+    /**
+     * Tells whether the booker has an APPROVED rule of the item whose first occurrence ended before the time.
+     */
+    @Query("select count(r) > 0 from BookingRule r where r.item.id = :itemId and r.booker.id = :bookerId " +
+            "and r.status = ru.practicum.shareit.booking.model.BookingStatus.APPROVED and r.end < :before")
+    boolean existsApprovedEndedBefore(@Param("itemId") int itemId,
+                                      @Param("bookerId") int bookerId,
+                                      @Param("before") LocalDateTime before);
+
+    @Query("select distinct r.item.id from BookingRule r where r.item.id in :itemIds and r.status = :status")
+    Set<Integer> findItemIdsByStatus(@Param("itemIds") Collection<Integer> itemIds,
+                                     @Param("status") BookingStatus status);
+
+    @EntityGraph(BookingRule.WITH_ITEM_AND_BOOKER)
+    @Query("select r from BookingRule r where r.booker.id = :bookerId order by r.id desc")
+    List<BookingRule> findByBooker_IdOrderByIdDesc(@Param("bookerId") int bookerId, Pageable pageable);
+
+    @EntityGraph(BookingRule.WITH_ITEM_AND_BOOKER)
+    List<BookingRule> findByItem_Owner_IdOrderByIdDesc(int ownerId, Pageable pageable);
+
+    @Query("select r from BookingRule r where r.status = :status and r.start < :before order by r.id")
+    List<BookingRule> findByStatusAndStartBefore(@Param("status") BookingStatus status,
+                                                 @Param("before") LocalDateTime before,
+                                                 Pageable pageable);
+
+    /**
+     * Set-based status change that skips rows whose status is no longer {@code from}, see
+     * BookingRepository.updateStatus.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update BookingRule r set r.status = :to, r.version = r.version + 1 " +
+            "where r.id in :ids and r.status = :from")
+    int updateStatus(@Param("ids") Collection<Integer> ids,
+                     @Param("from") BookingStatus from,
+                     @Param("to") BookingStatus to);
+
+    @Query("select r.id from BookingRule r where r.id in :ids and r.status = :status")
+    Set<Integer> findIdsByStatus(@Param("ids") Collection<Integer> ids, @Param("status") BookingStatus status);
+}
@@ -0,0 +1,33 @@
+package ru.practicum.shareit.booking.utils;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "shareit.booking.archive")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BookingArchiveProperties {
+    boolean enabled = true;
+    /**
+     * Pause between the end of one archival run and the start of the next.
+     */
+    Duration interval = Duration.ofHours(1);
+    /**
+     * How long after its end a booking stays in the bookings table.
+     */
+    Duration retention = Duration.ofDays(180);
+    /**
+     * Bookings moved per transaction, each batch becomes one archive segment.
+     */
+    int batchSize = 5000;
+    /**
+     * Directory of the archive segment files.
+     */
+    String dir = "./db/archive";
+}
@@ -0,0 +1,381 @@
+package ru.practicum.shareit.booking.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.booking.dto.TimeSlot;
+import ru.practicum.shareit.booking.model.Booking;
+import ru.practicum.shareit.booking.model.BookingRule;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.storage.BookingRepository;
+import ru.practicum.shareit.booking.storage.BookingRuleRepository;
+import ru.practicum.shareit.exceptions.ConflictException;
+import ru.practicum.shareit.utils.TransactionCallbacks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * In-memory per-item timeline of WAITING and APPROVED bookings.
+ * A timeline is loaded from the bookings table on first access to the item and is kept up to date
+ * by create and status changes. Changes are applied immediately and compensated if the transaction rolls back.
+ * Merged busy periods of an item are computed on demand and cached until its timeline changes.
+ * WAITING and APPROVED booking rules of the item are loaded with its first timeline and kept as recurrences
+ * guarded by the timeline lock. Timelines stay cached once loaded; ended bookings and rules are pruned
+ * from them in place, so reservations of transactions still in flight are never lost to a reload.
+ * Ids of the APPROVED ones are kept apart for the free-item search, which like its booking anti-join
+ * only skips items taken by approved occurrences.
+ * Occurrences are only expanded within the period being checked or listed.
+ */
+@Component
+@Slf4j
+public class BookingAvailabilityIndex {
+    public static final Set<BookingStatus> BLOCKING_STATUSES = EnumSet.of(BookingStatus.WAITING,
+            BookingStatus.APPROVED);
+
+    private final BookingRepository bookingRepository;
+    private final BookingRuleRepository ruleRepository;
+    private final ConcurrentMap<Integer, IntervalTree<Integer>> timelines = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Map<Integer, Recurrence>> rules = new ConcurrentHashMap<>();
+    private final Set<Integer> approvedRules = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<Integer, List<TimeSlot>> busySlots = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BookingAvailabilityIndex(BookingRepository bookingRepository, BookingRuleRepository ruleRepository) {
+        this.bookingRepository = bookingRepository;
+        this.ruleRepository = ruleRepository;
+    }
+
+    public boolean isFree(int itemId, LocalDateTime start, LocalDateTime end) {
+        IntervalTree<Integer> timeline = timeline(itemId);
+        synchronized (timeline) {
+            return !timeline.overlaps(start, end) && !ruleOverlaps(itemId, 0, start, end);
+        }
+    }
+
+    public void reserve(int itemId, int bookingId, LocalDateTime start, LocalDateTime end) {
+        IntervalTree<Integer> timeline = timeline(itemId);
+        synchronized (timeline) {
+            for (Integer booked : timeline.findOverlapping(start, end)) {
+                if (booked == bookingId) {
+                    return;
+                }
+                log.warn("Booking id={} overlaps booking id={} of itemId={}", bookingId, booked, itemId);
+                throw new ConflictException(
+                        String.format("Item id=%s is already booked for the requested period", itemId));
+            }
+            if (ruleOverlaps(itemId, 0, start, end)) {
+                log.warn("Booking id={} overlaps a booking rule of itemId={}", bookingId, itemId);
+                throw new ConflictException(
+                        String.format("Item id=%s is already booked for the requested period", itemId));
+            }
+            timeline.insert(start, end, bookingId);
+            busySlots.remove(itemId);
+        }
+        TransactionCallbacks.afterRollback(() -> remove(itemId, bookingId, start));
+    }
+
+    public void release(Booking booking) {
+        release(booking.getItem().getId(), booking.getId(), booking.getStart(), booking.getEnd());
+    }
+
+    public void release(int itemId, int bookingId, LocalDateTime start, LocalDateTime end) {
+        if (remove(itemId, bookingId, start)) {
+            TransactionCallbacks.afterRollback(() -> {
+                IntervalTree<Integer> timeline = timeline(itemId);
+                synchronized (timeline) {
+                    timeline.insert(start, end, bookingId);
+                    busySlots.remove(itemId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds a booking rule unless one of its occurrences still to come overlaps a booking or another rule.
+     */
+    public void reserveRule(int itemId, int ruleId, Recurrence recurrence) {
+        IntervalTree<Integer> timeline = timeline(itemId);
+        synchronized (timeline) {
+            Map<Integer, Recurrence> itemRules = rulesOf(itemId);
+            if (itemRules.containsKey(ruleId)) {
+                return;
+            }
+            for (int n = recurrence.firstEndingAfter(LocalDateTime.now()); n < recurrence.getCount(); n++) {
+                TimeSlot occurrence = recurrence.get(n);
+                if (timeline.overlaps(occurrence.getStart(), occurrence.getEnd())
+                        || ruleOverlaps(itemId, ruleId, occurrence.getStart(), occurrence.getEnd())) {
+                    log.warn("Occurrence {} of booking rule id={} is taken on itemId={}", occurrence, ruleId, itemId);
+                    throw new ConflictException(String.format(
+                            "Item id=%s is already booked from %s to %s", itemId, occurrence.getStart(),
+                            occurrence.getEnd()));
+                }
+            }
+            itemRules.put(ruleId, recurrence);
+        }
+        TransactionCallbacks.afterRollback(() -> removeRule(itemId, ruleId));
+    }
+
+    public void releaseRule(BookingRule rule) {
+        releaseRule(rule.getItem().getId(), rule.getId());
+    }
+
+    public void releaseRule(int itemId, int ruleId) {
+        boolean approved = approvedRules.remove(ruleId);
+        Recurrence recurrence = removeRule(itemId, ruleId);
+        TransactionCallbacks.afterRollback(() -> {
+            if (recurrence != null) {
+                IntervalTree<Integer> timeline = timeline(itemId);
+                synchronized (timeline) {
+                    rulesOf(itemId).put(ruleId, recurrence);
+                }
+            }
+            if (approved) {
+                approvedRules.add(ruleId);
+            }
+        });
+    }
+
+    public void approveRule(int ruleId) {
+        if (approvedRules.add(ruleId)) {
+            TransactionCallbacks.afterRollback(() -> approvedRules.remove(ruleId));
+        }
+    }
+
+    /**
+     * Returns the given items with an occurrence of an APPROVED booking rule overlapping [start, end).
+     * Items without approved rules are dropped by one query, so only the timelines of the rest are loaded.
+     */
+    public Set<Integer> findWithApprovedOccurrence(Collection<Integer> itemIds, LocalDateTime start,
+                                                   LocalDateTime end) {
+        Set<Integer> withRules = ruleRepository.findItemIdsByStatus(itemIds, BookingStatus.APPROVED);
+        if (withRules.isEmpty()) {
+            return Set.of();
+        }
+        load(withRules);
+        return withRules.stream()
+                .filter(itemId -> hasApprovedOccurrence(itemId, start, end))
+                .collect(toSet());
+    }
+
+    private boolean hasApprovedOccurrence(int itemId, LocalDateTime start, LocalDateTime end) {
+        IntervalTree<Integer> timeline = timeline(itemId);
+        synchronized (timeline) {
+            for (Map.Entry<Integer, Recurrence> rule : rulesOf(itemId).entrySet()) {
+                if (approvedRules.contains(rule.getKey()) && rule.getValue().overlaps(start, end)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads the timelines of all given items that aren't cached yet with one query.
+     */
+    public void load(Collection<Integer> itemIds) {
+        Map<Integer, IntervalTree<Integer>> loaded = new HashMap<>();
+        for (Integer itemId : itemIds) {
+            if (!timelines.containsKey(itemId)) {
+                loaded.put(itemId, new IntervalTree<>());
+            }
+        }
+        if (loaded.isEmpty()) {
+            return;
+        }
+        for (Booking booking : bookingRepository.findByItem_IdInAndStatusInAndEndIsAfter(
+                loaded.keySet(), BLOCKING_STATUSES, LocalDateTime.now())) {
+            loaded.get(booking.getItem().getId()).insert(booking.getStart(), booking.getEnd(), booking.getId());
+        }
+        Set<Integer> withoutRules = loaded.keySet().stream()
+                .filter(itemId -> !rules.containsKey(itemId))
+                .collect(toSet());
+        if (!withoutRules.isEmpty()) {
+            Map<Integer, Map<Integer, Recurrence>> loadedRules = new HashMap<>();
+            withoutRules.forEach(itemId -> loadedRules.put(itemId, new HashMap<>()));
+            for (BookingRule rule : ruleRepository.findByItem_IdInAndStatusIn(withoutRules, BLOCKING_STATUSES)) {
+                loadedRules.get(rule.getItem().getId()).put(rule.getId(), Recurrence.of(rule));
+                markApproved(rule);
+            }
+            loadedRules.forEach(rules::putIfAbsent);
+        }
+        log.debug("Timelines of {} items loaded", loaded.size());
+        loaded.forEach(timelines::putIfAbsent);
+    }
+
+    /**
+     * Returns the merged busy periods of the item that overlap [from, to), clipped to the window.
+     * Occurrences of booking rules are expanded for the window only and merged in.
+     */
+    public List<TimeSlot> findBusy(int itemId, LocalDateTime from, LocalDateTime to) {
+        List<TimeSlot> merged = busySlots.get(itemId);
+        List<TimeSlot> occurrences = new ArrayList<>();
+        IntervalTree<Integer> timeline = timeline(itemId);
+        synchronized (timeline) {
+            if (merged == null) {
+                merged = merge(timeline);
+                busySlots.put(itemId, merged);
+            }
+            for (Recurrence recurrence : rulesOf(itemId).values()) {
+                occurrences.addAll(recurrence.between(from, to, Integer.MAX_VALUE));
+            }
+        }
+        if (!occurrences.isEmpty()) {
+            occurrences.addAll(merged);
+            occurrences.sort(Comparator.comparing(TimeSlot::getStart));
+            List<TimeSlot> all = new ArrayList<>();
+            occurrences.forEach(slot -> append(all, slot.getStart(), slot.getEnd()));
+            merged = all;
+        }
+        List<TimeSlot> result = new ArrayList<>();
+        for (int i = firstEndingAfter(merged, from); i < merged.size(); i++) {
+            TimeSlot slot = merged.get(i);
+            if (!slot.getStart().isBefore(to)) {
+                break;
+            }
+            result.add(new TimeSlot(slot.getStart().isBefore(from) ? from : slot.getStart(),
+                    slot.getEnd().isAfter(to) ? to : slot.getEnd()));
+        }
+        return result;
+    }
+
+    /**
+     * Drops the bookings that ended by the given time from the cached timelines, and the rules whose
+     * last occurrence ended by then. A reload skips ended bookings too, and ended intervals can't overlap
+     * a new booking, so this only bounds memory. Returns the number of bookings dropped.
+     */
+    public int pruneEnded(LocalDateTime now) {
+        int pruned = 0;
+        for (Map.Entry<Integer, IntervalTree<Integer>> entry : timelines.entrySet()) {
+            IntervalTree<Integer> timeline = entry.getValue();
+            synchronized (timeline) {
+                int removed = timeline.removeEndedBy(now);
+                Map<Integer, Recurrence> itemRules = rules.getOrDefault(entry.getKey(), Map.of());
+                for (Iterator<Map.Entry<Integer, Recurrence>> it = itemRules.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<Integer, Recurrence> rule = it.next();
+                    if (!rule.getValue().lastEnd().isAfter(now)) {
+                        it.remove();
+                        approvedRules.remove(rule.getKey());
+                    }
+                }
+                if (removed > 0) {
+                    busySlots.remove(entry.getKey());
+                }
+                pruned += removed;
+            }
+        }
+        return pruned;
+    }
+
+    private List<TimeSlot> merge(IntervalTree<Integer> timeline) {
+        List<TimeSlot> merged = new ArrayList<>();
+        timeline.forEach((start, end) -> append(merged, start, end));
+        return Collections.unmodifiableList(merged);
+    }
+
+    private void append(List<TimeSlot> merged, LocalDateTime start, LocalDateTime end) {
+        TimeSlot last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+        if (last == null || start.isAfter(last.getEnd())) {
+            merged.add(new TimeSlot(start, end));
+        } else if (end.isAfter(last.getEnd())) {
+            merged.set(merged.size() - 1, new TimeSlot(last.getStart(), end));
+        }
+    }
+
+    private boolean ruleOverlaps(int itemId, int exceptRuleId, LocalDateTime start, LocalDateTime end) {
+        for (Map.Entry<Integer, Recurrence> rule : rulesOf(itemId).entrySet()) {
+            if (rule.getKey() != exceptRuleId && rule.getValue().overlaps(start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void markApproved(BookingRule rule) {
+        if (rule.getStatus() == BookingStatus.APPROVED) {
+            approvedRules.add(rule.getId());
+        }
+    }
+
+    private Map<Integer, Recurrence> rulesOf(int itemId) {
+        return rules.computeIfAbsent(itemId, id -> new HashMap<>());
+    }
+
+    /**
+     * Rules of an item may be cached while its timeline is not, e.g. during a concurrent first load.
+     * A reload skips cached rules, so the rule is removed from them anyway, under the timeline lock.
+     */
+    private Recurrence removeRule(int itemId, int ruleId) {
+        if (!rules.containsKey(itemId)) {
+            return null;
+        }
+        IntervalTree<Integer> timeline = timeline(itemId);
+        synchronized (timeline) {
+            return rulesOf(itemId).remove(ruleId);
+        }
+    }
+
+    private int firstEndingAfter(List<TimeSlot> merged, LocalDateTime from) {
+        int low = 0;
+        int high = merged.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (merged.get(middle).getEnd().isAfter(from)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private boolean remove(int itemId, int bookingId, LocalDateTime start) {
+        IntervalTree<Integer> timeline = timelines.get(itemId);
+        if (timeline == null) {
+            return false;
+        }
+        synchronized (timeline) {
+            boolean removed = timeline.remove(start, booked -> booked == bookingId);
+            if (removed) {
+                busySlots.remove(itemId);
+            }
+            return removed;
+        }
+    }
+
+    private IntervalTree<Integer> timeline(int itemId) {
+        IntervalTree<Integer> timeline = timelines.get(itemId);
+        if (timeline != null) {
+            return timeline;
+        }
+        IntervalTree<Integer> loaded = new IntervalTree<>();
+        for (Booking booking : bookingRepository.findByItem_IdAndStatusInAndEndIsAfter(
+                itemId, BLOCKING_STATUSES, LocalDateTime.now())) {
+            loaded.insert(booking.getStart(), booking.getEnd(), booking.getId());
+        }
+        if (!rules.containsKey(itemId)) {
+            Map<Integer, Recurrence> loadedRules = new HashMap<>();
+            for (BookingRule rule : ruleRepository.findByItem_IdAndStatusIn(itemId, BLOCKING_STATUSES)) {
+                loadedRules.put(rule.getId(), Recurrence.of(rule));
+                markApproved(rule);
+            }
+            rules.putIfAbsent(itemId, loadedRules);
+        }
+        log.debug("Timeline of itemId={} loaded with {} bookings", itemId, loaded.size());
+        timeline = timelines.putIfAbsent(itemId, loaded);
+        return timeline != null ? timeline : loaded;
+    }
+}
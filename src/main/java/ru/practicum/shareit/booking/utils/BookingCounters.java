@@ -0,0 +1,88 @@
+package ru.practicum.shareit.booking.utils;
+
+import ru.practicum.shareit.booking.dto.BookingSummaryDto;
+import ru.practicum.shareit.booking.model.BookingState;
+import ru.practicum.shareit.booking.model.BookingStatus;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Booking counts of one user per BookingState. CURRENT, PAST and FUTURE depend on the time, so the counts
+ * are valid until the first start or end of the user's bookings at or after the moment they were taken.
+ */
+public class BookingCounters {
+    private final long[] counts;
+    private LocalDateTime validUntil;
+
+    public BookingCounters(LocalDateTime validUntil) {
+        this(new long[BookingState.values().length], validUntil);
+    }
+
+    private BookingCounters(long[] counts, LocalDateTime validUntil) {
+        this.counts = counts;
+        this.validUntil = validUntil;
+    }
+
+    public long get(BookingState state) {
+        return counts[state.ordinal()];
+    }
+
+    public void add(BookingState state, long count) {
+        counts[state.ordinal()] += count;
+    }
+
+    public boolean isValidAt(LocalDateTime now) {
+        return validUntil == null || now.isBefore(validUntil);
+    }
+
+    /**
+     * Keeps the counts valid only until the given start or end, if it is not behind now.
+     */
+    public void limitValidity(LocalDateTime boundary, LocalDateTime now) {
+        if (boundary != null && !boundary.isBefore(now) && (validUntil == null || boundary.isBefore(validUntil))) {
+            validUntil = boundary;
+        }
+    }
+
+    public void addBooking(LocalDateTime start, LocalDateTime end, BookingStatus status, LocalDateTime now) {
+        add(BookingState.ALL, 1);
+        if (start.isAfter(now)) {
+            add(BookingState.FUTURE, 1);
+        } else if (end.isBefore(now)) {
+            add(BookingState.PAST, 1);
+        } else if (start.isBefore(now) && end.isAfter(now)) {
+            add(BookingState.CURRENT, 1);
+        }
+        changeStatus(null, status);
+        limitValidity(start, now);
+        limitValidity(end, now);
+    }
+
+    public void changeStatus(BookingStatus from, BookingStatus to) {
+        if (from != null && from != BookingStatus.APPROVED) {
+            add(BookingState.valueOf(from.name()), -1);
+        }
+        if (to != BookingStatus.APPROVED) {
+            add(BookingState.valueOf(to.name()), 1);
+        }
+    }
+
+    public BookingSummaryDto toDto() {
+        return BookingSummaryDto.builder()
+                .all(get(BookingState.ALL))
+                .current(get(BookingState.CURRENT))
+                .past(get(BookingState.PAST))
+                .future(get(BookingState.FUTURE))
+                .waiting(get(BookingState.WAITING))
+                .rejected(get(BookingState.REJECTED))
+                .cancelled(get(BookingState.CANCELLED))
+                .expired(get(BookingState.EXPIRED))
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(counts) + " until " + validUntil;
+    }
+}
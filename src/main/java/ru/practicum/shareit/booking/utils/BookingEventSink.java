@@ -0,0 +1,14 @@
+package ru.practicum.shareit.booking.utils;
+
+import ru.practicum.shareit.booking.model.BookingEvent;
+
+import java.util.List;
+
+/**
+ * Destination of booking events drained from the outbox. Events arrive in outbox order and may be
+ * delivered more than once, so consumers should deduplicate by event id.
+ * A batch counts as delivered only if publish returns without an exception.
+ */
+public interface BookingEventSink {
+    void publish(List<BookingEvent> events);
+}
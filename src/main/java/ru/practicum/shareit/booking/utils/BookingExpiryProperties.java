@@ -0,0 +1,25 @@
+package ru.practicum.shareit.booking.utils;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "shareit.booking.expiry")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BookingExpiryProperties {
+    boolean enabled = true;
+    /**
+     * Pause between the end of one sweep and the start of the next.
+     */
+    Duration interval = Duration.ofMinutes(1);
+    /**
+     * Bookings expired per UPDATE, each batch runs in its own transaction.
+     */
+    int batchSize = 500;
+}
@@ -1,38 +1,36 @@
 package ru.practicum.shareit.booking.utils;
 
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import ru.practicum.shareit.booking.dto.ArchivedBooking;
+import ru.practicum.shareit.booking.dto.BookingAdmission;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingRow;
+import ru.practicum.shareit.booking.dto.BookingRuleDto;
 import ru.practicum.shareit.booking.dto.IncomingBookingDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingRuleDto;
 import ru.practicum.shareit.booking.dto.ShortBookingInfo;
+import ru.practicum.shareit.booking.dto.ShortItemInfo;
 import ru.practicum.shareit.booking.model.Booking;
+import ru.practicum.shareit.booking.model.BookingRule;
 import ru.practicum.shareit.booking.model.BookingStatus;
 import ru.practicum.shareit.exceptions.ValidatonException;
-import ru.practicum.shareit.item.service.ItemService;
-import ru.practicum.shareit.item.utils.ItemMapper;
-import ru.practicum.shareit.user.service.UserService;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.dto.UserDto;
+import ru.practicum.shareit.user.model.User;
 import ru.practicum.shareit.user.utils.UserMapper;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
 @Component
 public class BookingMapper {
-    private final UserService userService;
-    private final ItemService itemService;
-    private final ItemMapper itemMapper;
-
-    @Autowired
-    public BookingMapper(UserService userService, ItemService itemService, ItemMapper im) {
-        this.userService = userService;
-        this.itemService = itemService;
-        this.itemMapper = im;
-    }
-
     public BookingDto toBookingDto(Booking booking) {
         if (booking != null) {
             return BookingDto.builder()
                     .id(booking.getId())
                     .start(booking.getStart())
                     .end(booking.getEnd())
-                    .item(itemMapper.toItemDto(booking.getItem()))
+                    .item(toShortItemInfo(booking.getItem()))
                     .booker(UserMapper.toUserDto(booking.getBooker()))
                     .status(booking.getStatus())
                     .build();
@@ -41,6 +39,55 @@ public class BookingMapper {
         }
     }
 
+    public BookingDto toBookingDto(BookingRow row) {
+        return BookingDto.builder()
+                .id(row.getId())
+                .start(row.getStart())
+                .end(row.getEnd())
+                .item(ShortItemInfo.builder()
+                        .id(row.getItemId())
+                        .name(row.getItemName())
+                        .available(row.getItemAvailable())
+                        .build())
+                .booker(UserDto.builder()
+                        .id(row.getBookerId())
+                        .name(row.getBookerName())
+                        .email(row.getBookerEmail())
+                        .build())
+                .status(row.getStatus())
+                .build();
+    }
+
+    /**
+     * Maps a just created booking without touching its item and booker, which are references.
+     */
+    public BookingDto toBookingDto(Booking booking, BookingAdmission admission) {
+        return BookingDto.builder()
+                .id(booking.getId())
+                .start(booking.getStart())
+                .end(booking.getEnd())
+                .item(ShortItemInfo.builder()
+                        .id(admission.getItemId())
+                        .name(admission.getItemName())
+                        .available(admission.getItemAvailable())
+                        .build())
+                .booker(UserDto.builder()
+                        .id(admission.getBookerId())
+                        .name(admission.getBookerName())
+                        .email(admission.getBookerEmail())
+                        .build())
+                .status(booking.getStatus())
+                .build();
+    }
+
+    public ShortItemInfo toShortItemInfo(Item item) {
+        return ShortItemInfo.builder()
+                .id(item.getId())
+                .name(item.getName())
+                .available(item.getAvailable())
+                .build();
+    }
+
     public ShortBookingInfo toShortBookingInfo(Booking booking) {
         if (booking != null) {
             return ShortBookingInfo.builder()
@@ -54,12 +101,56 @@ public class BookingMapper {
         }
     }
 
-    public Booking toBooking(IncomingBookingDto input, int bookerId) {
+    public ShortBookingInfo toShortBookingInfo(ArchivedBooking booking) {
+        if (booking != null) {
+            return ShortBookingInfo.builder()
+                    .id(booking.getId())
+                    .bookerId(booking.getBookerId())
+                    .start(booking.getStart())
+                    .end(booking.getEnd())
+                    .build();
+        } else {
+            return null;
+        }
+    }
+
+    public Booking toBooking(IncomingBookingDto input, Item item, User booker) {
         return Booking.builder()
-                .start(input.getStart())
-                .end(input.getEnd())
-                .item(itemMapper.toItem(itemService.get(input.getItemId(), bookerId)))
-                .booker(UserMapper.toUser(userService.getUser(bookerId)))
+                .start(input.getStart().truncatedTo(ChronoUnit.MICROS))
+                .end(input.getEnd().truncatedTo(ChronoUnit.MICROS))
+                .item(item)
+                .booker(booker)
+                .status(BookingStatus.WAITING)
+                .build();
+    }
+
+    public BookingRuleDto toBookingRuleDto(BookingRule rule, LocalDateTime now) {
+        Recurrence recurrence = Recurrence.of(rule);
+        int next = recurrence.firstEndingAfter(now);
+        return BookingRuleDto.builder()
+                .id(rule.getId())
+                .start(rule.getStart())
+                .end(rule.getEnd())
+                .frequency(rule.getFrequency())
+                .interval(rule.getInterval())
+                .count(rule.getOccurrences())
+                .lastEnd(recurrence.lastEnd())
+                .nextOccurrence(next < recurrence.getCount() ? recurrence.get(next) : null)
+                .item(toShortItemInfo(rule.getItem()))
+                .booker(UserMapper.toUserDto(rule.getBooker()))
+                .status(rule.getStatus())
+                .build();
+    }
+
+    public BookingRule toBookingRule(IncomingBookingRuleDto input, int occurrences, Item item, User booker) {
+        return BookingRule.builder()
+                .start(input.getStart().truncatedTo(ChronoUnit.MICROS))
+                .end(input.getEnd().truncatedTo(ChronoUnit.MICROS))
+                .frequency(input.getFrequency())
+                .interval(input.getInterval() == null ? 1 : input.getInterval())
+                .occurrences(occurrences)
+                .item(item)
+                .booker(booker)
                 .status(BookingStatus.WAITING)
                 .build();
     }
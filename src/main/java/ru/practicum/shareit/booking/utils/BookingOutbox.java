@@ -0,0 +1,45 @@
+package ru.practicum.shareit.booking.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.model.BookingEvent;
+import ru.practicum.shareit.booking.model.BookingEventType;
+import ru.practicum.shareit.booking.storage.BookingEventRepository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Writes booking events to the outbox table in the transaction of the booking change,
+ * so an event exists if and only if the change was committed.
+ */
+@Component
+public class BookingOutbox {
+    private final BookingEventRepository eventRepository;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public BookingOutbox(BookingEventRepository eventRepository, ObjectMapper objectMapper) {
+        this.eventRepository = eventRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    public void add(BookingEventType type, BookingDto booking) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Booking events must be written in the transaction of the change");
+        }
+        try {
+            eventRepository.save(BookingEvent.builder()
+                    .bookingId(booking.getId())
+                    .type(type)
+                    .payload(objectMapper.writeValueAsString(booking))
+                    .created(LocalDateTime.now())
+                    .build());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize booking id=" + booking.getId(), e);
+        }
+    }
+}
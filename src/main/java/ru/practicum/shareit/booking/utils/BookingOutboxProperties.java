@@ -0,0 +1,29 @@
+package ru.practicum.shareit.booking.utils;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "shareit.booking.outbox")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BookingOutboxProperties {
+    boolean enabled = true;
+    /**
+     * Pause between relay runs.
+     */
+    Duration interval = Duration.ofSeconds(1);
+    /**
+     * Events read, published and deleted together.
+     */
+    int batchSize = 100;
+    /**
+     * NDJSON file the file sink appends events to; the sink is off when not set.
+     */
+    String file;
+}
@@ -0,0 +1,145 @@
+package ru.practicum.shareit.booking.utils;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.booking.dto.BookingSummaryDto;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.storage.BookingQuery;
+import ru.practicum.shareit.utils.TransactionCallbacks;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Per-user booking counters for the booker and owner summaries. Counters are loaded with one query and then
+ * updated by booking writes once their transaction commits. A load that overlaps a write of the same user
+ * is returned but not cached, so a counter never misses or repeats a committed change.
+ * A user has a slot only while their counters are cached or one of their writes is in flight, so writes
+ * of users who never read a summary leave nothing behind.
+ */
+@Component
+@Slf4j
+public class BookingSummaryCache {
+    private final ConcurrentMap<Key, Slot> slots = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    public BookingSummaryDto get(BookingQuery.Role role, int userId, LocalDateTime now,
+                                 Supplier<BookingCounters> loader) {
+        Key key = new Key(role, userId);
+        Slot slot = slots.computeIfAbsent(key, k -> new Slot());
+        long generation;
+        synchronized (slot) {
+            if (slot.counters != null && slot.counters.isValidAt(now)) {
+                hits.incrementAndGet();
+                return slot.counters.toDto();
+            }
+            generation = slot.generation;
+        }
+        BookingCounters loaded = loader.get();
+        loads.incrementAndGet();
+        synchronized (slot) {
+            if (slot.generation == generation && slot.writes == 0) {
+                slot.counters = loaded;
+            }
+        }
+        removeIfUnused(key, slot);
+        return loaded.toDto();
+    }
+
+    public void bookingCreated(int bookerId, int ownerId, LocalDateTime start, LocalDateTime end,
+                               BookingStatus status) {
+        record(BookingQuery.Role.BOOKER, bookerId, counters -> counters.addBooking(start, end, status,
+                LocalDateTime.now()));
+        record(BookingQuery.Role.OWNER, ownerId, counters -> counters.addBooking(start, end, status,
+                LocalDateTime.now()));
+    }
+
+    public void statusChanged(int bookerId, int ownerId, BookingStatus from, BookingStatus to) {
+        record(BookingQuery.Role.BOOKER, bookerId, counters -> counters.changeStatus(from, to));
+        record(BookingQuery.Role.OWNER, ownerId, counters -> counters.changeStatus(from, to));
+    }
+
+    /**
+     * Drops all counters, for set-based changes whose users aren't known one by one.
+     */
+    public void evictAll() {
+        slots.forEach((key, slot) -> {
+            synchronized (slot) {
+                slot.counters = null;
+                slot.generation++;
+            }
+            removeIfUnused(key, slot);
+        });
+        log.debug("Booking summary counters evicted");
+    }
+
+    /**
+     * Marks a write of the user as in flight until its transaction completes, so that a load running
+     * meanwhile isn't cached. The slot is created for the time of the write if the user has none.
+     */
+    private void record(BookingQuery.Role role, int userId, Consumer<BookingCounters> change) {
+        Key key = new Key(role, userId);
+        Slot slot = slots.compute(key, (k, current) -> {
+            Slot found = current == null ? new Slot() : current;
+            synchronized (found) {
+                found.writes++;
+            }
+            return found;
+        });
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (slot) {
+                if (slot.counters != null) {
+                    change.accept(slot.counters);
+                }
+                slot.generation++;
+                slot.writes--;
+            }
+            removeIfUnused(key, slot);
+        });
+        TransactionCallbacks.afterRollback(() -> {
+            synchronized (slot) {
+                slot.generation++;
+                slot.writes--;
+            }
+            removeIfUnused(key, slot);
+        });
+    }
+
+    private void removeIfUnused(Key key, Slot slot) {
+        slots.computeIfPresent(key, (k, current) -> {
+            synchronized (current) {
+                return current == slot && current.counters == null && current.writes == 0 ? null : current;
+            }
+        });
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+
+    @Value
+    private static class Key {
+        BookingQuery.Role role;
+        int userId;
+    }
+
+    private static final class Slot {
+        private BookingCounters counters;
+        private long generation;
+        private int writes;
+    }
+}
@@ -0,0 +1,240 @@
+package ru.practicum.shareit.booking.utils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Augmented AVL tree of half-open time intervals [start, end).
+ * Every node keeps the maximum end of its subtree, so overlap checks cost O(log n)
+ * and window queries cost O(log n + k). The tree is not thread-safe.
+ */
+public class IntervalTree<T> {
+    private Node<T> root;
+    private int size;
+    private long sequence;
+
+    public int size() {
+        return size;
+    }
+
+    public void insert(LocalDateTime start, LocalDateTime end, T value) {
+        root = insert(root, new Node<>(start, end, sequence++, value));
+        size++;
+    }
+
+    public boolean remove(LocalDateTime start, Predicate<T> matcher) {
+        return removeNode(start, node -> matcher.test(node.value));
+    }
+
+    /**
+     * Removes the intervals that end at or before the given time and returns how many were removed.
+     * Costs O(n) to find them and O(log n) for each removal.
+     */
+    public int removeEndedBy(LocalDateTime time) {
+        List<Node<T>> ended = new ArrayList<>();
+        collectEnded(root, time, ended);
+        for (Node<T> node : ended) {
+            removeNode(node.start, candidate -> candidate == node);
+        }
+        return ended.size();
+    }
+
+    public boolean overlaps(LocalDateTime start, LocalDateTime end) {
+        Node<T> node = root;
+        while (node != null) {
+            if (node.start.isBefore(end) && node.end.isAfter(start)) {
+                return true;
+            }
+            if (node.left != null && node.left.maxEnd.isAfter(start)) {
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return false;
+    }
+
+    public List<T> findOverlapping(LocalDateTime start, LocalDateTime end) {
+        List<T> result = new ArrayList<>();
+        collect(root, start, end, result);
+        return result;
+    }
+
+    /**
+     * Visits all intervals in the order of their starts.
+     */
+    public void forEach(BiConsumer<LocalDateTime, LocalDateTime> action) {
+        forEach(root, action);
+    }
+
+    private void forEach(Node<T> node, BiConsumer<LocalDateTime, LocalDateTime> action) {
+        if (node == null) {
+            return;
+        }
+        forEach(node.left, action);
+        action.accept(node.start, node.end);
+        forEach(node.right, action);
+    }
+
+    private boolean removeNode(LocalDateTime start, Predicate<Node<T>> matcher) {
+        boolean[] removed = new boolean[1];
+        root = remove(root, start, matcher, removed);
+        if (removed[0]) {
+            size--;
+        }
+        return removed[0];
+    }
+
+    private void collectEnded(Node<T> node, LocalDateTime time, List<Node<T>> ended) {
+        if (node == null) {
+            return;
+        }
+        collectEnded(node.left, time, ended);
+        if (!node.end.isAfter(time)) {
+            ended.add(node);
+        }
+        collectEnded(node.right, time, ended);
+    }
+
+    private void collect(Node<T> node, LocalDateTime start, LocalDateTime end, List<T> result) {
+        if (node == null || !node.maxEnd.isAfter(start)) {
+            return;
+        }
+        collect(node.left, start, end, result);
+        if (node.start.isBefore(end)) {
+            if (node.end.isAfter(start)) {
+                result.add(node.value);
+            }
+            collect(node.right, start, end, result);
+        }
+    }
+
+    private Node<T> insert(Node<T> node, Node<T> fresh) {
+        if (node == null) {
+            return fresh;
+        }
+        int cmp = fresh.start.compareTo(node.start);
+        if (cmp < 0 || (cmp == 0 && fresh.seq < node.seq)) {
+            node.left = insert(node.left, fresh);
+        } else {
+            node.right = insert(node.right, fresh);
+        }
+        return balance(node);
+    }
+
+    private Node<T> remove(Node<T> node, LocalDateTime start, Predicate<Node<T>> matcher, boolean[] removed) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = start.compareTo(node.start);
+        if (cmp < 0) {
+            node.left = remove(node.left, start, matcher, removed);
+        } else if (cmp > 0) {
+            node.right = remove(node.right, start, matcher, removed);
+        } else if (matcher.test(node)) {
+            removed[0] = true;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node<T> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeMin(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        } else {
+            // equal starts may end up on both sides after rotations
+            node.left = remove(node.left, start, matcher, removed);
+            if (!removed[0]) {
+                node.right = remove(node.right, start, matcher, removed);
+            }
+        }
+        return balance(node);
+    }
+
+    private Node<T> removeMin(Node<T> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeMin(node.left);
+        return balance(node);
+    }
+
+    private Node<T> balance(Node<T> node) {
+        update(node);
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node<T> rotateRight(Node<T> node) {
+        Node<T> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private Node<T> rotateLeft(Node<T> node) {
+        Node<T> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private void update(Node<T> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        LocalDateTime maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd.isAfter(maxEnd)) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd.isAfter(maxEnd)) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private int height(Node<T> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static final class Node<T> {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final long seq;
+        private final T value;
+        private LocalDateTime maxEnd;
+        private int height = 1;
+        private Node<T> left;
+        private Node<T> right;
+
+        private Node(LocalDateTime start, LocalDateTime end, long seq, T value) {
+            this.start = start;
+            this.end = end;
+            this.seq = seq;
+            this.value = value;
+            this.maxEnd = end;
+        }
+    }
+}
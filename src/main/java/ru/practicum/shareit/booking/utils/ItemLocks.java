@@ -0,0 +1,72 @@
+package ru.practicum.shareit.booking.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.exceptions.ConflictException;
+import ru.practicum.shareit.utils.TransactionCallbacks;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes booking writes per item with a fixed set of lock stripes.
+ * A lock is taken inside the current transaction and released when it completes,
+ * so the next writer of the same item sees the committed state. Writes to items
+ * on different stripes don't wait for each other.
+ */
+@Component
+@Slf4j
+public class ItemLocks {
+    private static final int STRIPES = 64;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public ItemLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public void lock(int itemId) {
+        lockStripe(stripe(itemId), itemId);
+    }
+
+    /**
+     * Locks several items at once. Stripes are always taken in ascending order, so two
+     * transactions locking overlapping sets of items can't deadlock.
+     */
+    public void lockAll(Collection<Integer> itemIds) {
+        Map<Integer, Integer> stripes = new TreeMap<>();
+        for (Integer itemId : itemIds) {
+            stripes.putIfAbsent(stripe(itemId), itemId);
+        }
+        stripes.forEach(this::lockStripe);
+    }
+
+    private int stripe(int itemId) {
+        return Math.floorMod(itemId, STRIPES);
+    }
+
+    private void lockStripe(int stripe, int itemId) {
+        ReentrantLock lock = locks[stripe];
+        try {
+            if (!lock.tryLock(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Timed out waiting for the lock of itemId={}", itemId);
+                throw new ConflictException(String.format("Item id=%s is busy, try again later", itemId));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException(String.format("Interrupted while waiting for item id=%s", itemId));
+        }
+        try {
+            TransactionCallbacks.afterCompletion(lock::unlock);
+        } catch (IllegalStateException e) {
+            lock.unlock();
+            throw e;
+        }
+    }
+}
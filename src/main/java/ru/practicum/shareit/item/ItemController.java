@@ -1,13 +1,19 @@
 package ru.practicum.shareit.item;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.practicum.shareit.exceptions.ValidatonException;
 import ru.practicum.shareit.item.dto.CommentDto;
+import ru.practicum.shareit.item.dto.ItemAvailabilityDto;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.utils.IdempotencyStore;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import java.time.LocalDateTime;
 import java.util.Collection;
 
 
@@ -16,16 +22,21 @@ import java.util.Collection;
 @Slf4j
 public class ItemController {
     private final ItemService itemService;
+    private final IdempotencyStore idempotencyStore;
     private static final String USER_ID = "X-Sharer-User-id";
+    private static final String TOTAL_COUNT = "X-Total-Count";
 
-    public ItemController(ItemService itemService) {
+    public ItemController(ItemService itemService, IdempotencyStore idempotencyStore) {
         this.itemService = itemService;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @PostMapping()
-    public ItemDto postItem(@RequestBody @Valid ItemDto itemDto, @RequestHeader(USER_ID) int userId) {
+    public ItemDto postItem(@RequestBody @Valid ItemDto itemDto, @RequestHeader(USER_ID) int userId,
+                            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
         log.debug(String.format("POST request received. UserId=%s Object=%s", userId, itemDto));
-        return itemService.create(itemDto, userId);
+        return idempotencyStore.execute("items", userId, idempotencyKey, itemDto,
+                () -> itemService.create(itemDto, userId));
     }
 
     @PatchMapping("/{itemId}")
@@ -41,12 +52,18 @@ public class ItemController {
     }
 
     @GetMapping()
-    public Collection<ItemDto> getAllItemsOfUser(
+    public ResponseEntity<Collection<ItemDto>> getAllItemsOfUser(
             @RequestHeader(USER_ID) int userId,
             @RequestParam(required = false, defaultValue = "0") int page,
-            @RequestParam(required = false, defaultValue = "10") int size) {
+            @RequestParam(required = false, defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
         log.debug(String.format("GET request received. getAllItemsOfUser method used"));
-        return itemService.getAllItemsOfUser(userId, page, size);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        Collection<ItemDto> items = itemService.getAllItemsOfUser(userId, page, size);
+        if (withTotal) {
+            response.header(TOTAL_COUNT, String.valueOf(itemService.countItemsOfUser(userId)));
+        }
+        return response.body(items);
     }
 
     @GetMapping("/{itemId}")
@@ -59,9 +76,26 @@ public class ItemController {
     public Collection<ItemDto> searchForItem(
             @NotNull @RequestParam(name = "text") String searchQuery,
             @RequestParam(required = false, defaultValue = "0") int page,
-            @RequestParam(required = false, defaultValue = "10") int size) {
+            @RequestParam(required = false, defaultValue = "10") int size,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
         log.debug(String.format("GET request received. Searching for '%s'", searchQuery));
-        return itemService.search(searchQuery, page, size);
+        if (start == null && end == null) {
+            return itemService.search(searchQuery, page, size);
+        }
+        if (start == null || end == null) {
+            throw new ValidatonException("Both start and end are required to search for free items");
+        }
+        return itemService.search(searchQuery, start, end, page, size);
+    }
+
+    @GetMapping("/{itemId}/availability")
+    public ItemAvailabilityDto getAvailability(
+            @PathVariable int itemId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        log.debug("GET availability of itemId={} from {} to {}", itemId, from, to);
+        return itemService.getAvailability(itemId, from, to);
     }
 
     @ResponseBody
@@ -1,5 +1,6 @@
 package ru.practicum.shareit.item.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Data;
@@ -27,4 +28,6 @@ public class ItemDto {
     private ShortBookingInfo lastBooking;
     private ShortBookingInfo nextBooking;
     private List<CommentDto> comments;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ItemHighlightDto highlight;
 }
@@ -20,7 +20,7 @@ public class Item {
     String name;
     String description;
     Boolean available;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id")
     @ToString.Exclude
     User owner;
@@ -2,8 +2,10 @@ package ru.practicum.shareit.item.service;
 
 import org.springframework.data.domain.PageRequest;
 import ru.practicum.shareit.item.dto.CommentDto;
+import ru.practicum.shareit.item.dto.ItemAvailabilityDto;
 import ru.practicum.shareit.item.dto.ItemDto;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 
@@ -11,6 +13,8 @@ public interface ItemService {
 
     Collection<ItemDto> getAllItemsOfUser(int userId, int page, int size);
 
+    long countItemsOfUser(int userId);
+
     ItemDto create(ItemDto itemDto, Integer userId);
 
     ItemDto get(int itemId, int userId);
@@ -23,9 +27,13 @@ public interface ItemService {
 
     Collection<ItemDto> search(String text, int page, int size);
 
+    Collection<ItemDto> search(String text, LocalDateTime start, LocalDateTime end, int page, int size);
+
     CommentDto addComment(CommentDto commentDto, int itemId, int userId);
 
     List<CommentDto> getCommentsByItemId(int itemId);
 
     List<ItemDto> getItemsByRequestId(int requestId);
+
+    ItemAvailabilityDto getAvailability(int itemId, LocalDateTime from, LocalDateTime to);
 }
@@ -2,26 +2,37 @@ package ru.practicum.shareit.item.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import ru.practicum.shareit.booking.dto.TimeSlot;
 import ru.practicum.shareit.booking.model.Booking;
 import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.storage.BookingArchive;
 import ru.practicum.shareit.booking.storage.BookingRepository;
+import ru.practicum.shareit.booking.storage.BookingRuleRepository;
+import ru.practicum.shareit.booking.utils.BookingAvailabilityIndex;
 import ru.practicum.shareit.exceptions.NotAllowedException;
 import ru.practicum.shareit.exceptions.NotFoundException;
 import ru.practicum.shareit.exceptions.ValidatonException;
 import ru.practicum.shareit.item.dto.CommentDto;
+import ru.practicum.shareit.item.dto.ItemAvailabilityDto;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.dto.ItemHighlightDto;
 import ru.practicum.shareit.item.model.Comment;
 import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.item.storage.CommentsRepository;
 import ru.practicum.shareit.item.storage.ItemRepository;
 import ru.practicum.shareit.item.utils.CommentMapper;
+import ru.practicum.shareit.item.utils.ItemDtoAssembler;
 import ru.practicum.shareit.item.utils.ItemMapper;
+import ru.practicum.shareit.item.utils.ItemSearchIndex;
+import ru.practicum.shareit.item.utils.ItemTextAnalyzer;
 import ru.practicum.shareit.item.utils.ItemsValidator;
+import ru.practicum.shareit.user.model.User;
 import ru.practicum.shareit.user.service.UserServiceImpl;
+import ru.practicum.shareit.user.storage.UserRepository;
 import ru.practicum.shareit.user.utils.UserMapper;
 
 import javax.transaction.Transactional;
@@ -34,6 +45,10 @@ import static java.util.stream.Collectors.toList;
 @Slf4j
 @Transactional
 public class ItemServiceImpl implements ItemService {
+    private static final int HIGHLIGHT_NAME_CHARS = 100;
+    private static final int HIGHLIGHT_DESCRIPTION_CHARS = 160;
+    private static final int MIN_FREE_CHECK_CHUNK = 100;
+    private static final int MAX_FREE_CHECK_CHUNK = 1000;
 
     private final ItemRepository itemStorage;
     private final UserServiceImpl userService;
@@ -41,6 +56,12 @@ public class ItemServiceImpl implements ItemService {
     private final ItemMapper itemMapper;
     private final CommentsRepository commentsRepository;
     private final BookingRepository bookingRepository;
+    private final ItemDtoAssembler assembler;
+    private final BookingAvailabilityIndex availabilityIndex;
+    private final BookingArchive archive;
+    private final UserRepository userRepository;
+    private final ItemSearchIndex searchIndex;
+    private final BookingRuleRepository ruleRepository;
 
     @Autowired
     public ItemServiceImpl(ItemRepository itemStorage,
@@ -48,14 +69,25 @@ public class ItemServiceImpl implements ItemService {
                            ItemsValidator validator,
                            ItemMapper im,
                            CommentsRepository commentsRepository,
-                           BookingRepository br) {
+                           BookingRepository br,
+                           ItemDtoAssembler assembler,
+                           BookingAvailabilityIndex availabilityIndex,
+                           BookingArchive archive,
+                           UserRepository userRepository,
+                           ItemSearchIndex searchIndex,
+                           BookingRuleRepository ruleRepository) {
         this.itemStorage = itemStorage;
         this.userService = userService;
         this.validator = validator;
         this.itemMapper = im;
         this.commentsRepository = commentsRepository;
         this.bookingRepository = br;
-
+        this.assembler = assembler;
+        this.availabilityIndex = availabilityIndex;
+        this.archive = archive;
+        this.userRepository = userRepository;
+        this.searchIndex = searchIndex;
+        this.ruleRepository = ruleRepository;
     }
 
     @Override
@@ -63,23 +95,24 @@ public class ItemServiceImpl implements ItemService {
         log.info("getAllItems servicing...");
         PageRequest pageRequest = PageRequest.of(page, size);
         log.info("getAllItemsOfUserPageable servicing... ");
-        Page<Item> items = itemStorage.findByOwnerId(userId, pageRequest);
-        log.info("Request returned {} items", items.getSize());
-        List<Item> itemsList = items.getContent();
-        ArrayList<ItemDto> result = new ArrayList<>();
-        for (Item i : items) {
-            result.add(itemMapper.itemDtoExtended(i));
-        }
+        Slice<Item> items = itemStorage.findByOwnerId(userId, pageRequest);
+        log.info("Request returned {} items", items.getNumberOfElements());
+        List<ItemDto> result = assembler.toExtendedItemDtos(items.getContent());
         log.info("getAllItemsOfUser is serviced");
         return result;
     }
 
+    @Override
+    public long countItemsOfUser(int userId) {
+        return itemStorage.countByOwnerId(userId);
+    }
+
     @Override
     public Collection<ItemDto> getAllItemsOfUserPageable(int userId, PageRequest pageRequest) {
         log.info("getAllItemsOfUserPageable servicing... ");
-        Page<Item> items = itemStorage.findByOwnerId(userId, pageRequest);
-        log.info("Request returned {} items", items.getSize());
-        return items.stream().map(itemMapper::toItemDto).collect(toList());
+        Slice<Item> items = itemStorage.findByOwnerId(userId, pageRequest);
+        log.info("Request returned {} items", items.getNumberOfElements());
+        return assembler.toItemDtos(items.getContent());
     }
 
 
@@ -89,8 +122,10 @@ public class ItemServiceImpl implements ItemService {
         Item item = itemMapper.toItem(itemDto);
         item.setOwner(UserMapper.toUser(userService.getUser(userId)));
         validator.validateItem(item);
+        Item saved = itemStorage.save(item);
+        searchIndex.index(saved);
         log.info("Create method serviced");
-        return itemMapper.toItemDto(itemStorage.save(item));
+        return itemMapper.toItemDto(saved);
     }
 
     @Override
@@ -144,7 +179,9 @@ public class ItemServiceImpl implements ItemService {
                 itemForUpdate.setRequestId(item.get().getRequestId());
             }
             log.info("ItemId={} is updating..", itemId);
-            return itemMapper.toItemDto(itemStorage.save(itemForUpdate));
+            Item saved = itemStorage.save(itemForUpdate);
+            searchIndex.index(saved);
+            return itemMapper.toItemDto(saved);
         } else {
             throw new NotFoundException(String.format("Object not found: %s", itemTransferName));
         }
@@ -160,39 +197,110 @@ public class ItemServiceImpl implements ItemService {
         }
         log.info("Deleting itemId={}", itemId);
         itemStorage.deleteById(itemId);
+        searchIndex.delete(itemId);
         return true;
     }
 
+    /**
+     * Matching ids come from the search index ranked by relevance, so only the items of the requested page
+     * are read.
+     */
     @Override
     public Collection<ItemDto> search(String text, int page, int size) {
         log.info("Search request for string '{}' is servicing..", text);
-        PageRequest pageRequest = PageRequest.of(page, size);
         if (text.isEmpty()) {
             log.warn("Text is empty. Nothing to search");
             return Collections.emptyList();
         }
         log.info("Getting search results");
-        List<ItemDto> result = itemStorage.getItemsBySearchQuery(text.toUpperCase(), pageRequest).stream()
-                .map(itemMapper::toItemDto).collect(toList());
+        return toSearchResults(text, searchIndex.search(text), page, size);
+    }
+
+    /**
+     * Matches are checked in rank order, a chunk at a time, until the requested page is filled, so a common
+     * word doesn't bind every matching id into one query. Chunks start at the size of the pages up to the
+     * requested one and double up to MAX_FREE_CHECK_CHUNK. Approved bookings overlapping the window are
+     * excluded by an anti-join, approved occurrences of booking rules through the availability index.
+     */
+    @Override
+    public Collection<ItemDto> search(String text, LocalDateTime start, LocalDateTime end, int page, int size) {
+        log.info("Search request for string '{}' free from {} to {} is servicing..", text, start, end);
+        if (!end.isAfter(start)) {
+            throw new ValidatonException("Search window should end after it starts");
+        }
+        if (text.isEmpty()) {
+            log.warn("Text is empty. Nothing to search");
+            return Collections.emptyList();
+        }
+        List<Integer> matched = searchIndex.search(text);
+        if (matched.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int wanted = (int) Math.min((long) (page + 1) * size, matched.size());
+        int chunk = Math.min(Math.max(wanted, MIN_FREE_CHECK_CHUNK), MAX_FREE_CHECK_CHUNK);
+        List<Integer> free = new ArrayList<>();
+        int from = 0;
+        while (from < matched.size() && free.size() < wanted) {
+            List<Integer> candidates = matched.subList(from, (int) Math.min((long) from + chunk, matched.size()));
+            Set<Integer> unbooked = itemStorage.findFreeIdsBetween(candidates, start, end);
+            Set<Integer> byRules = unbooked.isEmpty() ? Set.of()
+                    : availabilityIndex.findWithApprovedOccurrence(unbooked, start, end);
+            candidates.stream()
+                    .filter(itemId -> unbooked.contains(itemId) && !byRules.contains(itemId))
+                    .forEach(free::add);
+            from += candidates.size();
+            chunk = Math.min(chunk * 2, MAX_FREE_CHECK_CHUNK);
+        }
+        log.debug("Checked {} of {} matches to fill page {}", from, matched.size(), page);
+        return toSearchResults(text, free, page, size);
+    }
+
+    private List<ItemDto> toSearchResults(String text, List<Integer> ranked, int page, int size) {
+        int from = (int) Math.min((long) page * size, ranked.size());
+        List<Integer> ids = ranked.subList(from, Math.min(from + size, ranked.size()));
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Integer, Item> items = new HashMap<>();
+        itemStorage.findAllById(ids).forEach(item -> items.put(item.getId(), item));
+        List<ItemDto> result = assembler.toItemDtos(ids.stream()
+                .map(items::get)
+                .filter(Objects::nonNull)
+                .collect(toList()));
+        List<String> terms = ItemTextAnalyzer.queryTerms(text);
+        result.forEach(dto -> dto.setHighlight(new ItemHighlightDto(
+                ItemTextAnalyzer.highlight(dto.getName(), terms, HIGHLIGHT_NAME_CHARS),
+                ItemTextAnalyzer.highlight(dto.getDescription(), terms, HIGHLIGHT_DESCRIPTION_CHARS))));
         return result;
     }
 
+    /**
+     * The author needs an APPROVED booking of the item that has ended, live or archived, or an APPROVED
+     * booking rule whose first occurrence has ended.
+     */
     @Override
     public CommentDto addComment(CommentDto commentDto, int itemId, int userId) {
         log.info("AddComment request received. Processing..");
-        Booking booking = Optional.ofNullable(
-                        bookingRepository.findFirstByItem_IdAndBooker_IdAndEndIsBeforeAndStatus(
-                                itemId,
-                                userId,
-                                LocalDateTime.now(),
-                                BookingStatus.APPROVED))
-                .orElseThrow(() -> new ValidatonException(
-                        String.format("User id=%s has never booked item id=%s", userId, itemId)));
+        LocalDateTime now = LocalDateTime.now();
+        Booking booking = bookingRepository.findFirstByItem_IdAndBooker_IdAndEndIsBeforeAndStatus(
+                itemId, userId, now, BookingStatus.APPROVED);
+        User author;
+        Item item;
+        if (booking != null) {
+            author = booking.getBooker();
+            item = booking.getItem();
+        } else if (archive.hasApproved(itemId, userId, now)
+                || ruleRepository.existsApprovedEndedBefore(itemId, userId, now)) {
+            author = userRepository.getReferenceById(userId);
+            item = itemStorage.getReferenceById(itemId);
+        } else {
+            throw new ValidatonException(String.format("User id=%s has never booked item id=%s", userId, itemId));
+        }
         Comment comment = Comment.builder()
                 .text(commentDto.getText())
-                .author(booking.getBooker())
-                .created(LocalDateTime.now())
-                .item(booking.getItem())
+                .author(author)
+                .created(now)
+                .item(item)
                 .build();
         log.info("addComment is worked out");
         return CommentMapper.toCommentDto(commentsRepository.save(comment));
@@ -216,9 +324,43 @@ public class ItemServiceImpl implements ItemService {
 
     @Override
     public List<ItemDto> getItemsByRequestId(int requestId) {
-        return itemStorage.findAllByRequestId(requestId,
-                        Sort.by(Sort.Direction.DESC, "id")).stream()
-                .map(itemMapper::toItemDto)
-                .collect(toList());
+        return assembler.toItemDtos(itemStorage.findAllByRequestId(requestId, Sort.by(Sort.Direction.DESC, "id")));
+    }
+
+    /**
+     * Busy periods come from the WAITING and APPROVED bookings of the availability index;
+     * the window is clipped to start no earlier than now, since past bookings aren't indexed.
+     */
+    @Override
+    public ItemAvailabilityDto getAvailability(int itemId, LocalDateTime from, LocalDateTime to) {
+        if (!to.isAfter(from)) {
+            throw new ValidatonException("Availability window should end after it starts");
+        }
+        if (!itemStorage.existsById(itemId)) {
+            throw new NotFoundException(String.format("Item id=%s not found", itemId));
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime start = from.isBefore(now) ? now : from;
+        List<TimeSlot> busy = start.isBefore(to) ? availabilityIndex.findBusy(itemId, start, to) : List.of();
+        List<TimeSlot> free = new ArrayList<>();
+        LocalDateTime cursor = start;
+        for (TimeSlot slot : busy) {
+            if (slot.getStart().isAfter(cursor)) {
+                free.add(new TimeSlot(cursor, slot.getStart()));
+            }
+            cursor = slot.getEnd();
+        }
+        if (cursor.isBefore(to)) {
+            free.add(new TimeSlot(cursor, to));
+        }
+        log.debug("Availability of itemId={} from {} to {}: {} busy, {} free", itemId, start, to,
+                busy.size(), free.size());
+        return ItemAvailabilityDto.builder()
+                .itemId(itemId)
+                .from(start)
+                .to(to)
+                .busy(busy)
+                .free(free)
+                .build();
     }
 }
@@ -1,13 +1,23 @@
 package ru.practicum.shareit.item.storage;
 
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.practicum.shareit.item.model.Comment;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface CommentsRepository extends JpaRepository<Comment, Integer> {
-    List<Comment> findAllByItem_Id(int itemId, Sort sort);
+    @EntityGraph(Comment.WITH_AUTHOR)
+    @Query("select c from Comment c where c.item.id = :itemId")
+    List<Comment> findAllByItem_Id(@Param("itemId") int itemId, Sort sort);
+
+    @EntityGraph(Comment.WITH_AUTHOR)
+    @Query("select c from Comment c where c.item.id in :itemIds order by c.created desc")
+    List<Comment> findAllByItemIds(@Param("itemIds") Collection<Integer> itemIds);
 }
@@ -1,7 +1,8 @@
 package ru.practicum.shareit.item.storage;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -9,17 +10,32 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.practicum.shareit.item.model.Item;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 @Repository
 public interface ItemRepository extends JpaRepository<Item, Integer> {
-    Page<Item> findByOwnerId(int ownerId, PageRequest pageRequest);
+    @Query("select i from Item i where i.owner.id = :ownerId")
+    Slice<Item> findByOwnerId(@Param("ownerId") int ownerId, PageRequest pageRequest);
 
-    @Query("select i from Item i " +
-            "where lower(i.name) like lower(concat('%', :search, '%')) " +
-            " or lower(i.description) like lower(concat('%', :search, '%')) " +
-            " and i.available = true")
-    List<Item> getItemsBySearchQuery(@Param("search") String text, PageRequest pageRequest);
+    long countByOwnerId(int ownerId);
+
+    /**
+     * Ids of the given search matches without APPROVED bookings overlapping [start, end).
+     * The anti-join probes bookings_item_status_start_end_idx once per matching item.
+     */
+    @Query("select i.id from Item i " +
+            "where i.id in :ids " +
+            " and not exists (select b.id from Booking b where b.item = i " +
+            "  and b.status = ru.practicum.shareit.booking.model.BookingStatus.APPROVED " +
+            "  and b.start < :end and b.end > :start)")
+    Set<Integer> findFreeIdsBetween(@Param("ids") Collection<Integer> ids,
+                                    @Param("start") LocalDateTime start,
+                                    @Param("end") LocalDateTime end);
+
+    List<Item> findByIdGreaterThanOrderById(int id, Pageable pageable);
 
     List<Item> findAllByRequestId(int requestId, Sort sort);
 
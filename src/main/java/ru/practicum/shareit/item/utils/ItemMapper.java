@@ -3,11 +3,15 @@ package ru.practicum.shareit.item.utils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
+import ru.practicum.shareit.booking.dto.ShortBookingInfo;
 import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.item.dto.CommentDto;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.item.service.ItemService;
 
+import java.util.List;
+
 @Component
 public class ItemMapper {
 
@@ -54,4 +58,18 @@ public class ItemMapper {
                 .comments(itemService.getCommentsByItemId(item.getId()))
                 .build();
     }
+
+    public ItemDto toItemDto(Item item, List<CommentDto> comments,
+                             ShortBookingInfo lastBooking, ShortBookingInfo nextBooking) {
+        return ItemDto.builder()
+                .id(item.getId())
+                .name(item.getName())
+                .description(item.getDescription())
+                .available(item.getAvailable())
+                .requestId(item.getRequestId())
+                .lastBooking(lastBooking)
+                .nextBooking(nextBooking)
+                .comments(comments)
+                .build();
+    }
 }
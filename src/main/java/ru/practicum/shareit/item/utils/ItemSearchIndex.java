@@ -0,0 +1,270 @@
+package ru.practicum.shareit.item.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.storage.ItemRepository;
+import ru.practicum.shareit.utils.TransactionCallbacks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over item names and descriptions. Text is split into stemmed words by
+ * {@link ItemTextAnalyzer}; a query matches an item when every query word is a prefix of one of its words,
+ * so results show up while the last word is still being typed. Terms are kept sorted, and a prefix is looked
+ * up as a range. The unstemmed words are kept sorted too: a half-typed last word such as "drilli" is looked
+ * up among them and expanded to the terms of the words it starts. Matches are ranked with BM25F: term
+ * frequencies are normalised by field length, the name counts NAME_BOOST times as much as the description,
+ * and rare terms weigh more than common ones.
+ * The index is built from the items table on startup and then kept up to date by item writes, which are
+ * applied immediately and compensated if their transaction rolls back. Operators can rebuild it on a running
+ * instance with the rebuild operation of the ru.practicum.shareit:type=ItemSearchIndex MBean; it is not
+ * exposed over HTTP.
+ */
+@Component
+@ManagedResource(objectName = "ru.practicum.shareit:type=ItemSearchIndex", description = "Item search index")
+@Slf4j
+public class ItemSearchIndex {
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double NAME_BOOST = 3.0;
+
+    private final ItemRepository itemRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private NavigableMap<String, Map<Integer, int[]>> postings = new TreeMap<>();
+    private NavigableMap<String, Integer> words = new TreeMap<>();
+    private Map<Integer, Document> documents = new HashMap<>();
+    private long nameLengths;
+    private long descriptionLengths;
+
+    @Autowired
+    public ItemSearchIndex(ItemRepository itemRepository) {
+        this.itemRepository = itemRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        rebuild();
+    }
+
+    /**
+     * Reads all items in pages keyed by id and replaces the index.
+     * Item writes and searches wait until it's done.
+     */
+    @ManagedOperation(description = "Rebuilds the index from the items table, returns the number of items")
+    public int rebuild() {
+        long started = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            postings = new TreeMap<>();
+            words = new TreeMap<>();
+            documents = new HashMap<>();
+            nameLengths = 0;
+            descriptionLengths = 0;
+            List<Item> page = itemRepository.findByIdGreaterThanOrderById(0, PageRequest.of(0, REBUILD_PAGE_SIZE));
+            while (!page.isEmpty()) {
+                page.forEach(item -> add(item.getId(), Document.of(item)));
+                page = itemRepository.findByIdGreaterThanOrderById(page.get(page.size() - 1).getId(),
+                        PageRequest.of(0, REBUILD_PAGE_SIZE));
+            }
+            log.info("Item search index rebuilt with {} items, {} terms in {} ms", documents.size(),
+                    postings.size(), (System.nanoTime() - started) / 1_000_000);
+            return documents.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void index(Item item) {
+        Document previous;
+        lock.writeLock().lock();
+        try {
+            previous = remove(item.getId());
+            add(item.getId(), Document.of(item));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        TransactionCallbacks.afterRollback(() -> restore(item.getId(), previous));
+    }
+
+    public void delete(int itemId) {
+        Document previous;
+        lock.writeLock().lock();
+        try {
+            previous = remove(itemId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        TransactionCallbacks.afterRollback(() -> restore(itemId, previous));
+    }
+
+    /**
+     * Returns the ids of available items matching every word of the text, best match first and by id
+     * among equal scores. A query word expanded to several terms scores as its best-scoring term.
+     */
+    public List<Integer> search(String text) {
+        List<ItemTextAnalyzer.Token> tokens = ItemTextAnalyzer.tokens(text);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+        Set<String> leading = new LinkedHashSet<>();
+        tokens.subList(0, tokens.size() - 1).forEach(token -> leading.add(token.getTerm()));
+        ItemTextAnalyzer.Token last = tokens.get(tokens.size() - 1);
+        lock.readLock().lock();
+        try {
+            List<Collection<String>> queryWords = new ArrayList<>();
+            leading.forEach(term -> queryWords.add(startingWith(postings, term)));
+            queryWords.add(expandLast(last));
+            double averageName = Math.max(1.0, (double) nameLengths / Math.max(1, documents.size()));
+            double averageDescription = Math.max(1.0, (double) descriptionLengths / Math.max(1, documents.size()));
+            Map<Integer, Double> scores = null;
+            for (Collection<String> terms : queryWords) {
+                Map<Integer, Double> wordScores = new HashMap<>();
+                for (String term : terms) {
+                    Map<Integer, int[]> frequencies = postings.get(term);
+                    double idf = Math.log(1 + (documents.size() - frequencies.size() + 0.5)
+                            / (frequencies.size() + 0.5));
+                    for (Map.Entry<Integer, int[]> entry : frequencies.entrySet()) {
+                        if (scores != null && !scores.containsKey(entry.getKey())) {
+                            continue;
+                        }
+                        Document document = documents.get(entry.getKey());
+                        double tf = NAME_BOOST * entry.getValue()[0]
+                                / (1 - B + B * document.nameLength / averageName)
+                                + entry.getValue()[1] / (1 - B + B * document.descriptionLength / averageDescription);
+                        wordScores.merge(entry.getKey(), idf * tf * (K1 + 1) / (tf + K1), Math::max);
+                    }
+                }
+                if (scores != null) {
+                    Map<Integer, Double> previous = scores;
+                    wordScores.replaceAll((itemId, score) -> score + previous.get(itemId));
+                }
+                scores = wordScores;
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+            List<Map.Entry<Integer, Double>> ranked = new ArrayList<>();
+            for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                if (documents.get(entry.getKey()).available) {
+                    ranked.add(entry);
+                }
+            }
+            ranked.sort(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey()));
+            List<Integer> result = new ArrayList<>(ranked.size());
+            ranked.forEach(entry -> result.add(entry.getKey()));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Terms starting with the stem of the last query word, plus the terms of the unstemmed words starting
+     * with it as typed.
+     */
+    private Collection<String> expandLast(ItemTextAnalyzer.Token last) {
+        Set<String> terms = new TreeSet<>(startingWith(postings, last.getTerm()));
+        for (String word : startingWith(words, last.getWord())) {
+            terms.add(ItemTextAnalyzer.stem(word));
+        }
+        return terms;
+    }
+
+    private static Set<String> startingWith(NavigableMap<String, ?> sorted, String prefix) {
+        return sorted.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet();
+    }
+
+    private void add(int itemId, Document document) {
+        document.frequencies.forEach((term, frequency) ->
+                postings.computeIfAbsent(term, key -> new HashMap<>()).put(itemId, frequency));
+        document.words.forEach(word -> words.merge(word, 1, Integer::sum));
+        documents.put(itemId, document);
+        nameLengths += document.nameLength;
+        descriptionLengths += document.descriptionLength;
+    }
+
+    private Document remove(int itemId) {
+        Document document = documents.remove(itemId);
+        if (document != null) {
+            for (String term : document.frequencies.keySet()) {
+                Map<Integer, int[]> frequencies = postings.get(term);
+                frequencies.remove(itemId);
+                if (frequencies.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+            document.words.forEach(word ->
+                    words.computeIfPresent(word, (key, count) -> count > 1 ? count - 1 : null));
+            nameLengths -= document.nameLength;
+            descriptionLengths -= document.descriptionLength;
+        }
+        return document;
+    }
+
+    private void restore(int itemId, Document previous) {
+        lock.writeLock().lock();
+        try {
+            remove(itemId);
+            if (previous != null) {
+                add(itemId, previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Per-term frequencies of an item, as {in name, in description}, its distinct unstemmed words
+     * and the word counts of both fields.
+     */
+    private static final class Document {
+        private final Map<String, int[]> frequencies;
+        private final Set<String> words;
+        private final int nameLength;
+        private final int descriptionLength;
+        private final boolean available;
+
+        private Document(Map<String, int[]> frequencies, Set<String> words, int nameLength, int descriptionLength,
+                         boolean available) {
+            this.frequencies = frequencies;
+            this.words = words;
+            this.nameLength = nameLength;
+            this.descriptionLength = descriptionLength;
+            this.available = available;
+        }
+
+        private static Document of(Item item) {
+            Map<String, int[]> frequencies = new HashMap<>();
+            Set<String> words = new HashSet<>();
+            List<ItemTextAnalyzer.Token> name = ItemTextAnalyzer.tokens(item.getName());
+            List<ItemTextAnalyzer.Token> description = ItemTextAnalyzer.tokens(item.getDescription());
+            name.forEach(token -> frequencies.computeIfAbsent(token.getTerm(), key -> new int[2])[0]++);
+            description.forEach(token -> frequencies.computeIfAbsent(token.getTerm(), key -> new int[2])[1]++);
+            name.forEach(token -> words.add(token.getWord()));
+            description.forEach(token -> words.add(token.getWord()));
+            return new Document(frequencies, words, name.size(), description.size(),
+                    Boolean.TRUE.equals(item.getAvailable()));
+        }
+    }
+}
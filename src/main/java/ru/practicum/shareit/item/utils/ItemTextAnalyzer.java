@@ -0,0 +1,205 @@
+package ru.practicum.shareit.item.utils;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Turns item text into search terms: lower-case words with light English or Russian suffix stripping,
+ * picked by the script of the word, so "drills" and "drilling" both become "drill" and "дрелью" becomes
+ * "дрел". Tokens keep the unstemmed lower-case word as well, because the last word of a query may still be
+ * typed: "drilli" is not a prefix of the term "drill", only of the word "drilling". Also cuts highlighted
+ * fragments, in which matched words are wrapped in em tags and the rest of the text is HTML-escaped.
+ */
+public final class ItemTextAnalyzer {
+    public static final String HIGHLIGHT_START = "<em>";
+    public static final String HIGHLIGHT_END = "</em>";
+
+    private static final int MIN_STEM = 3;
+    private static final String ELLIPSIS = "…";
+    private static final String[] RUSSIAN_ENDINGS = {
+            "иями", "ться", "ями", "ами", "ией", "ием", "иях", "ого", "его", "ому", "ему", "ыми", "ими",
+            "ях", "ах", "ов", "ев", "ей", "ий", "ый", "ой", "ая", "яя", "ое", "ее", "ые", "ие", "ых", "их",
+            "ым", "им", "ом", "ем", "ую", "юю", "ью", "ия", "ья", "ть",
+            "ь", "а", "я", "о", "е", "ы", "и", "у", "ю", "й"
+    };
+    private static final String[] ENGLISH_ENDINGS = {"ingly", "edly", "ing", "ed", "ly", "s"};
+
+    private ItemTextAnalyzer() {
+    }
+
+    @Value
+    public static class Token {
+        int start;
+        int end;
+        String word;
+        String term;
+    }
+
+    public static List<Token> tokens(String text) {
+        List<Token> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String word = normalize(text.substring(start, i));
+                tokens.add(new Token(start, i, word, stem(word)));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        for (Token token : tokens(text)) {
+            terms.add(token.getTerm());
+        }
+        return terms;
+    }
+
+    /**
+     * Returns the stems of the query words followed by the unstemmed last word, which is matched as typed.
+     */
+    public static List<String> queryTerms(String text) {
+        List<Token> tokens = tokens(text);
+        List<String> terms = new ArrayList<>();
+        for (Token token : tokens) {
+            terms.add(token.getTerm());
+        }
+        if (!tokens.isEmpty()) {
+            terms.add(tokens.get(tokens.size() - 1).getWord());
+        }
+        return terms;
+    }
+
+    public static String normalize(String word) {
+        return word.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    public static String stem(String word) {
+        String lower = normalize(word);
+        if (lower.isEmpty()) {
+            return lower;
+        }
+        if (Character.UnicodeBlock.of(lower.charAt(0)) == Character.UnicodeBlock.CYRILLIC) {
+            return stripEnding(lower, RUSSIAN_ENDINGS);
+        }
+        if (lower.charAt(0) < 'a' || lower.charAt(0) > 'z') {
+            return lower;
+        }
+        String stem = lower;
+        if (stem.endsWith("ies") && stem.length() > MIN_STEM + 1) {
+            stem = stem.substring(0, stem.length() - 2);
+        } else if (endsWithAny(stem, "ses", "xes", "zes", "ches", "shes")) {
+            stem = stem.substring(0, stem.length() - 2);
+        } else if (!stem.endsWith("ss")) {
+            stem = stripEnding(stem, ENGLISH_ENDINGS);
+        }
+        if (stem.length() > MIN_STEM && stem.endsWith("e")) {
+            return stem.substring(0, stem.length() - 1);
+        }
+        if (stem.length() > MIN_STEM && stem.endsWith("y")) {
+            return stem.substring(0, stem.length() - 1) + "i";
+        }
+        return stem;
+    }
+
+    /**
+     * Returns the escaped text, or a window of about maxChars around the first match, with every word whose
+     * term or unstemmed form starts with one of the query terms highlighted. Returns null when nothing matches.
+     */
+    public static String highlight(String text, List<String> queryTerms, int maxChars) {
+        List<Token> matched = new ArrayList<>();
+        for (Token token : tokens(text)) {
+            if (queryTerms.stream().anyMatch(term -> token.getTerm().startsWith(term)
+                    || token.getWord().startsWith(term))) {
+                matched.add(token);
+            }
+        }
+        if (matched.isEmpty()) {
+            return null;
+        }
+        int from = 0;
+        int to = text.length();
+        if (to > maxChars) {
+            from = Math.max(0, matched.get(0).getStart() - maxChars / 4);
+            to = Math.min(text.length(), from + maxChars);
+            from = wordStart(text, from);
+        }
+        StringBuilder fragment = new StringBuilder();
+        if (from > 0) {
+            fragment.append(ELLIPSIS);
+        }
+        int position = from;
+        for (Token token : matched) {
+            if (token.getStart() < from || token.getEnd() > to) {
+                continue;
+            }
+            escape(text, position, token.getStart(), fragment);
+            fragment.append(HIGHLIGHT_START);
+            escape(text, token.getStart(), token.getEnd(), fragment);
+            fragment.append(HIGHLIGHT_END);
+            position = token.getEnd();
+        }
+        escape(text, position, to, fragment);
+        if (to < text.length()) {
+            fragment.append(ELLIPSIS);
+        }
+        return fragment.toString();
+    }
+
+    private static String stripEnding(String word, String[] endings) {
+        for (String ending : endings) {
+            if (word.endsWith(ending) && word.length() - ending.length() >= MIN_STEM) {
+                return word.substring(0, word.length() - ending.length());
+            }
+        }
+        return word;
+    }
+
+    private static boolean endsWithAny(String word, String... endings) {
+        for (String ending : endings) {
+            if (word.endsWith(ending)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int wordStart(String text, int position) {
+        while (position > 0 && Character.isLetterOrDigit(text.charAt(position - 1))) {
+            position--;
+        }
+        return position;
+    }
+
+    private static void escape(String text, int from, int to, StringBuilder out) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+}
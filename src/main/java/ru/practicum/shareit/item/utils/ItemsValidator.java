@@ -36,13 +36,7 @@ public class ItemsValidator {
                 () -> new NotFoundException("Item id=" + itemId + " not found"));
         User inputUser = userStorage.findById(userId).orElseThrow(
                 () -> new NotFoundException("User id " + userId + " not found"));
-        User itemOwner = userStorage.findById(inputItem.getOwner().getId()).orElseThrow(
-                () -> new NotFoundException("Item owner was not found for item id=" + itemId));
-        if (inputUser == itemOwner) {
-            return true;
-        } else {
-            return false;
-        }
+        return inputItem.getOwner().getId() == inputUser.getId();
     }
 
     public boolean isAvailable(Integer itemId) {
@@ -2,9 +2,11 @@ package ru.practicum.shareit.request;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.practicum.shareit.request.dto.ItemRequestDto;
 import ru.practicum.shareit.request.service.ItemRequestService;
+import ru.practicum.shareit.utils.IdempotencyStore;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Positive;
@@ -16,19 +18,25 @@ import java.util.List;
 @RequestMapping(path = "/requests")
 public class ItemRequestController {
     private final ItemRequestService service;
+    private final IdempotencyStore idempotencyStore;
     private static final String USER_ID = "X-Sharer-User-id";
+    private static final String TOTAL_COUNT = "X-Total-Count";
 
     @Autowired
-    public ItemRequestController(ItemRequestService service) {
+    public ItemRequestController(ItemRequestService service, IdempotencyStore idempotencyStore) {
         this.service = service;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @ResponseBody
     @PostMapping
     public ItemRequestDto create(@Valid @RequestBody ItemRequestDto itemRequestDto,
-                                 @RequestHeader(USER_ID) int requesterId) {
+                                 @RequestHeader(USER_ID) int requesterId,
+                                 @RequestHeader(value = IdempotencyStore.HEADER, required = false)
+                                 String idempotencyKey) {
         log.info("POST request for creating ItemRequest by userId={} received", requesterId);
-        return service.create(itemRequestDto, requesterId, LocalDateTime.now());
+        return idempotencyStore.execute("requests", requesterId, idempotencyKey, itemRequestDto,
+                () -> service.create(itemRequestDto, requesterId, LocalDateTime.now()));
     }
 
     @GetMapping("/{requestId}")
@@ -45,10 +53,17 @@ public class ItemRequestController {
     }
 
     @GetMapping("/all")
-    public List<ItemRequestDto> getAllItemRequests(@RequestHeader(USER_ID) int userId,
-                                                   @RequestParam(defaultValue = "0") Integer from,
-                                                   @RequestParam(defaultValue = "10") @Positive Integer size) {
+    public ResponseEntity<List<ItemRequestDto>> getAllItemRequests(
+            @RequestHeader(USER_ID) int userId,
+            @RequestParam(defaultValue = "0") Integer from,
+            @RequestParam(defaultValue = "10") @Positive Integer size,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
         log.info("GET request for getting all ItemRequests received from userId={}", userId);
-        return service.getAllItemRequests(userId, from, size);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        List<ItemRequestDto> requests = service.getAllItemRequests(userId, from, size);
+        if (withTotal) {
+            response.header(TOTAL_COUNT, String.valueOf(service.countAllItemRequests(userId)));
+        }
+        return response.body(requests);
     }
 }
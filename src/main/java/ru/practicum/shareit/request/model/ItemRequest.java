@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import ru.practicum.shareit.user.model.User;
 
 import javax.persistence.*;
@@ -16,13 +17,17 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @Builder
 @Table(name = "item_request")
+@NamedEntityGraph(name = ItemRequest.WITH_REQUESTER, attributeNodes = @NamedAttributeNode("requester"))
 public class ItemRequest {
+    public static final String WITH_REQUESTER = "ItemRequest.withRequester";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
     private String description;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "requester_id", referencedColumnName = "id")
+    @ToString.Exclude
     private User requester;
     private LocalDateTime created;
 }
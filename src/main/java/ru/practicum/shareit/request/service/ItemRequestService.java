@@ -13,4 +13,6 @@ public interface ItemRequestService {
     List<ItemRequestDto> getOwnItemRequests(int requesterId);
 
     List<ItemRequestDto> getAllItemRequests(int userId, Integer from, Integer size);
+
+    long countAllItemRequests(int userId);
 }
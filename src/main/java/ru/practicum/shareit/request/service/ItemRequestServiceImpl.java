@@ -11,7 +11,7 @@ import ru.practicum.shareit.exceptions.NotFoundException;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.item.storage.ItemRepository;
-import ru.practicum.shareit.item.utils.ItemMapper;
+import ru.practicum.shareit.item.utils.ItemDtoAssembler;
 import ru.practicum.shareit.request.dto.ItemRequestDto;
 import ru.practicum.shareit.request.model.ItemRequest;
 import ru.practicum.shareit.request.storage.ItemRequestRepository;
@@ -35,17 +35,17 @@ public class ItemRequestServiceImpl implements ItemRequestService {
     private final ItemRequestRepository repository;
     private final ItemRepository itemRepository;
     private final UserRepository userRepository;
-    private final ItemMapper itemMapper;
+    private final ItemDtoAssembler assembler;
 
     @Autowired
     public ItemRequestServiceImpl(ItemRequestRepository repository,
                                   UserRepository userRepository,
                                   ItemRepository itemRepository,
-                                  ItemMapper itemMapper) {
+                                  ItemDtoAssembler assembler) {
         this.repository = repository;
         this.userRepository = userRepository;
         this.itemRepository = itemRepository;
-        this.itemMapper = itemMapper;
+        this.assembler = assembler;
 
     }
 
@@ -58,10 +58,8 @@ public class ItemRequestServiceImpl implements ItemRequestService {
                         () -> new NotFoundException(String.format("User id=%s not found", requesterId))),
                 created);
         ItemRequest savedItemRequest = repository.save(itemRequest);
-        List<ItemDto> itemDtosOfRequest = itemRepository.findAllByRequestId(savedItemRequest.getId(), Sort.unsorted())
-                .stream()
-                .map(itemMapper::toItemDto)
-                .collect(toList());
+        List<ItemDto> itemDtosOfRequest = assembler.toItemDtos(
+                itemRepository.findAllByRequestId(savedItemRequest.getId(), Sort.unsorted()));
         return ItemRequestMapper.toItemRequestDto(savedItemRequest, itemDtosOfRequest);
     }
 
@@ -74,10 +72,8 @@ public class ItemRequestServiceImpl implements ItemRequestService {
                 () -> new NotFoundException(String.format("User id=%s not found", userId))));
         ItemRequest itemRequest = repository.findById(itemRequestId).orElseThrow(
                 () -> new ItemRequestNotFound(String.format("Item request id=%s not found", itemRequestId)));
-        List<ItemDto> itemDtosOfRequest = itemRepository.findAllByRequestId(itemRequest.getId(), Sort.unsorted())
-                .stream()
-                .map(itemMapper::toItemDto)
-                .collect(toList());
+        List<ItemDto> itemDtosOfRequest = assembler.toItemDtos(
+                itemRepository.findAllByRequestId(itemRequest.getId(), Sort.unsorted()));
         return ItemRequestMapper.toItemRequestDto(itemRequest, itemDtosOfRequest);
     }
 
@@ -102,24 +98,24 @@ public class ItemRequestServiceImpl implements ItemRequestService {
         return getItemDtosForRequest(requests);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public long countAllItemRequests(int userId) {
+        return repository.countByRequesterIdNot(userId);
+    }
+
     private List<ItemRequestDto> getItemDtosForRequest(List<ItemRequest> itemRequestList) {
         log.debug("Getting itemsOfRequestsList");
         List<Item> itemsOfRequestsList = itemRepository.findAllByRequestIdIn(
                 itemRequestList.stream().map(ItemRequest::getId).collect(toList())); // get all items for all requests
-        List<ItemDto> itemDtosOfCurrentRequest = new ArrayList<>(); // will be used for items to request mapping
         List<ItemRequestDto> result = new ArrayList<>(); // will contain the final requests list
-        Map<Integer, List<Item>> itemsOfRequestMap = itemsOfRequestsList.stream()
-                .collect(Collectors.groupingBy(Item::getRequestId));
+        Map<Integer, List<ItemDto>> itemsOfRequestMap = assembler.toItemDtos(itemsOfRequestsList).stream()
+                .collect(Collectors.groupingBy(ItemDto::getRequestId));
         log.debug("itemRequestList got {} records", itemRequestList.size());
         log.debug("itemsOfRequestsList got {} records", itemsOfRequestsList.size());
         for (ItemRequest ir : itemRequestList) {
-            if (itemsOfRequestMap.containsKey(ir.getId())) {
-                itemDtosOfCurrentRequest.addAll(itemsOfRequestMap.get(ir.getId())
-                        .stream()
-                        .map(itemMapper::toItemDto)
-                        .collect(Collectors.toList()));
-            }
-            result.add(ItemRequestMapper.toItemRequestDto(ir, itemDtosOfCurrentRequest));
+            result.add(ItemRequestMapper.toItemRequestDto(ir,
+                    itemsOfRequestMap.getOrDefault(ir.getId(), new ArrayList<>())));
         }
         return result;
     }
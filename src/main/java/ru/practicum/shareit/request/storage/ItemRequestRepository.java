@@ -1,18 +1,32 @@
 package ru.practicum.shareit.request.storage;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 import ru.practicum.shareit.request.model.ItemRequest;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface ItemRequestRepository extends PagingAndSortingRepository<ItemRequest, Integer> {
-    List<ItemRequest> findAllByRequesterId(int requesterId, Sort sort);
+    @Override
+    @EntityGraph(ItemRequest.WITH_REQUESTER)
+    Optional<ItemRequest> findById(Integer id);
 
-    Page<ItemRequest> findAllByRequesterIdNot(int userId, Pageable pageable);
+    @EntityGraph(ItemRequest.WITH_REQUESTER)
+    @Query("select r from ItemRequest r where r.requester.id = :requesterId")
+    List<ItemRequest> findAllByRequesterId(@Param("requesterId") int requesterId, Sort sort);
 
-    Page<ItemRequest> findAllByRequesterIdNotOrderByCreatedDesc(int userId, PageRequest pageRequest);
+    @EntityGraph(ItemRequest.WITH_REQUESTER)
+    Slice<ItemRequest> findAllByRequesterIdNot(int userId, Pageable pageable);
+
+    @EntityGraph(ItemRequest.WITH_REQUESTER)
+    Slice<ItemRequest> findAllByRequesterIdNotOrderByCreatedDesc(int userId, PageRequest pageRequest);
+
+    long countByRequesterIdNot(int userId);
 }
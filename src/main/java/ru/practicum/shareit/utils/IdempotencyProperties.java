@@ -0,0 +1,28 @@
+package ru.practicum.shareit.utils;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "shareit.idempotency")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class IdempotencyProperties {
+    /**
+     * How long a stored response is replayed for retries with the same key.
+     */
+    Duration ttl = Duration.ofHours(24);
+    /**
+     * Upper bound of stored responses, the oldest ones are dropped first.
+     */
+    int maxEntries = 10_000;
+    /**
+     * How long a duplicate waits for the request it repeats before it is answered with a conflict.
+     */
+    Duration replayTimeout = Duration.ofSeconds(10);
+}
@@ -0,0 +1,158 @@
+package ru.practicum.shareit.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.exceptions.ConflictException;
+import ru.practicum.shareit.exceptions.ValidatonException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Remembers responses of create requests by their Idempotency-Key header, so that a retried request gets
+ * the stored response instead of creating a duplicate. Keys are scoped by endpoint and user.
+ * A duplicate arriving while the first request still runs waits for its outcome up to replayTimeout and is
+ * then rejected as a conflict. Only successful responses are kept; they expire after the ttl, and the oldest
+ * completed ones are dropped once maxEntries is reached.
+ */
+@Component
+@Slf4j
+public class IdempotencyStore {
+    public static final String HEADER = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyProperties properties;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>();
+
+    @Autowired
+    public IdempotencyStore(IdempotencyProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Runs the action once per key and returns its result to every request with the same key.
+     * Without a key the action just runs.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String scope, int userId, String idempotencyKey, Object request, Supplier<T> action) {
+        if (idempotencyKey == null) {
+            return action.get();
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new ValidatonException(String.format("%s should have 1 to %s characters", HEADER, MAX_KEY_LENGTH));
+        }
+        Key key = new Key(scope, userId, idempotencyKey);
+        Entry entry;
+        boolean first = false;
+        synchronized (entries) {
+            long now = System.nanoTime();
+            evictExpired(now);
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt - now <= 0) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(request, now + properties.getTtl().toNanos());
+                entries.put(key, entry);
+                evictOverflow();
+                first = true;
+            }
+        }
+        if (!Objects.equals(entry.request, request)) {
+            throw new ConflictException(String.format("%s %s was already used for a different request",
+                    HEADER, idempotencyKey));
+        }
+        if (first) {
+            return complete(key, entry, action);
+        }
+        log.debug("Replaying {} response for {} {} of userId={}", scope, HEADER, idempotencyKey, userId);
+        try {
+            return (T) entry.response.get(properties.getReplayTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw inProgress(idempotencyKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw inProgress(idempotencyKey);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    private static ConflictException inProgress(String idempotencyKey) {
+        return new ConflictException(String.format("Request with %s %s is in progress, retry later",
+                HEADER, idempotencyKey));
+    }
+
+    private <T> T complete(Key key, Entry entry, Supplier<T> action) {
+        try {
+            T result = action.get();
+            entry.response.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            synchronized (entries) {
+                entries.remove(key, entry);
+            }
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt - now > 0) {
+                return;
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Entries of requests still running are kept, or a duplicate arriving meanwhile would run the action again.
+     */
+    private void evictOverflow() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > properties.getMaxEntries() && iterator.hasNext()) {
+            if (iterator.next().response.isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Value
+    private static class Key {
+        String scope;
+        int userId;
+        String idempotencyKey;
+    }
+
+    private static final class Entry {
+        private final Object request;
+        private final long expiresAt;
+        private final CompletableFuture<Object> response = new CompletableFuture<>();
+
+        private Entry(Object request, long expiresAt) {
+            this.request = request;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,3 @@
+-- covers the overlap probe of the free-item search; its prefix still serves the queries of the replaced index
+CREATE INDEX IF NOT EXISTS bookings_item_status_start_end_idx ON bookings (item_id, status, start_date, end_date);
+DROP INDEX IF EXISTS bookings_item_status_start_idx;
@@ -0,0 +1,11 @@
+CREATE SEQUENCE IF NOT EXISTS booking_outbox_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS booking_outbox (
+    id BIGINT NOT NULL,
+    booking_id INTEGER NOT NULL,
+    event_type VARCHAR(25) NOT NULL,
+    payload VARCHAR(4096) NOT NULL,
+    created TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    CONSTRAINT PK_BOOKING_OUTBOX PRIMARY KEY (id)
+);
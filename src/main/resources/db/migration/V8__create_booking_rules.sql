@@ -0,0 +1,18 @@
+-- one row per recurring booking; occurrences are computed from the first one, never stored
+CREATE TABLE IF NOT EXISTS booking_rules (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    start_date TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    end_date TIMESTAMP WITHOUT TIME ZONE NOT NULL CHECK(end_date > start_date),
+    frequency VARCHAR(10) NOT NULL,
+    repeat_interval INTEGER NOT NULL CHECK(repeat_interval > 0),
+    occurrences INTEGER NOT NULL CHECK(occurrences > 0),
+    item_id INTEGER NOT NULL,
+    booker_id INTEGER NOT NULL,
+    status VARCHAR(25),
+    version BIGINT NOT NULL DEFAULT 0,
+    CONSTRAINT PK_BOOKING_RULE PRIMARY KEY (id),
+    CONSTRAINT FK_BOOKING_RULE_FOR_BOOKER FOREIGN KEY (booker_id) REFERENCES users (id),
+    CONSTRAINT FK_BOOKING_RULE_FOR_ITEM FOREIGN KEY (item_id) REFERENCES items (id)
+);
+CREATE INDEX IF NOT EXISTS booking_rules_item_status_idx ON booking_rules (item_id, status);
+CREATE INDEX IF NOT EXISTS booking_rules_booker_idx ON booking_rules (booker_id);
@@ -0,0 +1,2 @@
+-- lets the expiry job find WAITING bookings that have started; databases migrated by the former V6 already have it
+CREATE INDEX IF NOT EXISTS bookings_status_start_idx ON bookings (status, start_date);
@@ -0,0 +1,125 @@
+package ru.practicum.shareit;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.shareit.booking.model.BookingState;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.storage.BookingQuery;
+import ru.practicum.shareit.booking.storage.BookingRepository;
+import ru.practicum.shareit.booking.storage.BookingRuleRepository;
+import ru.practicum.shareit.booking.utils.BookingCursor;
+import ru.practicum.shareit.item.storage.CommentsRepository;
+import ru.practicum.shareit.item.storage.ItemRepository;
+import ru.practicum.shareit.request.storage.ItemRequestRepository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Calls the hot repository methods, captures the SQL Hibernate generates for them and checks with EXPLAIN
+ * that every statement is served by an index. Parameters are bound as NULL: H2 picks the plan from the
+ * shape of the conditions, not from the values.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "ru.practicum.shareit.RecordingStatementInspector")
+@Transactional
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class SchemaIndexesTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final BookingRepository bookingRepository;
+    private final BookingRuleRepository ruleRepository;
+    private final ItemRepository itemRepository;
+    private final CommentsRepository commentsRepository;
+    private final ItemRequestRepository requestRepository;
+
+    @TestFactory
+    public Stream<DynamicTest> repositoryQueriesShouldUseIndexes() {
+        LocalDateTime now = LocalDateTime.now();
+        List<BookingStatus> active = List.of(BookingStatus.WAITING, BookingStatus.APPROVED);
+        return Stream.of(
+                query("BookingRepository.findRows BOOKER ALL", () ->
+                        bookingRepository.findRows(rows(BookingQuery.Role.BOOKER, BookingState.ALL, now).build())),
+                query("BookingRepository.findRows BOOKER CURRENT", () ->
+                        bookingRepository.findRows(rows(BookingQuery.Role.BOOKER, BookingState.CURRENT, now).build())),
+                query("BookingRepository.findRows BOOKER PAST", () ->
+                        bookingRepository.findRows(rows(BookingQuery.Role.BOOKER, BookingState.PAST, now).build())),
+                query("BookingRepository.findRows BOOKER FUTURE", () ->
+                        bookingRepository.findRows(rows(BookingQuery.Role.BOOKER, BookingState.FUTURE, now).build())),
+                query("BookingRepository.findRows BOOKER WAITING", () ->
+                        bookingRepository.findRows(rows(BookingQuery.Role.BOOKER, BookingState.WAITING, now).build())),
+                query("BookingRepository.findRows BOOKER ALL after cursor", () ->
+                        bookingRepository.findRows(rows(BookingQuery.Role.BOOKER, BookingState.ALL, now)
+                                .cursor(new BookingCursor(now, 10)).build())),
+                query("BookingRepository.count BOOKER ALL", () ->
+                        bookingRepository.count(rows(BookingQuery.Role.BOOKER, BookingState.ALL, now).build())),
+                query("BookingRepository.findRows OWNER ALL", () ->
+                        bookingRepository.findRows(rows(BookingQuery.Role.OWNER, BookingState.ALL, now).build())),
+                query("BookingRepository.findRows OWNER WAITING", () ->
+                        bookingRepository.findRows(rows(BookingQuery.Role.OWNER, BookingState.WAITING, now).build())),
+                query("BookingRepository.findStartedBefore", () ->
+                        bookingRepository.findStartedBefore(1, now, PageRequest.of(0, 1))),
+                query("BookingRepository.findFirstByItem_IdAndBooker_IdAndEndIsBeforeAndStatus", () ->
+                        bookingRepository.findFirstByItem_IdAndBooker_IdAndEndIsBeforeAndStatus(
+                                1, 2, now, BookingStatus.APPROVED)),
+                query("BookingRepository.findByItem_IdAndStatusInAndEndIsAfter", () ->
+                        bookingRepository.findByItem_IdAndStatusInAndEndIsAfter(1, active, now)),
+                query("BookingRepository.findNextBooking", () -> bookingRepository.findNextBooking(1)),
+                query("ItemRepository.findFreeIdsBetween", () ->
+                        itemRepository.findFreeIdsBetween(List.of(1, 2, 3), now, now.plusDays(1))),
+                query("BookingRuleRepository.findByItem_IdAndStatusIn", () ->
+                        ruleRepository.findByItem_IdAndStatusIn(1, active)),
+                query("BookingRuleRepository.findByBooker_IdOrderByIdDesc", () ->
+                        ruleRepository.findByBooker_IdOrderByIdDesc(1, PageRequest.of(0, 10))),
+                query("ItemRepository.findByOwnerId", () -> itemRepository.findByOwnerId(1, PageRequest.of(0, 10))),
+                query("ItemRepository.findAllByRequestId", () ->
+                        itemRepository.findAllByRequestId(1, Sort.by(Sort.Direction.DESC, "id"))),
+                query("ItemRepository.findAllByRequestIdIn", () -> itemRepository.findAllByRequestIdIn(List.of(1, 2))),
+                query("CommentsRepository.findAllByItem_Id", () ->
+                        commentsRepository.findAllByItem_Id(1, Sort.by(Sort.Direction.DESC, "created"))),
+                query("ItemRequestRepository.findAllByRequesterId", () ->
+                        requestRepository.findAllByRequesterId(1, Sort.by(Sort.Direction.DESC, "created")))
+        );
+    }
+
+    private static BookingQuery.BookingQueryBuilder rows(BookingQuery.Role role, BookingState state,
+                                                         LocalDateTime now) {
+        return BookingQuery.builder().role(role).userId(1).state(state).now(now).limit(10);
+    }
+
+    private DynamicTest query(String name, Runnable call) {
+        return DynamicTest.dynamicTest(name, () -> {
+            List<String> statements = RecordingStatementInspector.record(call);
+            Assertions.assertFalse(statements.isEmpty(), "No SQL was emitted");
+            for (String sql : statements) {
+                String plan = explain(sql);
+                Assertions.assertFalse(plan.contains("tableScan"), () -> "Full scan in plan: " + plan);
+            }
+        });
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.execute((java.sql.Connection connection) -> {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+                int parameters = statement.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    statement.setObject(i, null);
+                }
+                try (ResultSet plan = statement.executeQuery()) {
+                    plan.next();
+                    return plan.getString(1);
+                }
+            }
+        });
+    }
+}
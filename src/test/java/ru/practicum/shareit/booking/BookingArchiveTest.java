@@ -0,0 +1,373 @@
+package ru.practicum.shareit.booking;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.shareit.booking.dto.ArchivedBooking;
+import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingRuleDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingRuleDto;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.model.RecurrenceFrequency;
+import ru.practicum.shareit.booking.service.BookingArchiveJob;
+import ru.practicum.shareit.booking.service.BookingRuleService;
+import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.booking.storage.BookingArchive;
+import ru.practicum.shareit.booking.storage.BookingRepository;
+import ru.practicum.shareit.booking.utils.BookingArchiveProperties;
+import ru.practicum.shareit.booking.utils.BookingAvailabilityIndex;
+import ru.practicum.shareit.exceptions.ConflictException;
+import ru.practicum.shareit.exceptions.NotFoundException;
+import ru.practicum.shareit.item.dto.CommentDto;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.user.dto.UserDto;
+import ru.practicum.shareit.user.service.UserService;
+import ru.practicum.shareit.utils.CursorPage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Archive segments are only published when the transaction that deletes their rows commits,
+ * so this test commits its changes and every user gets a unique email.
+ */
+@SpringBootTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class BookingArchiveTest {
+    private final BookingArchiveJob archiveJob;
+    private final BookingArchive archive;
+    private final BookingArchiveProperties properties;
+    private final BookingAvailabilityIndex availabilityIndex;
+    private final BookingService bookingService;
+    private final BookingRuleService ruleService;
+    private final UserService userService;
+    private final ItemService itemService;
+    private final BookingRepository bookingRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    private UserDto owner;
+    private UserDto booker;
+    private ItemDto item;
+
+    private void createItem(String name) {
+        owner = userService.addUser(UserDto.builder().name("Owner").email(uniqueEmail()).build());
+        booker = userService.addUser(UserDto.builder().name("Booker").email(uniqueEmail()).build());
+        item = itemService.create(ItemDto.builder()
+                .name(name)
+                .description(name + " for rent")
+                .available(true)
+                .build(), owner.getId());
+    }
+
+    private BookingDto book(int daysAgo, Boolean approved) {
+        LocalDateTime start = LocalDateTime.now().plusDays(1000 - daysAgo);
+        BookingDto booking = bookingService.create(IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start)
+                .end(start.plusHours(12))
+                .build(), booker.getId());
+        if (approved != null) {
+            bookingService.update(booking.getId(), owner.getId(), approved);
+        }
+        if (daysAgo > 0) {
+            LocalDateTime end = LocalDateTime.now().minusDays(daysAgo).truncatedTo(ChronoUnit.MICROS);
+            jdbcTemplate.update("UPDATE bookings SET start_date = ?, end_date = ? WHERE id = ?",
+                    end.minusHours(12), end, booking.getId());
+        }
+        return booking;
+    }
+
+    private static String uniqueEmail() {
+        return UUID.randomUUID() + "@archive.test";
+    }
+
+    private List<Integer> ids(List<BookingDto> bookings) {
+        return bookings.stream().map(BookingDto::getId).collect(toList());
+    }
+
+    @Test
+    public void archivedBookingsShouldStayInListsCountsAndLookups() {
+        createItem("Canoe");
+        BookingDto oldest = book(400, true);
+        BookingDto old = book(300, true);
+        BookingDto rejected = book(250, false);
+        BookingDto recent = book(1, true);
+        BookingDto future = book(0, null);
+        long archivedBefore = archive.size();
+
+        Assertions.assertEquals(3, archiveJob.archiveEnded(LocalDateTime.now()));
+        Assertions.assertEquals(archivedBefore + 3, archive.size());
+        Assertions.assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM bookings WHERE item_id = ?", Integer.class, item.getId()));
+
+        List<Integer> all = List.of(future.getId(), recent.getId(), rejected.getId(), old.getId(), oldest.getId());
+        List<BookingDto> allBookings = bookingService.getBookingsPageable("ALL", booker.getId(), 0, 10);
+        Assertions.assertEquals(all, ids(allBookings));
+        Assertions.assertEquals("Canoe", allBookings.get(4).getItem().getName());
+        Assertions.assertEquals("Booker", allBookings.get(4).getBooker().getName());
+        Assertions.assertEquals(List.of(old.getId(), oldest.getId()),
+                ids(bookingService.getBookingsPageable("PAST", booker.getId(), 2, 2)));
+        Assertions.assertEquals(List.of(rejected.getId()),
+                ids(bookingService.getBookingsOwner("REJECTED", owner.getId(), 0, 10)));
+        Assertions.assertEquals(5, bookingService.countBookings("ALL", booker.getId()));
+        Assertions.assertEquals(4, bookingService.countBookingsOwner("PAST", owner.getId()));
+        Assertions.assertEquals(0, bookingService.countBookings("CURRENT", booker.getId()));
+
+        List<Integer> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<BookingDto> page = bookingService.getBookingsByCursor("ALL", booker.getId(), cursor, 2);
+            paged.addAll(ids(page.getContent()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        Assertions.assertEquals(all, paged);
+
+        List<BookingDto> exported = new ArrayList<>();
+        bookingService.export(bookingService.prepareExportOwner("ALL", owner.getId()), exported::add);
+        Assertions.assertEquals(all, ids(exported));
+
+        BookingDto archived = bookingService.getBookingById(oldest.getId(), owner.getId());
+        Assertions.assertEquals(BookingStatus.APPROVED, archived.getStatus());
+        Assertions.assertEquals(allBookings.get(4), archived);
+        UserDto stranger = userService.addUser(UserDto.builder().name("Stranger").email(uniqueEmail()).build());
+        Assertions.assertThrows(NotFoundException.class,
+                () -> bookingService.getBookingById(oldest.getId(), stranger.getId()));
+
+        Assertions.assertEquals(archive.findById(old.getId()), new BookingArchive(properties).findById(old.getId()));
+        Assertions.assertEquals(0, archiveJob.archiveEnded(LocalDateTime.now()));
+    }
+
+    @Test
+    public void offsetPagesShouldInterleaveLiveAndArchivedBookings() {
+        createItem("Raft");
+        List<Integer> all = new ArrayList<>();
+        for (int daysAgo = 200; daysAgo <= 270; daysAgo += 10) {
+            BookingDto booking = book(daysAgo, true);
+            all.add(booking.getId());
+            if (daysAgo % 20 == 0) {
+                jdbcTemplate.update("UPDATE bookings SET end_date = ? WHERE id = ?",
+                        LocalDateTime.now().plusDays(1), booking.getId());
+            }
+        }
+
+        Assertions.assertEquals(4, archiveJob.archiveEnded(LocalDateTime.now()));
+
+        Assertions.assertEquals(8, bookingService.countBookings("ALL", booker.getId()));
+        for (int size = 1; size <= 3; size++) {
+            for (int from = 0; from <= all.size(); from += size) {
+                Assertions.assertEquals(all.subList(from, Math.min(from + size, all.size())),
+                        ids(bookingService.getBookingsPageable("ALL", booker.getId(), from, size)),
+                        "from " + from + ", size " + size);
+            }
+        }
+        Assertions.assertEquals(List.of(all.get(5), all.get(7)),
+                ids(bookingService.getBookingsOwner("PAST", owner.getId(), 2, 2)));
+    }
+
+    @Test
+    public void itemShouldKeepLastBookingAndCommentsAfterItsBookingsAreArchived() {
+        createItem("Sledge");
+        BookingDto booking = book(200, true);
+
+        Assertions.assertEquals(1, archiveJob.archiveEnded(LocalDateTime.now()));
+
+        Assertions.assertEquals(booking.getId(), itemService.get(item.getId(), owner.getId()).getLastBooking().getId());
+        Assertions.assertEquals(booking.getId(), itemService.getAllItemsOfUser(owner.getId(), 0, 10).iterator().next()
+                .getLastBooking().getId());
+        CommentDto comment = itemService.addComment(CommentDto.builder().text("Fast one").build(),
+                item.getId(), booker.getId());
+        Assertions.assertEquals("Booker", comment.getAuthorName());
+    }
+
+    @Test
+    public void segmentShouldOnlyBeReadableOnceItsDeleteCommits() throws Exception {
+        createItem("Raft");
+        book(300, true);
+        long archivedBefore = archive.size();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Assertions.assertEquals(1, archiveJob.archiveEnded(LocalDateTime.now()));
+            Assertions.assertEquals(archivedBefore, archive.size());
+            Assertions.assertEquals(1, countFromAnotherTransaction());
+            status.setRollbackOnly();
+        });
+        Assertions.assertEquals(archivedBefore, archive.size());
+        Assertions.assertEquals(1, bookingService.countBookings("ALL", booker.getId()));
+        try (Stream<Path> files = Files.list(Path.of(properties.getDir()))) {
+            Assertions.assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+
+        Assertions.assertEquals(1, archiveJob.archiveEnded(LocalDateTime.now()));
+        Assertions.assertEquals(archivedBefore + 1, archive.size());
+        Assertions.assertEquals(1, bookingService.countBookings("ALL", booker.getId()));
+    }
+
+    @Test
+    public void archivingShouldKeepReservationsOfTransactionsInFlight() throws Exception {
+        createItem("Punt");
+        book(300, true);
+        LocalDateTime start = LocalDateTime.now().plusDays(5);
+        IncomingBookingDto slot = IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start)
+                .end(start.plusDays(1))
+                .build();
+        UserDto rival = userService.addUser(UserDto.builder().name("Rival").email(uniqueEmail()).build());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch reserved = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        try {
+            Future<BookingDto> pending = executor.submit(() -> new TransactionTemplate(transactionManager)
+                    .execute(status -> {
+                        BookingDto booking = bookingService.create(slot, booker.getId());
+                        reserved.countDown();
+                        await(commit);
+                        return booking;
+                    }));
+            Assertions.assertTrue(reserved.await(10, TimeUnit.SECONDS));
+
+            Assertions.assertEquals(1, archiveJob.archiveEnded(LocalDateTime.now()));
+            Assertions.assertFalse(availabilityIndex.isFree(item.getId(), slot.getStart(), slot.getEnd()));
+
+            commit.countDown();
+            pending.get(10, TimeUnit.SECONDS);
+            Assertions.assertThrows(ConflictException.class, () -> bookingService.create(slot, rival.getId()));
+        } finally {
+            commit.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelledRuleShouldFreeItsOccurrencesAfterItsItemIsArchived() {
+        createItem("Gondola");
+        book(300, true);
+        LocalDateTime start = LocalDateTime.now().plusDays(3);
+        BookingRuleDto rule = ruleService.create(IncomingBookingRuleDto.builder()
+                .itemId(item.getId())
+                .start(start)
+                .end(start.plusHours(2))
+                .frequency(RecurrenceFrequency.WEEKLY)
+                .count(3)
+                .build(), booker.getId());
+
+        Assertions.assertEquals(1, archiveJob.archiveEnded(LocalDateTime.now()));
+        ruleService.update(rule.getId(), booker.getId(), false);
+
+        UserDto rival = userService.addUser(UserDto.builder().name("Rival").email(uniqueEmail()).build());
+        BookingDto occurrence = bookingService.create(IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start.plusWeeks(1))
+                .end(start.plusWeeks(1).plusHours(2))
+                .build(), rival.getId());
+        Assertions.assertEquals(BookingStatus.WAITING, occurrence.getStatus());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long countFromAnotherTransaction() {
+        try {
+            return CompletableFuture.supplyAsync(() -> bookingService.countBookings("ALL", booker.getId()))
+                    .get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void recoveryShouldSettleSegmentsLeftByACrash(@TempDir Path dir) throws IOException {
+        createItem("Paddle");
+        BookingDto booking = book(300, true);
+        ArchivedBooking archived = new ArchivedBooking(booking.getId(),
+                booking.getStart().truncatedTo(ChronoUnit.MICROS), booking.getEnd().truncatedTo(ChronoUnit.MICROS),
+                BookingStatus.APPROVED, item.getId(), owner.getId(), booker.getId());
+        BookingArchiveProperties crashed = new BookingArchiveProperties();
+        crashed.setDir(dir.toString());
+
+        crashBeforeCommit(new BookingArchive(crashed), archived);
+        BookingArchive restarted = new BookingArchive(crashed);
+        restarted.recover(bookingRepository::findExistingIds);
+        Assertions.assertTrue(restarted.isEmpty());
+
+        new BookingArchive(crashed).append(List.of(archived));
+        restarted = new BookingArchive(crashed);
+        Assertions.assertEquals(1, restarted.size());
+        restarted.recover(bookingRepository::findExistingIds);
+        Assertions.assertTrue(restarted.isEmpty());
+
+        crashBeforeCommit(new BookingArchive(crashed), archived);
+        jdbcTemplate.update("DELETE FROM bookings WHERE id = ?", booking.getId());
+        restarted = new BookingArchive(crashed);
+        restarted.recover(bookingRepository::findExistingIds);
+        Assertions.assertEquals(archived, restarted.findById(booking.getId()).orElseThrow());
+        Assertions.assertEquals(1, new BookingArchive(crashed).size());
+        try (Stream<Path> files = Files.list(dir)) {
+            Assertions.assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    public void segmentsWithoutPostingsShouldStayReadable(@TempDir Path dir) throws IOException {
+        LocalDateTime start = LocalDateTime.now().minusDays(300).truncatedTo(ChronoUnit.MICROS);
+        long startMicros = start.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + start.getNano() / 1_000;
+        ByteBuffer segment = ByteBuffer.allocate(12 + 33)
+                .putInt(0x53484241).putInt(1).putInt(1)
+                .putInt(7).putLong(startMicros).putLong(startMicros + 3_600_000_000L)
+                .putInt(3).putInt(2).putInt(5).put((byte) BookingStatus.APPROVED.ordinal());
+        Files.write(dir.resolve("0000000001.seg"), segment.array());
+        BookingArchiveProperties old = new BookingArchiveProperties();
+        old.setDir(dir.toString());
+
+        BookingArchive opened = new BookingArchive(old);
+
+        Assertions.assertEquals(new ArchivedBooking(7, start, start.plusHours(1), BookingStatus.APPROVED, 3, 2, 5),
+                opened.findById(7).orElseThrow());
+        Assertions.assertTrue(opened.hasApproved(3, 5, LocalDateTime.now()));
+        Assertions.assertEquals(7, opened.findLast(List.of(3), LocalDateTime.now()).get(3).getId());
+    }
+
+    /**
+     * Writes a segment as if the process died before the transaction completed: its callbacks never run.
+     */
+    private void crashBeforeCommit(BookingArchive archive, ArchivedBooking booking) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            archive.append(List.of(booking));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package ru.practicum.shareit.booking;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingRuleDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingRuleDto;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.model.RecurrenceFrequency;
+import ru.practicum.shareit.booking.service.BookingExpiryJob;
+import ru.practicum.shareit.booking.service.BookingRuleService;
+import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.exceptions.ConflictException;
+import ru.practicum.shareit.exceptions.ValidatonException;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.user.dto.UserDto;
+import ru.practicum.shareit.user.service.UserService;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs booking writes from several threads, each call in its own transaction.
+ * Not transactional itself, so every user gets a unique email.
+ */
+@SpringBootTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class BookingConcurrencyTest {
+    private final BookingService bookingService;
+    private final BookingRuleService ruleService;
+    private final BookingExpiryJob expiryJob;
+    private final UserService userService;
+    private final ItemService itemService;
+    private final PlatformTransactionManager transactionManager;
+
+    private UserDto newUser() {
+        String name = UUID.randomUUID().toString();
+        return userService.addUser(UserDto.builder()
+                .name(name)
+                .email(name + "@concurrency.test")
+                .build());
+    }
+
+    private ItemDto newItem(UserDto owner) {
+        return itemService.create(ItemDto.builder()
+                .name("Drill")
+                .description("Concurrency test drill")
+                .available(true)
+                .build(), owner.getId());
+    }
+
+    private IncomingBookingDto slot(ItemDto item, int day) {
+        LocalDateTime start = LocalDateTime.now().plusDays(day + 1);
+        return IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build();
+    }
+
+    private <T> List<T> runConcurrently(List<Callable<T>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void onlyOneOfConcurrentOverlappingBookingsShouldSucceed() throws Exception {
+        ItemDto item = newItem(newUser());
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            UserDto booker = newUser();
+            tasks.add(() -> {
+                try {
+                    bookingService.create(slot(item, 0), booker.getId());
+                    return true;
+                } catch (ConflictException e) {
+                    return false;
+                }
+            });
+        }
+        Assertions.assertEquals(1, runConcurrently(tasks).stream().filter(created -> created).count());
+    }
+
+    @Test
+    public void approveAndCancelShouldNotBothSucceed() throws Exception {
+        UserDto owner = newUser();
+        UserDto booker = newUser();
+        ItemDto item = newItem(owner);
+        for (int day = 0; day < 20; day++) {
+            int bookingId = bookingService.create(slot(item, day), booker.getId()).getId();
+            List<BookingStatus> results = runConcurrently(List.of(
+                    () -> update(bookingId, owner.getId(), true),
+                    () -> update(bookingId, booker.getId(), false)));
+            List<BookingStatus> succeeded = new ArrayList<>(results);
+            succeeded.removeIf(status -> status == null);
+            Assertions.assertEquals(1, succeeded.size(), "Both transitions applied to booking " + bookingId);
+            Assertions.assertEquals(succeeded.get(0),
+                    bookingService.getBookingById(bookingId, owner.getId()).getStatus());
+        }
+    }
+
+    @Test
+    public void concurrentApprovalsShouldApplyOnce() throws Exception {
+        UserDto owner = newUser();
+        UserDto booker = newUser();
+        ItemDto item = newItem(owner);
+        for (int day = 0; day < 20; day++) {
+            int bookingId = bookingService.create(slot(item, day), booker.getId()).getId();
+            List<BookingStatus> results = runConcurrently(List.of(
+                    () -> update(bookingId, owner.getId(), true),
+                    () -> update(bookingId, owner.getId(), true),
+                    () -> update(bookingId, owner.getId(), false)));
+            results.removeIf(status -> status == null);
+            Assertions.assertEquals(1, results.size(), "Several transitions applied to booking " + bookingId);
+        }
+    }
+
+    @Test
+    public void rejectionRolledBackShouldNotLetAnotherBookingTakeTheSlot() throws Exception {
+        UserDto owner = newUser();
+        ItemDto item = newItem(owner);
+        BookingDto waiting = bookingService.create(slot(item, 0), newUser().getId());
+        UserDto rival = newUser();
+        assertSlotSurvivesRolledBackRelease(
+                () -> bookingService.update(waiting.getId(), owner.getId(), false),
+                () -> bookingService.create(slot(item, 0), rival.getId()));
+    }
+
+    @Test
+    public void batchRejectionRolledBackShouldNotLetAnotherBookingTakeTheSlot() throws Exception {
+        UserDto owner = newUser();
+        ItemDto item = newItem(owner);
+        BookingDto waiting = bookingService.create(slot(item, 0), newUser().getId());
+        UserDto rival = newUser();
+        assertSlotSurvivesRolledBackRelease(
+                () -> bookingService.updateBatch(List.of(waiting.getId()), owner.getId(), false),
+                () -> bookingService.create(slot(item, 0), rival.getId()));
+    }
+
+    @Test
+    public void ruleCancellationRolledBackShouldNotLetAnotherBookingTakeAnOccurrence() throws Exception {
+        ItemDto item = newItem(newUser());
+        UserDto booker = newUser();
+        IncomingBookingDto first = slot(item, 0);
+        BookingRuleDto rule = ruleService.create(IncomingBookingRuleDto.builder()
+                .itemId(item.getId())
+                .start(first.getStart())
+                .end(first.getEnd())
+                .frequency(RecurrenceFrequency.WEEKLY)
+                .count(2)
+                .build(), booker.getId());
+        UserDto rival = newUser();
+        assertSlotSurvivesRolledBackRelease(
+                () -> ruleService.update(rule.getId(), booker.getId(), false),
+                () -> bookingService.create(first, rival.getId()));
+    }
+
+    @Test
+    public void ruleApprovalRacingTheExpirySweepShouldApplyOnce() throws Exception {
+        UserDto owner = newUser();
+        UserDto booker = newUser();
+        ItemDto item = newItem(owner);
+        for (int week = 0; week < 20; week++) {
+            IncomingBookingDto first = slot(item, week * 7);
+            BookingRuleDto rule = ruleService.create(IncomingBookingRuleDto.builder()
+                    .itemId(item.getId())
+                    .start(first.getStart())
+                    .end(first.getEnd())
+                    .frequency(RecurrenceFrequency.WEEKLY)
+                    .count(1)
+                    .build(), booker.getId());
+            List<Object> results = runConcurrently(List.of(
+                    () -> approveRule(rule.getId(), owner.getId()),
+                    () -> expiryJob.expireStale(first.getStart().plusMinutes(1))));
+            BookingStatus status = ruleService.getById(rule.getId(), owner.getId()).getStatus();
+            if (results.get(0) == BookingStatus.APPROVED) {
+                Assertions.assertEquals(BookingStatus.APPROVED, status);
+            } else {
+                Assertions.assertEquals(ValidatonException.class, results.get(0), "Approval of rule " + rule.getId());
+                Assertions.assertEquals(BookingStatus.EXPIRED, status);
+            }
+        }
+    }
+
+    private Object approveRule(int ruleId, int ownerId) {
+        try {
+            return ruleService.update(ruleId, ownerId, true).getStatus();
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    /**
+     * Runs the release in a transaction that waits and then rolls back, and tries to book the released
+     * slot from another thread meanwhile. The attempt has to wait for the rollback and then fail.
+     */
+    private void assertSlotSurvivesRolledBackRelease(Runnable release, Callable<BookingDto> rebook)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch rollback = new CountDownLatch(1);
+        try {
+            Future<?> releasing = executor.submit(() -> new TransactionTemplate(transactionManager)
+                    .executeWithoutResult(status -> {
+                        release.run();
+                        released.countDown();
+                        await(rollback);
+                        status.setRollbackOnly();
+                    }));
+            Assertions.assertTrue(released.await(10, TimeUnit.SECONDS));
+            Future<BookingDto> rebooking = executor.submit(rebook);
+            Assertions.assertThrows(TimeoutException.class, () -> rebooking.get(500, TimeUnit.MILLISECONDS),
+                    "The slot was booked while its release could still roll back");
+            rollback.countDown();
+            releasing.get(10, TimeUnit.SECONDS);
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                    () -> rebooking.get(10, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(ConflictException.class, e.getCause());
+        } finally {
+            rollback.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private BookingStatus update(int bookingId, int userId, boolean approved) {
+        try {
+            return bookingService.update(bookingId, userId, approved).getStatus();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Holds the lock of one item in an open transaction and checks that a booking of another item
+     * completes meanwhile, while a booking of the held item waits for the transaction to end.
+     */
+    @Test
+    public void writesToDifferentItemsShouldProceedInParallel() throws Exception {
+        UserDto booker = newUser();
+        ItemDto held = newItem(newUser());
+        ItemDto other = newItem(newUser());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Future<BookingDto> holder = executor.submit(() -> new TransactionTemplate(transactionManager)
+                    .execute(status -> {
+                        BookingDto booking = bookingService.create(slot(held, 0), booker.getId());
+                        locked.countDown();
+                        await(release);
+                        return booking;
+                    }));
+            Assertions.assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+            BookingDto otherItem = CompletableFuture.supplyAsync(
+                    () -> bookingService.create(slot(other, 0), booker.getId())).get(3, TimeUnit.SECONDS);
+            Assertions.assertEquals(BookingStatus.WAITING, otherItem.getStatus());
+            Future<BookingDto> sameItem = executor.submit(() -> bookingService.create(slot(held, 1), booker.getId()));
+            Assertions.assertThrows(TimeoutException.class, () -> sameItem.get(500, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            Assertions.assertEquals(BookingStatus.WAITING, holder.get(10, TimeUnit.SECONDS).getStatus());
+            Assertions.assertEquals(BookingStatus.WAITING, sameItem.get(10, TimeUnit.SECONDS).getStatus());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -5,19 +5,30 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.practicum.shareit.booking.dto.BatchBookingResult;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingSummaryDto;
 import ru.practicum.shareit.booking.dto.IncomingBookingDto;
+import ru.practicum.shareit.booking.dto.ShortItemInfo;
 import ru.practicum.shareit.booking.model.BookingStatus;
 import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.booking.storage.BookingQuery;
 import ru.practicum.shareit.exceptions.UnknownStateException;
-import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.user.dto.UserDto;
+import ru.practicum.shareit.utils.CursorPage;
+import ru.practicum.shareit.utils.IdempotencyProperties;
+import ru.practicum.shareit.utils.IdempotencyStore;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -28,8 +39,10 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 @WebMvcTest(controllers = BookingController.class)
+@Import({IdempotencyStore.class, IdempotencyProperties.class})
 public class BookingControllerTest {
     @Autowired
     ObjectMapper mapper;
@@ -44,14 +57,13 @@ public class BookingControllerTest {
 
     private IncomingBookingDto incomingBookingDto = IncomingBookingDto.builder()
             .itemId(1)
-            .start(LocalDateTime.of(2024, 10, 9, 8, 7))
-            .end(LocalDateTime.of(2025, 10, 9, 8, 7))
+            .start(LocalDateTime.now().plusDays(1).withNano(0))
+            .end(LocalDateTime.now().plusDays(2).withNano(0))
             .build();
 
-    private ItemDto itemDto = ItemDto.builder()
+    private ShortItemInfo itemInfo = ShortItemInfo.builder()
             .id(1)
             .name("Item name")
-            .description("Item Description")
             .available(true)
             .build();
 
@@ -63,9 +75,9 @@ public class BookingControllerTest {
 
     private BookingDto bookingDto = BookingDto.builder()
             .id(1)
-            .start(LocalDateTime.of(2024, 10, 9, 8, 7))
-            .end(LocalDateTime.of(2025, 10, 9, 8, 7))
-            .item(itemDto)
+            .start(LocalDateTime.now().plusDays(1).withNano(0))
+            .end(LocalDateTime.now().plusDays(2).withNano(0))
+            .item(itemInfo)
             .booker(userDto)
             .status(BookingStatus.WAITING)
             .build();
@@ -89,6 +101,105 @@ public class BookingControllerTest {
                 .andExpect(jsonPath("$.status", is(bookingDto.getStatus().toString())));
     }
 
+    @Test
+    public void createBookingShouldBeIdempotentPerKey() throws Exception {
+        when(bookingService.create(any(), any(int.class))).thenReturn(bookingDto);
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(post("/bookings")
+                            .content(mapper.writeValueAsString(incomingBookingDto))
+                            .characterEncoding(StandardCharsets.UTF_8)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .header(USER_ID, 1)
+                            .header(IdempotencyStore.HEADER, "retry-1"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id", is(bookingDto.getId()), int.class));
+        }
+        verify(bookingService).create(any(), any(int.class));
+        mvc.perform(post("/bookings")
+                        .content(mapper.writeValueAsString(IncomingBookingDto.builder()
+                                .itemId(2)
+                                .start(incomingBookingDto.getStart())
+                                .end(incomingBookingDto.getEnd())
+                                .build()))
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1)
+                        .header(IdempotencyStore.HEADER, "retry-1"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void createBatch() throws Exception {
+        when(bookingService.createBatch(any(), any(int.class))).thenReturn(List.of(
+                BatchBookingResult.builder().index(0).status(201).booking(bookingDto).build(),
+                BatchBookingResult.builder().index(1).status(409).error("Item id=1 is already booked").build()));
+        mvc.perform(post("/bookings/batch")
+                        .content(mapper.writeValueAsString(List.of(incomingBookingDto, incomingBookingDto)))
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].booking.id", is(bookingDto.getId()), int.class))
+                .andExpect(jsonPath("$.[0].error").doesNotExist())
+                .andExpect(jsonPath("$.[1].status", is(409)));
+    }
+
+    @Test
+    public void createEmptyBatch() throws Exception {
+        mvc.perform(post("/bookings/batch")
+                        .content("[]")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void createBatchWithNullOrInvalidEntry() throws Exception {
+        mvc.perform(post("/bookings/batch")
+                        .content("[null]")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1))
+                .andExpect(status().isBadRequest());
+        IncomingBookingDto past = IncomingBookingDto.builder()
+                .itemId(1)
+                .start(LocalDateTime.now().minusDays(2))
+                .end(LocalDateTime.now().minusDays(1))
+                .build();
+        mvc.perform(post("/bookings/batch")
+                        .content(mapper.writeValueAsString(List.of(incomingBookingDto, past)))
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1))
+                .andExpect(status().isBadRequest());
+        verify(bookingService, never()).createBatch(any(), any(int.class));
+    }
+
+    @Test
+    public void updateBatch() throws Exception {
+        when(bookingService.updateBatch(any(), any(int.class), any(boolean.class))).thenReturn(List.of(
+                BatchBookingResult.builder().index(0).status(200).booking(bookingDto).build(),
+                BatchBookingResult.builder().index(1).status(404).error("Booking id=7 was not found").build()));
+        mvc.perform(patch("/bookings/owner/bulk")
+                        .param("approved", "true")
+                        .content(mapper.writeValueAsString(List.of(bookingDto.getId(), 7)))
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].booking.id", is(bookingDto.getId()), int.class))
+                .andExpect(jsonPath("$.[1].status", is(404)));
+        verify(bookingService).updateBatch(List.of(bookingDto.getId(), 7), 1, true);
+    }
+
     @Test
     public void getBooking() throws Exception {
         when(bookingService.getBookingById(any(int.class), any(int.class))).thenReturn(bookingDto);
@@ -142,7 +253,32 @@ public class BookingControllerTest {
                         is(bookingDto.getStart().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))))
                 .andExpect(jsonPath("$.[0].end",
                         is(bookingDto.getEnd().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))))
-                .andExpect(jsonPath("$.[0].status", is(bookingDto.getStatus().toString())));
+                .andExpect(jsonPath("$.[0].status", is(bookingDto.getStatus().toString())))
+                .andExpect(jsonPath("$.[0].item.name", is(itemInfo.getName())))
+                .andExpect(jsonPath("$.[0].item.comments").doesNotExist());
+        verify(bookingService, never()).expandItemComments(any());
+    }
+
+    @Test
+    public void getBookingsWithItemComments() throws Exception {
+        when(bookingService.getBookingsPageable(any(String.class), any(int.class), any(Integer.class), any(Integer.class)))
+                .thenReturn(List.of(bookingDto));
+        mvc.perform(get("/bookings?expand=item.comments")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1))
+                .andExpect(status().isOk());
+        verify(bookingService).expandItemComments(List.of(bookingDto));
+    }
+
+    @Test
+    public void getBookingWithUnknownExpand() throws Exception {
+        when(bookingService.getBookingById(any(int.class), any(int.class))).thenReturn(bookingDto);
+        mvc.perform(get("/bookings/1?expand=item.owner")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -167,6 +303,23 @@ public class BookingControllerTest {
                 .andExpect(jsonPath("$.[0].status", is(bookingDto.getStatus().toString())));
     }
 
+    @Test
+    public void getSummaryOwner() throws Exception {
+        when(bookingService.getSummaryOwner(1)).thenReturn(BookingSummaryDto.builder()
+                .all(3)
+                .future(2)
+                .waiting(1)
+                .build());
+        mvc.perform(get("/bookings/owner/summary")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.all", is(3)))
+                .andExpect(jsonPath("$.future", is(2)))
+                .andExpect(jsonPath("$.waiting", is(1)))
+                .andExpect(jsonPath("$.past", is(0)));
+    }
+
     @Test
     public void updateBooking() throws Exception {
         when(bookingService.update(any(int.class), any(int.class), any(Boolean.class))).thenReturn(bookingDto);
@@ -185,4 +338,62 @@ public class BookingControllerTest {
                         is(bookingDto.getEnd().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))))
                 .andExpect(jsonPath("$.status", is(bookingDto.getStatus().toString())));
     }
+
+    @Test
+    public void getBookingsByCursor() throws Exception {
+        when(bookingService.getBookingsByCursor(any(String.class), any(int.class), any(String.class), any(int.class)))
+                .thenReturn(new CursorPage<>(List.of(bookingDto), "next"));
+        mvc.perform(get("/bookings?cursor=&size=1")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "next"))
+                .andExpect(jsonPath("$.[0].id", is(bookingDto.getId()), int.class));
+    }
+
+    @Test
+    public void getBookingsByOwnerWithTotal() throws Exception {
+        when(bookingService.getBookingsOwner(any(String.class), any(int.class), any(Integer.class), any(Integer.class)))
+                .thenReturn(List.of(bookingDto));
+        when(bookingService.countBookingsOwner(any(String.class), any(int.class))).thenReturn(42L);
+        mvc.perform(get("/bookings/owner?withTotal=true")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(USER_ID, 1))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Count", "42"))
+                .andExpect(jsonPath("$.[0].id", is(bookingDto.getId()), int.class));
+    }
+
+    @Test
+    public void exportBookingsOwnerAsNdjson() throws Exception {
+        BookingQuery query = BookingQuery.builder().role(BookingQuery.Role.OWNER).userId(1).build();
+        when(bookingService.prepareExportOwner("PAST", 1)).thenReturn(query);
+        doAnswer(invocation -> {
+            Consumer<BookingDto> consumer = invocation.getArgument(1);
+            consumer.accept(bookingDto);
+            consumer.accept(bookingDto);
+            return null;
+        }).when(bookingService).export(eq(query), any());
+        MvcResult result = mvc.perform(get("/bookings/owner/export?state=PAST")
+                        .header(USER_ID, 1))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String line = mapper.writeValueAsString(bookingDto) + "\n";
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(line + line));
+    }
+
+    @Test
+    public void exportWithUnknownStateIsRejectedBeforeStreaming() throws Exception {
+        when(bookingService.prepareExport("SOMESTATE", 1)).thenThrow(new UnknownStateException("SOMESTATE"));
+        mvc.perform(get("/bookings/export?state=SOMESTATE")
+                        .header(USER_ID, 1))
+                .andExpect(status().isBadRequest())
+                .andExpect(request().asyncNotStarted());
+        verify(bookingService, never()).export(any(), any());
+    }
 }
@@ -0,0 +1,127 @@
+package ru.practicum.shareit.booking;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingDto;
+import ru.practicum.shareit.booking.model.BookingEvent;
+import ru.practicum.shareit.booking.model.BookingEventType;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.service.BookingExpiryJob;
+import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.booking.storage.BookingEventRepository;
+import ru.practicum.shareit.booking.utils.BookingExpiryProperties;
+import ru.practicum.shareit.exceptions.ValidatonException;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.user.dto.UserDto;
+import ru.practicum.shareit.user.service.UserService;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+@SpringBootTest
+@Transactional
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class BookingExpiryJobTest {
+    private final BookingExpiryJob expiryJob;
+    private final BookingExpiryProperties properties;
+    private final BookingService bookingService;
+    private final UserService userService;
+    private final ItemService itemService;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final BookingEventRepository eventRepository;
+
+    private int defaultBatchSize;
+
+    @BeforeEach
+    public void rememberBatchSize() {
+        defaultBatchSize = properties.getBatchSize();
+    }
+
+    @AfterEach
+    public void restoreBatchSize() {
+        properties.setBatchSize(defaultBatchSize);
+    }
+
+    @Test
+    public void shouldExpireStartedWaitingBookingsInBatches() {
+        UserDto owner = userService.addUser(UserDto.builder().name("Owner").email("owner@expiry.test").build());
+        UserDto booker = userService.addUser(UserDto.builder().name("Booker").email("booker@expiry.test").build());
+        ItemDto item = itemService.create(ItemDto.builder()
+                .name("Tent")
+                .description("Four person tent")
+                .available(true)
+                .build(), owner.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        BookingDto[] bookings = new BookingDto[4];
+        for (int i = 0; i < bookings.length; i++) {
+            bookings[i] = bookingService.create(IncomingBookingDto.builder()
+                    .itemId(item.getId())
+                    .start(start.plusDays(i))
+                    .end(start.plusDays(i).plusHours(1))
+                    .build(), booker.getId());
+        }
+        bookingService.update(bookings[1].getId(), owner.getId(), true);
+
+        properties.setBatchSize(1);
+        Assertions.assertEquals(2, expiryJob.expireStale(start.plusDays(2).plusMinutes(30)));
+        entityManager.flush();
+        entityManager.clear();
+
+        Assertions.assertEquals(2, bookingService.countBookings("EXPIRED", booker.getId()));
+        Assertions.assertEquals(1, bookingService.countBookings("WAITING", booker.getId()));
+        Assertions.assertEquals(BookingStatus.APPROVED,
+                bookingService.getBookingById(bookings[1].getId(), booker.getId()).getStatus());
+        Assertions.assertEquals(Set.of(bookings[0].getId(), bookings[2].getId()), eventRepository.findAll().stream()
+                .filter(event -> event.getType() == BookingEventType.EXPIRED)
+                .map(BookingEvent::getBookingId)
+                .collect(toSet()));
+        Assertions.assertThrows(ValidatonException.class,
+                () -> bookingService.update(bookings[0].getId(), owner.getId(), true));
+
+        BookingDto rebooked = bookingService.create(IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build(), booker.getId());
+        Assertions.assertEquals(BookingStatus.WAITING, rebooked.getStatus());
+        Assertions.assertEquals(0, expiryJob.expireStale(start.minusMinutes(1)));
+    }
+
+    @Test
+    public void shouldExpireBookingsThatAlreadyStarted() {
+        UserDto owner = userService.addUser(UserDto.builder().name("Owner").email("owner@expiry.test").build());
+        UserDto booker = userService.addUser(UserDto.builder().name("Booker").email("booker@expiry.test").build());
+        ItemDto item = itemService.create(ItemDto.builder()
+                .name("Kayak")
+                .description("Single kayak")
+                .available(true)
+                .build(), owner.getId());
+        BookingDto booking = bookingService.create(IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(LocalDateTime.now().plusHours(1))
+                .end(LocalDateTime.now().plusHours(2))
+                .build(), booker.getId());
+        jdbcTemplate.update("UPDATE bookings SET start_date = ? WHERE id = ?",
+                LocalDateTime.now().minusHours(1), booking.getId());
+
+        Assertions.assertEquals(1, expiryJob.expireStale(LocalDateTime.now()));
+        entityManager.clear();
+        Assertions.assertEquals(List.of(BookingStatus.EXPIRED), bookingService.getBookingsOwner(
+                "CURRENT", owner.getId(), 0, 10).stream().map(BookingDto::getStatus).collect(toList()));
+    }
+}
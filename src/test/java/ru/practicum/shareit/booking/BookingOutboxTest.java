@@ -0,0 +1,96 @@
+package ru.practicum.shareit.booking;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingDto;
+import ru.practicum.shareit.booking.model.BookingEvent;
+import ru.practicum.shareit.booking.model.BookingEventType;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.service.BookingOutboxRelay;
+import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.booking.storage.BookingEventRepository;
+import ru.practicum.shareit.exceptions.ConflictException;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.user.dto.UserDto;
+import ru.practicum.shareit.user.service.UserService;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+
+@SpringBootTest
+@Transactional
+@Import(InMemoryBookingEventSink.class)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class BookingOutboxTest {
+    private final BookingService bookingService;
+    private final BookingOutboxRelay relay;
+    private final BookingEventRepository eventRepository;
+    private final InMemoryBookingEventSink sink;
+    private final UserService userService;
+    private final ItemService itemService;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+
+    @Test
+    public void bookingChangesShouldBeRelayedAtLeastOnceInOrder() throws Exception {
+        UserDto owner = userService.addUser(UserDto.builder().name("Owner").email("owner@outbox.test").build());
+        UserDto booker = userService.addUser(UserDto.builder().name("Booker").email("booker@outbox.test").build());
+        ItemDto item = itemService.create(ItemDto.builder()
+                .name("Grill")
+                .description("Charcoal grill")
+                .available(true)
+                .build(), owner.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        BookingDto approved = bookingService.create(IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build(), booker.getId());
+        bookingService.update(approved.getId(), owner.getId(), true);
+        BookingDto cancelled = bookingService.create(IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start.plusDays(1))
+                .end(start.plusDays(1).plusHours(1))
+                .build(), booker.getId());
+        bookingService.update(cancelled.getId(), booker.getId(), false);
+        Assertions.assertThrows(ConflictException.class, () -> bookingService.create(IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build(), booker.getId()));
+        Set<Integer> bookingIds = Set.of(approved.getId(), cancelled.getId());
+
+        sink.failNext();
+        Assertions.assertEquals(0, relay.relay());
+        entityManager.clear();
+        Assertions.assertTrue(eventsOf(eventRepository.findAll(), bookingIds).stream()
+                .allMatch(event -> event.getAttempts() == 1));
+
+        relay.relay();
+        List<BookingEvent> delivered = eventsOf(sink.getEvents(), bookingIds);
+        Assertions.assertEquals(List.of(BookingEventType.CREATED, BookingEventType.APPROVED,
+                        BookingEventType.CREATED, BookingEventType.CANCELLED),
+                delivered.stream().map(BookingEvent::getType).collect(toList()));
+        Assertions.assertEquals(BookingStatus.APPROVED,
+                objectMapper.readValue(delivered.get(1).getPayload(), BookingDto.class).getStatus());
+        Assertions.assertTrue(eventsOf(eventRepository.findAll(), bookingIds).isEmpty());
+    }
+
+    private List<BookingEvent> eventsOf(List<BookingEvent> events, Set<Integer> bookingIds) {
+        return events.stream()
+                .filter(event -> bookingIds.contains(event.getBookingId()))
+                .collect(toList());
+    }
+}
@@ -0,0 +1,130 @@
+package ru.practicum.shareit.booking;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.practicum.shareit.booking.utils.IntervalTree;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-item interval index used by BookingAvailabilityIndex with the overlap query
+ * the bookings table would need without it. Run with
+ * {@code mvn -P benchmark test-compile exec:exec
+ * -Dbenchmark=ru.practicum.shareit.booking.BookingOverlapBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookingOverlapBenchmark {
+    private static final LocalDateTime BASE = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Param("1000000")
+    private int bookings;
+
+    @Param("10000")
+    private int items;
+
+    private final Map<Integer, IntervalTree<Integer>> timelines = new HashMap<>();
+    private final Random random = new Random(7);
+    private Connection connection;
+    private PreparedStatement overlapQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:overlap_bench", "test", "test");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE bookings (id INTEGER PRIMARY KEY, item_id INTEGER NOT NULL, " +
+                    "start_date TIMESTAMP NOT NULL, end_date TIMESTAMP NOT NULL, status VARCHAR(25))");
+        }
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO bookings (id, item_id, start_date, end_date, status) VALUES (?, ?, ?, ?, ?)")) {
+            int perItem = bookings / items;
+            int id = 0;
+            for (int item = 0; item < items; item++) {
+                IntervalTree<Integer> timeline = new IntervalTree<>();
+                for (int slot = 0; slot < perItem; slot++) {
+                    LocalDateTime start = BASE.plusDays(slot * 2L);
+                    LocalDateTime end = start.plusDays(1);
+                    timeline.insert(start, end, id);
+                    insert.setInt(1, id++);
+                    insert.setInt(2, item);
+                    insert.setTimestamp(3, Timestamp.valueOf(start));
+                    insert.setTimestamp(4, Timestamp.valueOf(end));
+                    insert.setString(5, "APPROVED");
+                    insert.addBatch();
+                    if (id % 10_000 == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                timelines.put(item, timeline);
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+        overlapQuery = connection.prepareStatement("SELECT COUNT(*) FROM bookings WHERE item_id = ? " +
+                "AND status IN ('WAITING', 'APPROVED') AND start_date < ? AND end_date > ?");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public boolean intervalIndex() {
+        int item = random.nextInt(items);
+        LocalDateTime start = BASE.plusHours(random.nextInt(bookings / items * 48));
+        IntervalTree<Integer> timeline = timelines.get(item);
+        synchronized (timeline) {
+            return timeline.overlaps(start, start.plusHours(12));
+        }
+    }
+
+    @Benchmark
+    public boolean sqlOverlapQuery() throws SQLException {
+        int item = random.nextInt(items);
+        LocalDateTime start = BASE.plusHours(random.nextInt(bookings / items * 48));
+        overlapQuery.setInt(1, item);
+        overlapQuery.setTimestamp(2, Timestamp.valueOf(start.plusHours(12)));
+        overlapQuery.setTimestamp(3, Timestamp.valueOf(start));
+        try (ResultSet rs = overlapQuery.executeQuery()) {
+            rs.next();
+            return rs.getLong(1) > 0;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BookingOverlapBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
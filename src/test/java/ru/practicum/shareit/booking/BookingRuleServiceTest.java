@@ -0,0 +1,212 @@
+package ru.practicum.shareit.booking;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.shareit.booking.dto.BookingRuleDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingRuleDto;
+import ru.practicum.shareit.booking.dto.TimeSlot;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.model.RecurrenceFrequency;
+import ru.practicum.shareit.booking.service.BookingExpiryJob;
+import ru.practicum.shareit.booking.service.BookingRuleService;
+import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.exceptions.ConflictException;
+import ru.practicum.shareit.exceptions.NotFoundException;
+import ru.practicum.shareit.exceptions.ValidatonException;
+import ru.practicum.shareit.item.dto.CommentDto;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.user.dto.UserDto;
+import ru.practicum.shareit.user.service.UserService;
+
+import javax.transaction.Transactional;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+@SpringBootTest
+@Transactional
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class BookingRuleServiceTest {
+    private final BookingRuleService ruleService;
+    private final BookingService bookingService;
+    private final UserService userService;
+    private final ItemService itemService;
+    private final BookingExpiryJob expiryJob;
+    private final JdbcTemplate jdbcTemplate;
+
+    private UserDto owner;
+    private UserDto booker;
+    private ItemDto item;
+    private LocalDateTime start;
+
+    @BeforeEach
+    public void setUp() {
+        owner = userService.addUser(UserDto.builder().name("Owner").email("owner@rules.test").build());
+        booker = userService.addUser(UserDto.builder().name("Booker").email("booker@rules.test").build());
+        item = itemService.create(ItemDto.builder()
+                .name("Parking spot")
+                .description("Spot near the entrance")
+                .available(true)
+                .build(), owner.getId());
+        start = LocalDateTime.now().plusDays(1).truncatedTo(ChronoUnit.HOURS);
+    }
+
+    private IncomingBookingRuleDto.IncomingBookingRuleDtoBuilder weekly(LocalDateTime from) {
+        return IncomingBookingRuleDto.builder()
+                .itemId(item.getId())
+                .start(from)
+                .end(from.plusHours(3))
+                .frequency(RecurrenceFrequency.WEEKLY);
+    }
+
+    private IncomingBookingDto booking(LocalDateTime from, LocalDateTime to) {
+        return IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(from)
+                .end(to)
+                .build();
+    }
+
+    @Test
+    public void ruleShouldBeStoredOnceAndExpandedOnDemand() {
+        BookingRuleDto rule = ruleService.create(weekly(start).count(52).build(), booker.getId());
+
+        Assertions.assertEquals(BookingStatus.WAITING, rule.getStatus());
+        Assertions.assertEquals(52, rule.getCount());
+        Assertions.assertEquals(start.plusWeeks(51).plusHours(3), rule.getLastEnd());
+        Assertions.assertEquals(new TimeSlot(start, start.plusHours(3)), rule.getNextOccurrence());
+        Assertions.assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM booking_rules WHERE item_id = ?", Integer.class, item.getId()));
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM bookings WHERE item_id = ?", Integer.class, item.getId()));
+
+        List<TimeSlot> occurrences = ruleService.getOccurrences(rule.getId(), owner.getId(),
+                start.plusWeeks(10).plusHours(1), 2);
+        Assertions.assertEquals(List.of(new TimeSlot(start.plusWeeks(10), start.plusWeeks(10).plusHours(3)),
+                new TimeSlot(start.plusWeeks(11), start.plusWeeks(11).plusHours(3))), occurrences);
+        Assertions.assertEquals(List.of(), ruleService.getOccurrences(rule.getId(), booker.getId(),
+                start.plusYears(2), 10));
+        Assertions.assertEquals(List.of(new TimeSlot(start.plusWeeks(3), start.plusWeeks(3).plusHours(3))),
+                itemService.getAvailability(item.getId(), start.plusWeeks(3).minusDays(1),
+                        start.plusWeeks(3).plusDays(1)).getBusy());
+        Assertions.assertEquals(List.of(rule), ruleService.getRules(booker.getId(), 0, 10));
+        Assertions.assertEquals(List.of(rule), ruleService.getRulesOwner(owner.getId(), 0, 10));
+
+        UserDto stranger = userService.addUser(UserDto.builder().name("Stranger").email("stranger@rules.test")
+                .build());
+        Assertions.assertThrows(NotFoundException.class, () -> ruleService.getById(rule.getId(), stranger.getId()));
+    }
+
+    @Test
+    public void approvedRuleShouldStayOutOfBookingListsButLetItsBookerComment() {
+        BookingRuleDto rule = ruleService.create(weekly(start).count(4).build(), booker.getId());
+        ruleService.update(rule.getId(), owner.getId(), true);
+        CommentDto comment = CommentDto.builder().text("Handy spot").build();
+
+        Assertions.assertEquals(List.of(), bookingService.getBookingsPageable("ALL", booker.getId(), 0, 10));
+        Assertions.assertEquals(0, bookingService.countBookingsOwner("ALL", owner.getId()));
+        Assertions.assertNull(itemService.get(item.getId(), owner.getId()).getNextBooking());
+        Assertions.assertThrows(ValidatonException.class,
+                () -> itemService.addComment(comment, item.getId(), booker.getId()));
+
+        LocalDateTime lastWeek = start.minusWeeks(1);
+        jdbcTemplate.update("UPDATE booking_rules SET start_date = ?, end_date = ? WHERE id = ?",
+                lastWeek, lastWeek.plusHours(3), rule.getId());
+        Assertions.assertEquals("Booker", itemService.addComment(comment, item.getId(), booker.getId())
+                .getAuthorName());
+    }
+
+    @Test
+    public void occurrencesShouldConflictWithBookingsAndOtherRules() {
+        LocalDateTime taken = start.plusWeeks(5).plusHours(1);
+        bookingService.create(booking(taken, taken.plusHours(1)), booker.getId());
+        Assertions.assertThrows(ConflictException.class,
+                () -> ruleService.create(weekly(start).count(10).build(), booker.getId()));
+
+        BookingRuleDto rule = ruleService.create(weekly(start).count(4).build(), booker.getId());
+        Assertions.assertThrows(ConflictException.class, () -> bookingService.create(
+                booking(start.plusWeeks(2).plusHours(2), start.plusWeeks(2).plusHours(4)), booker.getId()));
+        bookingService.create(booking(start.plusWeeks(2).plusHours(3), start.plusWeeks(2).plusHours(4)),
+                booker.getId());
+        Assertions.assertThrows(ConflictException.class, () -> ruleService.create(IncomingBookingRuleDto.builder()
+                .itemId(item.getId())
+                .start(start.plusHours(2))
+                .end(start.plusHours(4))
+                .frequency(RecurrenceFrequency.DAILY)
+                .until(start.plusDays(3))
+                .build(), booker.getId()));
+
+        ruleService.update(rule.getId(), booker.getId(), false);
+        bookingService.create(booking(start.plusWeeks(1), start.plusWeeks(1).plusHours(1)), booker.getId());
+        Assertions.assertEquals(BookingStatus.CANCELLED, ruleService.getById(rule.getId(), owner.getId())
+                .getStatus());
+    }
+
+    @Test
+    public void ownerShouldDecideAndRepetitionShouldBeValidated() {
+        BookingRuleDto rule = ruleService.create(weekly(start).interval(2).until(start.plusWeeks(9)).build(),
+                booker.getId());
+        Assertions.assertEquals(5, rule.getCount());
+        Assertions.assertThrows(NotFoundException.class, () -> ruleService.update(rule.getId(), booker.getId(), true));
+        Assertions.assertEquals(BookingStatus.APPROVED, ruleService.update(rule.getId(), owner.getId(), true)
+                .getStatus());
+        Assertions.assertThrows(ValidatonException.class, () -> ruleService.update(rule.getId(), owner.getId(), false));
+
+        LocalDateTime later = start.plusYears(1);
+        Assertions.assertThrows(ValidatonException.class, () -> ruleService.create(weekly(later).build(),
+                booker.getId()));
+        Assertions.assertThrows(ValidatonException.class, () -> ruleService.create(weekly(later).count(1000).build(),
+                booker.getId()));
+        Assertions.assertThrows(ValidatonException.class, () -> ruleService.create(weekly(later)
+                .end(later.plusDays(8))
+                .count(2)
+                .build(), booker.getId()));
+        Assertions.assertThrows(NotFoundException.class, () -> ruleService.create(weekly(later).count(2).build(),
+                owner.getId()));
+    }
+
+    @Test
+    public void approvedOccurrencesShouldHideTheItemFromTheFreeSearch() {
+        BookingRuleDto rule = ruleService.create(weekly(start).count(4).build(), booker.getId());
+        LocalDateTime occurrence = start.plusWeeks(2);
+
+        Assertions.assertTrue(freeParkingSpots(occurrence, occurrence.plusHours(1)).contains(item.getId()));
+        ruleService.update(rule.getId(), owner.getId(), true);
+        Assertions.assertFalse(freeParkingSpots(occurrence, occurrence.plusHours(1)).contains(item.getId()));
+        Assertions.assertTrue(freeParkingSpots(occurrence.plusHours(3), occurrence.plusHours(4))
+                .contains(item.getId()));
+        ruleService.update(rule.getId(), booker.getId(), false);
+        Assertions.assertTrue(freeParkingSpots(occurrence, occurrence.plusHours(1)).contains(item.getId()));
+    }
+
+    private List<Integer> freeParkingSpots(LocalDateTime from, LocalDateTime to) {
+        Collection<ItemDto> found = itemService.search("parking spot", from, to, 0, 100);
+        return found.stream().map(ItemDto::getId).collect(toList());
+    }
+
+    @Test
+    public void waitingRuleShouldExpireOnceItsFirstOccurrenceStarts() {
+        BookingRuleDto rule = ruleService.create(weekly(start).count(4).build(), booker.getId());
+        LocalDateTime started = start.minusWeeks(1);
+        jdbcTemplate.update("UPDATE booking_rules SET start_date = ?, end_date = ? WHERE id = ?",
+                started, started.plusHours(3), rule.getId());
+        Assertions.assertThrows(ConflictException.class, () -> bookingService.create(
+                booking(start.plusWeeks(1), start.plusWeeks(1).plusHours(1)), booker.getId()));
+
+        expiryJob.expireStale(LocalDateTime.now());
+
+        Assertions.assertEquals(BookingStatus.EXPIRED, ruleService.getById(rule.getId(), owner.getId()).getStatus());
+        Assertions.assertThrows(ValidatonException.class, () -> ruleService.update(rule.getId(), owner.getId(), true));
+        bookingService.create(booking(start.plusWeeks(1), start.plusWeeks(1).plusHours(1)), booker.getId());
+    }
+}
@@ -1,28 +1,43 @@
 package ru.practicum.shareit.booking;
 
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.shareit.booking.dto.BatchBookingResult;
 import ru.practicum.shareit.booking.dto.BookingDto;
 import ru.practicum.shareit.booking.dto.IncomingBookingDto;
+import ru.practicum.shareit.booking.model.Booking;
+import ru.practicum.shareit.booking.model.BookingStatus;
+import ru.practicum.shareit.booking.model.BookingState;
+import ru.practicum.shareit.booking.storage.BookingQuery;
+import ru.practicum.shareit.booking.storage.BookingRepository;
 import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.exceptions.ConflictException;
 import ru.practicum.shareit.exceptions.NotFoundException;
 import ru.practicum.shareit.exceptions.UnknownStateException;
 import ru.practicum.shareit.exceptions.ValidatonException;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.item.service.ItemService;
 import ru.practicum.shareit.user.dto.UserDto;
 import ru.practicum.shareit.user.model.User;
 import ru.practicum.shareit.user.service.UserService;
+import ru.practicum.shareit.utils.CursorPage;
 
+import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 import static java.lang.Thread.sleep;
+import static java.util.stream.Collectors.toList;
 
 @SpringBootTest
 @Transactional
@@ -31,6 +46,9 @@ public class BookingServiceTest {
     private final BookingService bookingService;
     private final UserService userService;
     private final ItemService itemService;
+    private final EntityManager entityManager;
+    private final BookingRepository bookingRepository;
+    private final JdbcTemplate jdbcTemplate;
 
     private User user = User.builder()
             .id(10)
@@ -93,7 +111,7 @@ public class BookingServiceTest {
                 .start(LocalDateTime.now().minusSeconds(1))
                 .end(LocalDateTime.now().plusSeconds(5))
                 .build();
-        Assertions.assertThrows(DataIntegrityViolationException.class,
+        Assertions.assertThrows(ValidatonException.class,
                 () -> bookingService.create(incomingBookingDto, newUserDto.getId()));
     }
 
@@ -193,8 +211,8 @@ public class BookingServiceTest {
         bookingService.create(incomingBookingDto, newUserDto.getId());
         IncomingBookingDto incomingBookingDto1 = IncomingBookingDto.builder()
                 .itemId(newItemDto.getId())
-                .start(LocalDateTime.now().plusSeconds(6))
-                .end(LocalDateTime.now().plusSeconds(16))
+                .start(LocalDateTime.now().plusSeconds(16))
+                .end(LocalDateTime.now().plusSeconds(26))
                 .build();
         bookingService.create(incomingBookingDto1, newUserDto.getId());
         List<BookingDto> testResult = bookingService.getBookingsPageable(
@@ -215,8 +233,8 @@ public class BookingServiceTest {
         bookingService.create(incomingBookingDto, newUserDto.getId());
         IncomingBookingDto incomingBookingDto1 = IncomingBookingDto.builder()
                 .itemId(newItemDto.getId())
-                .start(LocalDateTime.now().plusSeconds(6))
-                .end(LocalDateTime.now().plusSeconds(16))
+                .start(LocalDateTime.now().plusSeconds(16))
+                .end(LocalDateTime.now().plusSeconds(26))
                 .build();
         bookingService.create(incomingBookingDto1, newUserDto.getId());
         List<BookingDto> testResult = bookingService.getBookingsPageable(
@@ -254,8 +272,8 @@ public class BookingServiceTest {
         bookingService.create(incomingBookingDto, newUserDto.getId());
         IncomingBookingDto incomingBookingDto1 = IncomingBookingDto.builder()
                 .itemId(newItemDto.getId())
-                .start(LocalDateTime.now().plusSeconds(6))
-                .end(LocalDateTime.now().plusSeconds(16))
+                .start(LocalDateTime.now().plusSeconds(16))
+                .end(LocalDateTime.now().plusSeconds(26))
                 .build();
         bookingService.create(incomingBookingDto1, newUserDto.getId());
         List<BookingDto> testResult = bookingService.getBookingsOwner(
@@ -276,8 +294,8 @@ public class BookingServiceTest {
         bookingService.create(incomingBookingDto, newUserDto.getId());
         IncomingBookingDto incomingBookingDto1 = IncomingBookingDto.builder()
                 .itemId(newItemDto.getId())
-                .start(LocalDateTime.now().plusSeconds(6))
-                .end(LocalDateTime.now().plusSeconds(16))
+                .start(LocalDateTime.now().plusSeconds(16))
+                .end(LocalDateTime.now().plusSeconds(26))
                 .build();
         bookingService.create(incomingBookingDto1, newUserDto.getId());
         List<BookingDto> testResult = bookingService.getBookingsOwner(
@@ -298,8 +316,8 @@ public class BookingServiceTest {
         bookingService.create(incomingBookingDto, newUserDto.getId());
         IncomingBookingDto incomingBookingDto1 = IncomingBookingDto.builder()
                 .itemId(newItemDto.getId())
-                .start(LocalDateTime.now().plusSeconds(6))
-                .end(LocalDateTime.now().plusSeconds(16))
+                .start(LocalDateTime.now().plusSeconds(16))
+                .end(LocalDateTime.now().plusSeconds(26))
                 .build();
         BookingDto testBookingDto = bookingService.create(incomingBookingDto1, newUserDto.getId());
         bookingService.update(testBookingDto.getId(), ownerDto.getId(), false);
@@ -460,4 +478,441 @@ public class BookingServiceTest {
                 "CURRENT", ownerDto.getId(), 0, 1);
         Assertions.assertEquals(1, testResult.size());
     }
+
+    @Test
+    public void throwExceptionWhenBookingOverlapsExistingOne() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto newItemDto = itemService.create(itemDto1, ownerDto.getId());
+        bookingService.create(IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(LocalDateTime.now().plusDays(1))
+                .end(LocalDateTime.now().plusDays(3))
+                .build(), newUserDto.getId());
+        IncomingBookingDto overlapping = IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(LocalDateTime.now().plusDays(2))
+                .end(LocalDateTime.now().plusDays(4))
+                .build();
+        Assertions.assertThrows(ConflictException.class,
+                () -> bookingService.create(overlapping, newUserDto.getId()));
+    }
+
+    @Test
+    public void shouldAllowBookingAfterOverlappingOneIsCancelled() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto newItemDto = itemService.create(itemDto1, ownerDto.getId());
+        IncomingBookingDto incomingBookingDto = IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(LocalDateTime.now().plusDays(1))
+                .end(LocalDateTime.now().plusDays(3))
+                .build();
+        BookingDto cancelled = bookingService.create(incomingBookingDto, newUserDto.getId());
+        bookingService.update(cancelled.getId(), newUserDto.getId(), false);
+        BookingDto rebooked = bookingService.create(incomingBookingDto, newUserDto.getId());
+        Assertions.assertNotEquals(cancelled.getId(), rebooked.getId());
+    }
+
+    @Test
+    public void shouldAllowAdjacentBookings() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto newItemDto = itemService.create(itemDto1, ownerDto.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        bookingService.create(IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(start)
+                .end(start.plusDays(1))
+                .build(), newUserDto.getId());
+        BookingDto next = bookingService.create(IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(start.plusDays(1))
+                .end(start.plusDays(2))
+                .build(), newUserDto.getId());
+        Assertions.assertEquals(2, bookingService.getBookingsPageable(
+                "ALL", newUserDto.getId(), 0, 10).size());
+        Assertions.assertNotNull(next);
+    }
+
+    @Test
+    public void shouldPageBookingsByCursor() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto newItemDto = itemService.create(itemDto1, ownerDto.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        for (int i = 0; i < 3; i++) {
+            bookingService.create(IncomingBookingDto.builder()
+                    .itemId(newItemDto.getId())
+                    .start(start.plusDays(i))
+                    .end(start.plusDays(i).plusHours(1))
+                    .build(), newUserDto.getId());
+        }
+        CursorPage<BookingDto> first = bookingService.getBookingsByCursor("FUTURE", newUserDto.getId(), "", 2);
+        Assertions.assertEquals(2, first.getContent().size());
+        Assertions.assertTrue(first.getContent().get(0).getStart().isAfter(first.getContent().get(1).getStart()));
+        Assertions.assertNotNull(first.getNextCursor());
+        CursorPage<BookingDto> second = bookingService.getBookingsByCursor(
+                "FUTURE", newUserDto.getId(), first.getNextCursor(), 2);
+        Assertions.assertEquals(1, second.getContent().size());
+        Assertions.assertNull(second.getNextCursor());
+        Assertions.assertTrue(second.getContent().get(0).getStart().isBefore(first.getContent().get(1).getStart()));
+
+        CursorPage<BookingDto> owner = bookingService.getBookingsOwnerByCursor("WAITING", ownerDto.getId(), "", 3);
+        Assertions.assertEquals(3, owner.getContent().size());
+        Assertions.assertNull(owner.getNextCursor());
+    }
+
+    @Test
+    public void throwExceptionWhenCursorIsMalformed() {
+        UserDto newUserDto = userService.addUser(userDto2);
+        Assertions.assertThrows(ValidatonException.class,
+                () -> bookingService.getBookingsByCursor("ALL", newUserDto.getId(), "not-a-cursor", 10));
+    }
+
+    @Test
+    public void shouldCountBookingsByState() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto newItemDto = itemService.create(itemDto1, ownerDto.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        BookingDto rejected = bookingService.create(IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build(), newUserDto.getId());
+        bookingService.update(rejected.getId(), ownerDto.getId(), false);
+        bookingService.create(IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(start.plusDays(1))
+                .end(start.plusDays(1).plusHours(1))
+                .build(), newUserDto.getId());
+        Assertions.assertEquals(2, bookingService.countBookings("ALL", newUserDto.getId()));
+        Assertions.assertEquals(2, bookingService.countBookings("FUTURE", newUserDto.getId()));
+        Assertions.assertEquals(1, bookingService.countBookingsOwner("REJECTED", ownerDto.getId()));
+        Assertions.assertEquals(0, bookingService.countBookingsOwner("PAST", ownerDto.getId()));
+    }
+
+    @Test
+    public void listOfBookingsShouldCostFixedNumberOfQueries() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        bookingService.create(IncomingBookingDto.builder()
+                .itemId(itemService.create(itemDto1, ownerDto.getId()).getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build(), newUserDto.getId());
+        long oneBooking = queriesOf(() -> bookingService.getBookingsPageable("ALL", newUserDto.getId(), 0, 10));
+        for (int i = 1; i < 6; i++) {
+            bookingService.create(IncomingBookingDto.builder()
+                    .itemId(itemService.create(itemDto2, ownerDto.getId()).getId())
+                    .start(start.plusDays(i))
+                    .end(start.plusDays(i).plusHours(1))
+                    .build(), newUserDto.getId());
+        }
+        long sixBookings = queriesOf(() -> bookingService.getBookingsPageable("ALL", newUserDto.getId(), 0, 10));
+        Assertions.assertEquals(oneBooking, sixBookings);
+
+        List<BookingDto> bookings = bookingService.getBookingsOwner("ALL", ownerDto.getId(), 0, 10);
+        Assertions.assertEquals(6, bookings.size());
+        Assertions.assertTrue(bookings.stream().allMatch(booking -> booking.getItem().getComments() == null));
+        Assertions.assertEquals(1, queriesOf(() -> bookingService.expandItemComments(bookings)));
+        Assertions.assertTrue(bookings.stream().allMatch(booking -> booking.getItem().getComments().isEmpty()));
+    }
+
+    @Test
+    public void bookingPageShouldBeReadAsRowsWithoutHydratingEntities() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        for (int i = 0; i < 3; i++) {
+            bookingService.create(IncomingBookingDto.builder()
+                    .itemId(itemService.create(itemDto1, ownerDto.getId()).getId())
+                    .start(start.plusDays(i))
+                    .end(start.plusDays(i).plusHours(1))
+                    .build(), newUserDto.getId());
+        }
+        Statistics statistics = statisticsOf(() -> bookingService.getBookingsOwner("ALL", ownerDto.getId(), 0, 10));
+        Assertions.assertEquals(0, statistics.getEntityFetchCount());
+        Assertions.assertEquals(0, statistics.getEntityStatistics(Booking.class.getName()).getLoadCount());
+        Assertions.assertEquals(0, statistics.getEntityStatistics(Item.class.getName()).getLoadCount());
+        Assertions.assertEquals(2, statistics.getPrepareStatementCount());
+        Assertions.assertEquals(0, statisticsOf(() -> bookingService.getBookingsByCursor(
+                "FUTURE", newUserDto.getId(), "", 10)).getEntityStatistics(Booking.class.getName()).getLoadCount());
+    }
+
+    @Test
+    public void bookingQueriesOfSameShapeShouldReuseQueryPlan() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        bookingService.getBookingsPageable("WAITING", newUserDto.getId(), 0, 10);
+        Statistics statistics = statisticsOf(() -> {
+            bookingService.getBookingsPageable("WAITING", ownerDto.getId(), 0, 5);
+            bookingService.getBookingsPageable("REJECTED", newUserDto.getId(), 10, 5);
+        });
+        Assertions.assertEquals(0, statistics.getQueryPlanCacheMissCount());
+        Assertions.assertEquals(2, statistics.getQueryPlanCacheHitCount());
+    }
+
+    @Test
+    public void shouldFilterBookingsByItemAndTimeWindow() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto first = itemService.create(itemDto1, ownerDto.getId());
+        ItemDto second = itemService.create(itemDto2, ownerDto.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        for (ItemDto item : List.of(first, second)) {
+            for (int i = 0; i < 3; i++) {
+                bookingService.create(IncomingBookingDto.builder()
+                        .itemId(item.getId())
+                        .start(start.plusDays(i))
+                        .end(start.plusDays(i).plusHours(1))
+                        .build(), newUserDto.getId());
+            }
+        }
+        BookingQuery query = BookingQuery.builder()
+                .role(BookingQuery.Role.OWNER)
+                .userId(ownerDto.getId())
+                .state(BookingState.FUTURE)
+                .now(LocalDateTime.now())
+                .itemId(second.getId())
+                .windowStart(start.plusMinutes(30))
+                .windowEnd(start.plusDays(1).plusMinutes(30))
+                .limit(10)
+                .build();
+        Assertions.assertEquals(2, bookingRepository.count(query));
+        Assertions.assertTrue(bookingRepository.findRows(query).stream()
+                .allMatch(row -> row.getItemId() == second.getId()));
+        query.setItemId(null);
+        Assertions.assertEquals(4, bookingRepository.findRows(query).size());
+    }
+
+    @Test
+    public void throwConflictWhenBookingWasChangedConcurrently() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto newItemDto = itemService.create(itemDto1, ownerDto.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        BookingDto booking = bookingService.create(IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build(), newUserDto.getId());
+        entityManager.flush();
+        jdbcTemplate.update("UPDATE bookings SET version = version + 1 WHERE id = ?", booking.getId());
+        Assertions.assertThrows(ConflictException.class,
+                () -> bookingService.update(booking.getId(), ownerDto.getId(), true));
+    }
+
+    @Test
+    public void shouldCreateBatchWithPerEntryResults() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto item = itemService.create(itemDto1, ownerDto.getId());
+        ItemDto unavailable = itemService.create(ItemDto.builder()
+                .name("Broken")
+                .description("Not available")
+                .available(false)
+                .build(), ownerDto.getId());
+        ItemDto ownItem = itemService.create(itemDto2, newUserDto.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        List<IncomingBookingDto> entries = List.of(
+                IncomingBookingDto.builder().itemId(item.getId()).start(start).end(start.plusHours(2)).build(),
+                IncomingBookingDto.builder().itemId(item.getId()).start(start.plusHours(1)).end(start.plusHours(3))
+                        .build(),
+                IncomingBookingDto.builder().itemId(999).start(start).end(start.plusHours(1)).build(),
+                IncomingBookingDto.builder().itemId(unavailable.getId()).start(start).end(start.plusHours(1)).build(),
+                IncomingBookingDto.builder().itemId(ownItem.getId()).start(start).end(start.plusHours(1)).build(),
+                IncomingBookingDto.builder().itemId(item.getId()).start(start.minusDays(2)).end(start).build(),
+                IncomingBookingDto.builder().itemId(item.getId()).start(start.plusHours(2)).end(start.plusHours(4))
+                        .build());
+        List<BatchBookingResult> results = bookingService.createBatch(entries, newUserDto.getId());
+        Assertions.assertEquals(List.of(201, 409, 404, 400, 404, 400, 201),
+                results.stream().map(BatchBookingResult::getStatus).collect(toList()));
+        Assertions.assertEquals(6, results.get(6).getIndex());
+        Assertions.assertNull(results.get(1).getBooking());
+        Assertions.assertEquals(2, bookingService.countBookings("WAITING", newUserDto.getId()));
+        Assertions.assertThrows(ConflictException.class, () -> bookingService.create(IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start.plusHours(3))
+                .end(start.plusHours(5))
+                .build(), newUserDto.getId()));
+    }
+
+    @Test
+    public void shouldDecideBatchWithPerEntryResultsInOneUpdate() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto item = itemService.create(itemDto1, ownerDto.getId());
+        ItemDto foreignItem = itemService.create(itemDto2, newUserDto.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        List<Integer> waiting = new ArrayList<>();
+        for (int day = 0; day < 4; day++) {
+            waiting.add(bookingService.create(IncomingBookingDto.builder()
+                    .itemId(item.getId())
+                    .start(start.plusDays(day))
+                    .end(start.plusDays(day).plusHours(1))
+                    .build(), newUserDto.getId()).getId());
+        }
+        bookingService.update(waiting.get(3), ownerDto.getId(), true);
+        BookingDto foreign = bookingService.create(IncomingBookingDto.builder()
+                .itemId(foreignItem.getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build(), ownerDto.getId());
+        jdbcTemplate.update("UPDATE bookings SET start_date = ?, end_date = ? WHERE id = ?",
+                start.minusDays(3), start.minusDays(2), waiting.get(2));
+        List<Integer> ids = List.of(waiting.get(0), waiting.get(1), waiting.get(2), waiting.get(3),
+                foreign.getId(), Integer.MAX_VALUE);
+
+        List<BatchBookingResult> results = new ArrayList<>();
+        Statistics statistics = statisticsOf(() -> {
+            results.addAll(bookingService.updateBatch(ids, ownerDto.getId(), false));
+            entityManager.flush();
+        });
+        Assertions.assertEquals(List.of(200, 200, 400, 400, 404, 404),
+                results.stream().map(BatchBookingResult::getStatus).collect(toList()));
+        Assertions.assertEquals(BookingStatus.REJECTED, results.get(1).getBooking().getStatus());
+        Assertions.assertEquals("No way to change status APPROVED", results.get(3).getError());
+        // user check, ownership query, one UPDATE and the batched outbox insert
+        Assertions.assertEquals(4, statistics.getPrepareStatementCount());
+        Assertions.assertEquals(2, bookingService.countBookingsOwner("REJECTED", ownerDto.getId()));
+        Assertions.assertEquals(BookingStatus.WAITING,
+                bookingService.getBookingById(foreign.getId(), ownerDto.getId()).getStatus());
+        bookingService.create(IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build(), newUserDto.getId());
+        Assertions.assertEquals(400, bookingService.updateBatch(List.of(waiting.get(0)), ownerDto.getId(), true)
+                .get(0).getStatus());
+    }
+
+    @Test
+    public void batchShouldInsertWithJdbcBatching() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        List<IncomingBookingDto> entries = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        for (int i = 0; i < 10; i++) {
+            ItemDto item = itemService.create(itemDto1, ownerDto.getId());
+            for (int day = 0; day < 10; day++) {
+                entries.add(IncomingBookingDto.builder()
+                        .itemId(item.getId())
+                        .start(start.plusDays(day))
+                        .end(start.plusDays(day).plusHours(1))
+                        .build());
+            }
+        }
+        Statistics statistics = statisticsOf(() -> {
+            bookingService.createBatch(entries, newUserDto.getId());
+            entityManager.flush();
+        });
+        Assertions.assertEquals(100, statistics.getEntityStatistics(Booking.class.getName()).getInsertCount());
+        Assertions.assertEquals(200, statistics.getEntityInsertCount());
+        // bookings and their outbox events are both inserted in JDBC batches of 50
+        Assertions.assertTrue(statistics.getPrepareStatementCount() <= 12,
+                () -> statistics.getPrepareStatementCount() + " statements for a batch of 100");
+        Assertions.assertEquals(100, bookingService.countBookings("ALL", newUserDto.getId()));
+    }
+
+    @Test
+    public void createShouldCostOneReadAndInserts() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto newItemDto = itemService.create(itemDto1, ownerDto.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        bookingService.create(IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build(), newUserDto.getId());
+
+        BookingDto[] created = new BookingDto[1];
+        Statistics statistics = statisticsOf(() -> {
+            created[0] = bookingService.create(IncomingBookingDto.builder()
+                    .itemId(newItemDto.getId())
+                    .start(start.plusDays(1))
+                    .end(start.plusDays(1).plusHours(1))
+                    .build(), newUserDto.getId());
+            entityManager.flush();
+        });
+        // admission query, booking insert and outbox insert
+        Assertions.assertEquals(3, statistics.getPrepareStatementCount());
+        Assertions.assertEquals(2, statistics.getEntityInsertCount());
+        Assertions.assertEquals(0, statistics.getEntityLoadCount());
+        Assertions.assertEquals(newItemDto.getName(), created[0].getItem().getName());
+        Assertions.assertEquals(newUserDto.getEmail(), created[0].getBooker().getEmail());
+        Assertions.assertEquals(created[0], bookingService.getBookingById(created[0].getId(), newUserDto.getId()));
+    }
+
+    @Test
+    public void rejectedCreateShouldCostOneQuery() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        ItemDto newItemDto = itemService.create(itemDto1, ownerDto.getId());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        IncomingBookingDto ownItem = IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(start)
+                .end(start.plusHours(1))
+                .build();
+        IncomingBookingDto missingItem = IncomingBookingDto.builder()
+                .itemId(Integer.MAX_VALUE)
+                .start(start)
+                .end(start.plusHours(1))
+                .build();
+        Assertions.assertEquals(1, queriesOf(() -> Assertions.assertThrows(NotFoundException.class,
+                () -> bookingService.create(ownItem, ownerDto.getId()))));
+        Assertions.assertEquals(1, queriesOf(() -> Assertions.assertThrows(NotFoundException.class,
+                () -> bookingService.create(missingItem, newUserDto.getId()))));
+        Assertions.assertEquals(1, queriesOf(() -> Assertions.assertThrows(NotFoundException.class,
+                () -> bookingService.create(ownItem, Integer.MAX_VALUE))));
+    }
+
+    @Test
+    public void exportShouldStreamAllRowsWithoutManagedEntities() {
+        UserDto ownerDto = userService.addUser(userDto1);
+        UserDto newUserDto = userService.addUser(userDto2);
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        for (int i = 0; i < 3; i++) {
+            ItemDto item = itemService.create(itemDto1, ownerDto.getId());
+            for (int day = 0; day < 10; day++) {
+                bookingService.create(IncomingBookingDto.builder()
+                        .itemId(item.getId())
+                        .start(start.plusDays(day))
+                        .end(start.plusDays(day).plusHours(1))
+                        .build(), newUserDto.getId());
+            }
+        }
+        List<Integer> exported = new ArrayList<>();
+        List<Integer> managedEntities = new ArrayList<>();
+        Statistics statistics = statisticsOf(() -> bookingService.export(
+                bookingService.prepareExportOwner("FUTURE", ownerDto.getId()), booking -> {
+                    exported.add(booking.getId());
+                    managedEntities.add(entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+                }));
+        Assertions.assertEquals(bookingService.getBookingsOwner("FUTURE", ownerDto.getId(), 0, 100).stream()
+                .map(BookingDto::getId)
+                .collect(toList()), exported);
+        Assertions.assertEquals(0, statistics.getEntityStatistics(Booking.class.getName()).getLoadCount());
+        Assertions.assertEquals(1, managedEntities.stream().distinct().count(), managedEntities::toString);
+        Assertions.assertThrows(NotFoundException.class, () -> bookingService.prepareExport("ALL", Integer.MAX_VALUE));
+    }
+
+    private long queriesOf(Runnable action) {
+        return statisticsOf(action).getPrepareStatementCount();
+    }
+
+    private Statistics statisticsOf(Runnable action) {
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+        action.run();
+        return statistics;
+    }
 }
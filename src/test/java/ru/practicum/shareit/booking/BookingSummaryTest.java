@@ -0,0 +1,140 @@
+package ru.practicum.shareit.booking;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingSummaryDto;
+import ru.practicum.shareit.booking.dto.IncomingBookingDto;
+import ru.practicum.shareit.booking.model.BookingState;
+import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.booking.storage.BookingQuery;
+import ru.practicum.shareit.booking.storage.BookingRepository;
+import ru.practicum.shareit.booking.utils.BookingSummaryCache;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.user.dto.UserDto;
+import ru.practicum.shareit.user.service.UserService;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Not transactional, so the counters see committed writes as they would in production; every user gets
+ * a unique email.
+ */
+@SpringBootTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class BookingSummaryTest {
+    private final BookingService bookingService;
+    private final BookingSummaryCache summaryCache;
+    private final BookingRepository bookingRepository;
+    private final UserService userService;
+    private final ItemService itemService;
+
+    private UserDto newUser() {
+        String name = UUID.randomUUID().toString();
+        return userService.addUser(UserDto.builder()
+                .name(name)
+                .email(name + "@summary.test")
+                .build());
+    }
+
+    private BookingDto book(ItemDto item, int bookerId, int day) {
+        LocalDateTime start = LocalDateTime.now().plusDays(day);
+        return bookingService.create(IncomingBookingDto.builder()
+                .itemId(item.getId())
+                .start(start)
+                .end(start.plusHours(2))
+                .build(), bookerId);
+    }
+
+    private void assertMatchesCounts(BookingSummaryDto summary, int bookerId) {
+        long[] expected = new long[BookingState.values().length];
+        for (BookingState state : BookingState.values()) {
+            expected[state.ordinal()] = bookingService.countBookings(state.name(), bookerId);
+        }
+        Assertions.assertArrayEquals(expected, new long[]{summary.getAll(), summary.getCurrent(), summary.getPast(),
+                summary.getFuture(), summary.getWaiting(), summary.getRejected(), summary.getCancelled(),
+                summary.getExpired()});
+    }
+
+    @Test
+    public void summaryShouldBeLoadedOnceAndFollowBookingWrites() {
+        UserDto owner = newUser();
+        UserDto booker = newUser();
+        ItemDto item = itemService.create(ItemDto.builder()
+                .name("Kayak")
+                .description("Summary test kayak")
+                .available(true)
+                .build(), owner.getId());
+        BookingDto first = book(item, booker.getId(), 1);
+        BookingDto second = book(item, booker.getId(), 2);
+        book(item, booker.getId(), 3);
+
+        long loads = summaryCache.getLoads();
+        BookingSummaryDto summary = bookingService.getSummary(booker.getId());
+        Assertions.assertEquals(3, summary.getAll());
+        Assertions.assertEquals(3, summary.getFuture());
+        Assertions.assertEquals(3, summary.getWaiting());
+        assertMatchesCounts(summary, booker.getId());
+        Assertions.assertEquals(summary, bookingService.getSummaryOwner(owner.getId()));
+        Assertions.assertEquals(loads + 2, summaryCache.getLoads());
+
+        bookingService.update(first.getId(), owner.getId(), true);
+        bookingService.update(second.getId(), booker.getId(), false);
+        book(item, booker.getId(), 4);
+        long hits = summaryCache.getHits();
+        summary = bookingService.getSummary(booker.getId());
+        Assertions.assertEquals(4, summary.getAll());
+        Assertions.assertEquals(2, summary.getWaiting());
+        Assertions.assertEquals(1, summary.getCancelled());
+        assertMatchesCounts(summary, booker.getId());
+        Assertions.assertEquals(summary, bookingService.getSummaryOwner(owner.getId()));
+        Assertions.assertEquals(loads + 2, summaryCache.getLoads());
+        Assertions.assertEquals(hits + 2, summaryCache.getHits());
+    }
+
+    @Test
+    public void summaryShouldBeReloadedOnceABookingStarts() {
+        UserDto owner = newUser();
+        UserDto booker = newUser();
+        ItemDto item = itemService.create(ItemDto.builder()
+                .name("Tent")
+                .description("Summary test tent")
+                .available(true)
+                .build(), owner.getId());
+        BookingDto booking = book(item, booker.getId(), 1);
+        bookingService.getSummary(booker.getId());
+
+        LocalDateTime later = booking.getStart().plusHours(1);
+        long loads = summaryCache.getLoads();
+        BookingSummaryDto summary = summaryCache.get(BookingQuery.Role.BOOKER, booker.getId(), later,
+                () -> bookingRepository.countByState(BookingQuery.Role.BOOKER, booker.getId(), later));
+        Assertions.assertEquals(loads + 1, summaryCache.getLoads());
+        Assertions.assertEquals(1, summary.getCurrent());
+        Assertions.assertEquals(0, summary.getFuture());
+    }
+
+    @Test
+    public void writesShouldOnlyKeepCountersOfUsersWhoReadTheirSummary() {
+        UserDto owner = newUser();
+        UserDto booker = newUser();
+        ItemDto item = itemService.create(ItemDto.builder()
+                .name("Sled")
+                .description("Summary test sled")
+                .available(true)
+                .build(), owner.getId());
+        int slots = summaryCache.size();
+        BookingDto booking = book(item, booker.getId(), 1);
+        bookingService.update(booking.getId(), owner.getId(), true);
+        Assertions.assertEquals(slots, summaryCache.size());
+
+        bookingService.getSummary(booker.getId());
+        book(item, booker.getId(), 2);
+        Assertions.assertEquals(slots + 1, summaryCache.size());
+        Assertions.assertEquals(2, bookingService.getSummary(booker.getId()).getAll());
+    }
+}
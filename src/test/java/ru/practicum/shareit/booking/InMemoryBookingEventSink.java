@@ -0,0 +1,32 @@
+package ru.practicum.shareit.booking;
+
+import ru.practicum.shareit.booking.model.BookingEvent;
+import ru.practicum.shareit.booking.utils.BookingEventSink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects published events in memory; fails the next publish on request.
+ */
+public class InMemoryBookingEventSink implements BookingEventSink {
+    private final List<BookingEvent> events = new ArrayList<>();
+    private boolean failNext;
+
+    @Override
+    public synchronized void publish(List<BookingEvent> batch) {
+        if (failNext) {
+            failNext = false;
+            throw new IllegalStateException("Sink is unavailable");
+        }
+        events.addAll(batch);
+    }
+
+    public synchronized List<BookingEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    public synchronized void failNext() {
+        failNext = true;
+    }
+}
@@ -7,7 +7,6 @@ import org.springframework.boot.test.autoconfigure.json.JsonTest;
 import org.springframework.boot.test.json.JacksonTester;
 import org.springframework.boot.test.json.JsonContent;
 import ru.practicum.shareit.booking.model.BookingStatus;
-import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.user.dto.UserDto;
 
 import javax.validation.Validation;
@@ -39,10 +38,9 @@ public class BookingDtoTest {
                 .email("user@email.com")
                 .build();
 
-        ItemDto itemDto = ItemDto.builder()
+        ShortItemInfo itemInfo = ShortItemInfo.builder()
                 .id(1)
                 .name("ItemName")
-                .description("ItemDescription")
                 .available(true)
                 .build();
 
@@ -50,7 +48,7 @@ public class BookingDtoTest {
                 .id(1)
                 .start(LocalDateTime.of(2023, 1, 2, 3, 4))
                 .end(LocalDateTime.of(2024, 1, 2, 3, 4))
-                .item(itemDto)
+                .item(itemInfo)
                 .booker(userDto)
                 .status(BookingStatus.WAITING)
                 .build();
@@ -64,6 +62,9 @@ public class BookingDtoTest {
         assertThat(result).extractingJsonPathStringValue("$.end").isEqualTo("2024-01-02T03:04:00");
         assertThat(result).extractingJsonPathValue("$.requestId").isEqualTo(null);
         assertThat(result).extractingJsonPathStringValue("$.status").isEqualTo("WAITING");
+        assertThat(result).extractingJsonPathStringValue("$.item.name").isEqualTo("ItemName");
+        assertThat(result).doesNotHaveJsonPath("$.item.description");
+        assertThat(result).doesNotHaveJsonPath("$.item.comments");
 
 
     }
@@ -0,0 +1,81 @@
+package ru.practicum.shareit.booking.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class IntervalTreeTest {
+    private final LocalDateTime base = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    private LocalDateTime at(int hours) {
+        return base.plusHours(hours);
+    }
+
+    @Test
+    public void shouldDetectOverlapsAsHalfOpenIntervals() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        tree.insert(at(10), at(20), 1);
+        tree.insert(at(30), at(40), 2);
+        Assertions.assertTrue(tree.overlaps(at(15), at(16)));
+        Assertions.assertTrue(tree.overlaps(at(5), at(35)));
+        Assertions.assertFalse(tree.overlaps(at(20), at(30)));
+        Assertions.assertFalse(tree.overlaps(at(0), at(10)));
+        Assertions.assertFalse(tree.overlaps(at(40), at(50)));
+    }
+
+    @Test
+    public void shouldRemoveIntervalByStartAndValue() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        tree.insert(at(10), at(20), 1);
+        tree.insert(at(10), at(12), 2);
+        Assertions.assertFalse(tree.remove(at(10), v -> v == 3));
+        Assertions.assertTrue(tree.remove(at(10), v -> v == 1));
+        Assertions.assertEquals(1, tree.size());
+        Assertions.assertFalse(tree.overlaps(at(12), at(20)));
+        Assertions.assertEquals(List.of(2), tree.findOverlapping(at(0), at(30)));
+    }
+
+    @Test
+    public void shouldRemoveIntervalsEndedByTime() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        tree.insert(at(0), at(10), 1);
+        tree.insert(at(5), at(30), 2);
+        tree.insert(at(10), at(20), 3);
+        tree.insert(at(10), at(25), 4);
+        tree.insert(at(40), at(50), 5);
+        Assertions.assertEquals(2, tree.removeEndedBy(at(20)));
+        Assertions.assertEquals(3, tree.size());
+        Assertions.assertEquals(List.of(2, 4, 5), tree.findOverlapping(at(0), at(60)));
+        Assertions.assertFalse(tree.overlaps(at(30), at(40)));
+        Assertions.assertEquals(0, tree.removeEndedBy(at(20)));
+    }
+
+    @Test
+    public void shouldMatchBruteForceOnRandomIntervals() {
+        Random random = new Random(42);
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<int[]> intervals = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(10000);
+            int[] interval = {start, start + 1 + random.nextInt(50), i};
+            intervals.add(interval);
+            tree.insert(at(interval[0]), at(interval[1]), i);
+        }
+        for (int i = 0; i < 500; i++) {
+            int[] removed = intervals.remove(random.nextInt(intervals.size()));
+            Assertions.assertTrue(tree.remove(at(removed[0]), v -> v == removed[2]));
+        }
+        for (int i = 0; i < 1000; i++) {
+            int start = random.nextInt(10100);
+            int end = start + 1 + random.nextInt(30);
+            long expected = intervals.stream().filter(v -> v[0] < end && v[1] > start).count();
+            Assertions.assertEquals(expected > 0, tree.overlaps(at(start), at(end)));
+            Assertions.assertEquals(expected, tree.findOverlapping(at(start), at(end)).size());
+        }
+        Assertions.assertEquals(intervals.size(), tree.size());
+    }
+}
@@ -0,0 +1,138 @@
+package ru.practicum.shareit.item;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.shareit.ShareItApp;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.item.utils.ItemSearchIndex;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ItemService.search with a window, the path behind GET /items/search with start and end: the search
+ * index match, the rank-ordered free checks against bookings_item_status_start_end_idx and the page read,
+ * on 100k items and 1M bookings in the test profile's H2 database. The latency budget for one page is 50 ms.
+ * Run with
+ * {@code mvn -P benchmark test-compile exec:exec
+ * -Dbenchmark=ru.practicum.shareit.item.FreeItemSearchBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FreeItemSearchBenchmark {
+    private static final String[] WORDS = {"drill", "saw", "ladder", "tent", "bike", "kayak", "grill", "camera"};
+    private static final int INSERT_BATCH = 10_000;
+    private static final int PAGE_SIZE = 10;
+
+    @Param("100000")
+    private int items;
+
+    @Param("1000000")
+    private int bookings;
+
+    private final Random random = new Random(7);
+    private final LocalDateTime base = LocalDateTime.now().plusDays(1).truncatedTo(ChronoUnit.DAYS);
+    private ConfigurableApplicationContext context;
+    private ItemService itemService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ShareItApp.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .run("--spring.jpa.show-sql=false",
+                        "--spring.jpa.properties.hibernate.generate_statistics=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.ru.practicum.shareit=WARN",
+                        "--logging.level.org.springframework.transaction.interceptor=WARN",
+                        "--logging.level.org.springframework.orm.jpa.JpaTransactionManager=WARN");
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("INSERT INTO users (id, name, email) VALUES (1, 'owner', 'owner@bench'), " +
+                "(2, 'booker', 'booker@bench')");
+        List<Object[]> rows = new ArrayList<>();
+        for (int id = 1; id <= items; id++) {
+            String word = WORDS[id % WORDS.length];
+            rows.add(new Object[]{id, word + " " + id, "A " + word + " for rent"});
+            if (rows.size() == INSERT_BATCH || id == items) {
+                jdbcTemplate.batchUpdate("INSERT INTO items (id, name, description, available, owner_id, " +
+                        "request_id) VALUES (?, ?, ?, TRUE, 1, 0)", rows);
+                rows.clear();
+            }
+        }
+        for (int id = 1; id <= bookings; id++) {
+            LocalDateTime start = base.plusHours(random.nextInt(365 * 24));
+            LocalDateTime end = start.plusHours(1 + random.nextInt(72));
+            rows.add(new Object[]{id, Timestamp.valueOf(start), Timestamp.valueOf(end), 1 + random.nextInt(items),
+                    id % 4 == 0 ? "WAITING" : "APPROVED"});
+            if (rows.size() == INSERT_BATCH || id == bookings) {
+                jdbcTemplate.batchUpdate("INSERT INTO bookings (id, start_date, end_date, item_id, booker_id, " +
+                        "status) VALUES (?, ?, ?, ?, 2, ?)", rows);
+                rows.clear();
+            }
+        }
+        context.getBean(ItemSearchIndex.class).rebuild();
+        itemService = context.getBean(ItemService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int firstPage() {
+        return page(WORDS[random.nextInt(WORDS.length)], 0);
+    }
+
+    @Benchmark
+    public int deepPage() {
+        return page(WORDS[random.nextInt(WORDS.length)], 100);
+    }
+
+    @Benchmark
+    public int typedPrefix() {
+        String word = WORDS[random.nextInt(WORDS.length)];
+        return page(word.substring(0, 3), 0);
+    }
+
+    private int page(String text, int page) {
+        LocalDateTime start = base.plusDays(random.nextInt(365));
+        Collection<ItemDto> found = itemService.search(text, start, start.plusDays(1), page, PAGE_SIZE);
+        return found.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FreeItemSearchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
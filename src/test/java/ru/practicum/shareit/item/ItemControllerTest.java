@@ -5,15 +5,20 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import ru.practicum.shareit.booking.dto.TimeSlot;
 import ru.practicum.shareit.exceptions.NotFoundException;
 import ru.practicum.shareit.exceptions.ValidatonException;
 import ru.practicum.shareit.item.dto.CommentDto;
+import ru.practicum.shareit.item.dto.ItemAvailabilityDto;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.item.service.ItemService;
 import ru.practicum.shareit.user.model.User;
+import ru.practicum.shareit.utils.IdempotencyProperties;
+import ru.practicum.shareit.utils.IdempotencyStore;
 
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
@@ -30,6 +35,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 
 @WebMvcTest(controllers = ItemController.class)
+@Import({IdempotencyStore.class, IdempotencyProperties.class})
 public class ItemControllerTest {
     @Autowired
     ObjectMapper mapper;
@@ -187,6 +193,53 @@ public class ItemControllerTest {
                 .andExpect(jsonPath("$.available", is(itemDto.getAvailable())));
     }
 
+    @Test
+    public void searchFreeItemsTest() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2030, 1, 5, 0, 0);
+        when(itemService.search("drill", start, start.plusDays(1), 0, 10)).thenReturn(List.of(itemDto));
+        mvc.perform(get("/items/search")
+                        .queryParam("text", "drill")
+                        .queryParam("start", "2030-01-05T00:00:00")
+                        .queryParam("end", "2030-01-06T00:00:00")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].id", is(itemDto.getId()), int.class));
+        mvc.perform(get("/items/search")
+                        .queryParam("text", "drill")
+                        .queryParam("start", "2030-01-05T00:00:00")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getAvailability() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2030, 1, 1, 10, 0);
+        LocalDateTime to = from.plusHours(4);
+        when(itemService.getAvailability(1, from, to)).thenReturn(ItemAvailabilityDto.builder()
+                .itemId(1)
+                .from(from)
+                .to(to)
+                .busy(List.of(new TimeSlot(from.plusHours(1), from.plusHours(2))))
+                .free(List.of(new TimeSlot(from, from.plusHours(1)), new TimeSlot(from.plusHours(2), to)))
+                .build());
+        mvc.perform(get("/items/1/availability")
+                        .queryParam("from", "2030-01-01T10:00:00")
+                        .queryParam("to", "2030-01-01T14:00:00")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.busy.length()", is(1)))
+                .andExpect(jsonPath("$.busy[0].start", is("2030-01-01T11:00:00")))
+                .andExpect(jsonPath("$.free[1].end", is("2030-01-01T14:00:00")));
+    }
+
+    @Test
+    public void getAvailabilityWithoutWindow() throws Exception {
+        mvc.perform(get("/items/1/availability")
+                        .queryParam("from", "2030-01-01T10:00:00")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
     // ExceptionsHandlerTests (for maximise coverage)
     @Test
     public void notFoundExceptionTest() throws Exception {
@@ -1,6 +1,8 @@
 package ru.practicum.shareit.item;
 
 import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,33 +11,48 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.PageRequest;
 import ru.practicum.shareit.booking.dto.BookingDto;
 import ru.practicum.shareit.booking.dto.IncomingBookingDto;
+import ru.practicum.shareit.booking.dto.TimeSlot;
+import ru.practicum.shareit.booking.model.Booking;
+import ru.practicum.shareit.booking.model.BookingStatus;
 import ru.practicum.shareit.booking.service.BookingService;
 import ru.practicum.shareit.exceptions.NotAllowedException;
 import ru.practicum.shareit.exceptions.NotFoundException;
 import ru.practicum.shareit.exceptions.ValidatonException;
 import ru.practicum.shareit.item.dto.CommentDto;
+import ru.practicum.shareit.item.dto.ItemAvailabilityDto;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.item.service.ItemService;
 import ru.practicum.shareit.item.utils.ItemMapper;
+import ru.practicum.shareit.item.utils.ItemSearchIndex;
 import ru.practicum.shareit.user.dto.UserDto;
 import ru.practicum.shareit.user.model.User;
 import ru.practicum.shareit.user.service.UserService;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
+import java.lang.management.ManagementFactory;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import static java.lang.Thread.sleep;
+import static java.util.stream.Collectors.toList;
 
-@SpringBootTest
+@SpringBootTest(properties = "spring.jmx.enabled=true")
 @Transactional
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class ItemServiceTest {
     private final ItemService itemService;
+    private final ItemSearchIndex searchIndex;
     private final UserService userService;
     private final BookingService bookingService;
+    private final EntityManager entityManager;
 
     private User user = User.builder()
             .id(10)
@@ -135,6 +152,7 @@ public class ItemServiceTest {
         itemService.create(itemDto1, newUserDto.getId());
         itemService.create(itemDto2, newUserDto.getId());
         Assertions.assertEquals(itemService.getAllItemsOfUser(newUserDto.getId(), 0, 10).size(), 3);
+        Assertions.assertEquals(3, itemService.countItemsOfUser(newUserDto.getId()));
     }
 
     @Test
@@ -152,6 +170,155 @@ public class ItemServiceTest {
         Assertions.assertEquals(1, itemService.search("String for search", 0, 10).size());
     }
 
+    @Test
+    public void searchShouldMatchWordPrefixesOfAvailableItemsAndFollowWrites() throws JMException {
+        ItemDto hidden = itemService.create(ItemDto.builder()
+                .name("Hidden")
+                .description("Zanzibar hammock")
+                .available(false)
+                .build(), newUserDto.getId());
+        ItemDto shown = itemService.create(ItemDto.builder()
+                .name("Zanzibar hammock")
+                .description("Cotton, two persons")
+                .available(true)
+                .build(), newUserDto.getId());
+
+        Assertions.assertEquals(List.of(shown.getId()), ids(itemService.search("zanzibar", 0, 10)));
+        Assertions.assertEquals(List.of(shown.getId()), ids(itemService.search("HAMMOCK zanz", 0, 10)));
+        Assertions.assertEquals(List.of(), ids(itemService.search("zanzibar silk", 0, 10)));
+
+        itemService.update(hidden.getId(), ItemDto.builder().available(true).build(), newUserDto.getId());
+        Assertions.assertEquals(List.of(shown.getId(), hidden.getId()), ids(itemService.search("zanzibar", 0, 10)));
+        Assertions.assertEquals(List.of(hidden.getId()), ids(itemService.search("zanzibar", 1, 1)));
+        itemService.update(shown.getId(), ItemDto.builder().name("Bali hammock").build(), newUserDto.getId());
+        itemService.delete(hidden.getId(), newUserDto.getId());
+        Assertions.assertEquals(List.of(), ids(itemService.search("zanzibar", 0, 10)));
+        Assertions.assertEquals(List.of(shown.getId()), ids(itemService.search("bali", 0, 10)));
+
+        ObjectName indexName = new ObjectName("ru.practicum.shareit:type=ItemSearchIndex");
+        Assertions.assertTrue((Integer) ManagementFactory.getPlatformMBeanServer()
+                .invoke(indexName, "rebuild", null, null) > 0);
+        Assertions.assertEquals(List.of(shown.getId()), ids(itemService.search("bali hammock", 0, 10)));
+    }
+
+    @Test
+    public void searchShouldRankNameMatchesFirstStemWordsAndHighlightThem() {
+        ItemDto inDescription = itemService.create(ItemDto.builder()
+                .name("Toolbox")
+                .description("Bits for <any> cordless gimlet, gimleted twice")
+                .available(true)
+                .build(), newUserDto.getId());
+        ItemDto inName = itemService.create(ItemDto.builder()
+                .name("Cordless gimlets")
+                .description("Two batteries")
+                .available(true)
+                .build(), newUserDto.getId());
+        ItemDto russian = itemService.create(ItemDto.builder()
+                .name("Широкое долото")
+                .description("Рубит бетон широким долотом")
+                .available(true)
+                .build(), newUserDto.getId());
+
+        Assertions.assertEquals(List.of(inName.getId(), inDescription.getId()),
+                ids(itemService.search("gimleting", 0, 10)));
+        Assertions.assertEquals(List.of(inName.getId()), ids(itemService.search("gimlet battery", 0, 10)));
+        Assertions.assertEquals(List.of(russian.getId()), ids(itemService.search("долота", 0, 10)));
+
+        List<ItemDto> found = new ArrayList<>(itemService.search("gimlet", 0, 10));
+        Assertions.assertEquals("Cordless <em>gimlets</em>", found.get(0).getHighlight().getName());
+        Assertions.assertNull(found.get(0).getHighlight().getDescription());
+        Assertions.assertEquals("Bits for &lt;any&gt; cordless <em>gimlet</em>, <em>gimleted</em> twice",
+                found.get(1).getHighlight().getDescription());
+        Assertions.assertEquals("<em>Широкое</em> <em>долото</em>",
+                itemService.search("широкие долота", 0, 10).iterator().next().getHighlight().getName());
+    }
+
+    @Test
+    public void searchShouldMatchTheLastWordAsTyped() {
+        ItemDto wobbling = itemService.create(ItemDto.builder()
+                .name("Wobbling trowel")
+                .description("Plasters uneven walls")
+                .available(true)
+                .build(), newUserDto.getId());
+
+        Assertions.assertEquals(List.of(wobbling.getId()), ids(itemService.search("wobbli", 0, 10)));
+        Assertions.assertEquals(List.of(wobbling.getId()), ids(itemService.search("trowel wobbli", 0, 10)));
+        Assertions.assertEquals(List.of(wobbling.getId()), ids(itemService.search("wobbles", 0, 10)));
+        Assertions.assertEquals("<em>Wobbling</em> trowel",
+                itemService.search("wobbli", 0, 10).iterator().next().getHighlight().getName());
+    }
+
+    private List<Integer> ids(Collection<ItemDto> items) {
+        return items.stream().map(ItemDto::getId).collect(toList());
+    }
+
+    @Test
+    public void searchWithWindowShouldSkipItemsWithApprovedOverlaps() {
+        UserDto booker = userService.addUser(userDto2);
+        LocalDateTime saturday = LocalDateTime.now().plusDays(7).truncatedTo(ChronoUnit.DAYS);
+        List<ItemDto> drills = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            drills.add(itemService.create(ItemDto.builder()
+                    .name("Perforator " + i)
+                    .description("Cordless perforator")
+                    .available(true)
+                    .build(), newUserDto.getId()));
+        }
+        BookingDto approved = bookingService.create(IncomingBookingDto.builder()
+                .itemId(drills.get(0).getId())
+                .start(saturday.plusHours(10))
+                .end(saturday.plusHours(12))
+                .build(), booker.getId());
+        bookingService.update(approved.getId(), newUserDto.getId(), true);
+        bookingService.create(IncomingBookingDto.builder()
+                .itemId(drills.get(1).getId())
+                .start(saturday.plusHours(10))
+                .end(saturday.plusHours(12))
+                .build(), booker.getId());
+        BookingDto approvedBefore = bookingService.create(IncomingBookingDto.builder()
+                .itemId(drills.get(2).getId())
+                .start(saturday.minusHours(2))
+                .end(saturday)
+                .build(), booker.getId());
+        bookingService.update(approvedBefore.getId(), newUserDto.getId(), true);
+
+        Collection<ItemDto> found = itemService.search("perforator", saturday, saturday.plusDays(1), 0, 10);
+        Assertions.assertEquals(List.of(drills.get(1).getId(), drills.get(2).getId(), drills.get(3).getId()),
+                found.stream().map(ItemDto::getId).sorted().collect(toList()));
+        Assertions.assertEquals(4, itemService.search("perforator", saturday.plusDays(1), saturday.plusDays(2), 0, 10)
+                .size());
+        Assertions.assertThrows(ValidatonException.class,
+                () -> itemService.search("perforator", saturday, saturday, 0, 10));
+    }
+
+    @Test
+    public void searchWithWindowShouldKeepCheckingMatchesUntilThePageIsFull() {
+        UserDto booker = userService.addUser(userDto2);
+        LocalDateTime start = LocalDateTime.now().plusDays(7);
+        List<Integer> scarifiers = new ArrayList<>();
+        for (int i = 0; i < 103; i++) {
+            scarifiers.add(itemService.create(ItemDto.builder()
+                    .name("Scarifier")
+                    .description("Lawn scarifier")
+                    .available(true)
+                    .build(), newUserDto.getId()).getId());
+        }
+        for (int itemId : scarifiers.subList(0, 101)) {
+            BookingDto booking = bookingService.create(IncomingBookingDto.builder()
+                    .itemId(itemId)
+                    .start(start)
+                    .end(start.plusDays(1))
+                    .build(), booker.getId());
+            bookingService.update(booking.getId(), newUserDto.getId(), true);
+        }
+
+        Assertions.assertEquals(scarifiers.subList(101, 103),
+                ids(itemService.search("scarifier", start, start.plusHours(1), 0, 2)));
+        Assertions.assertEquals(scarifiers.subList(102, 103),
+                ids(itemService.search("scarifier", start, start.plusHours(1), 1, 1)));
+        Assertions.assertEquals(List.of(), ids(itemService.search("scarifier", start, start.plusHours(1), 1, 2)));
+    }
+
     @Test
     public void createCommentTest() {
         ItemMapper itemMapper = new ItemMapper(bookingService, itemService);
@@ -225,4 +392,94 @@ public class ItemServiceTest {
         Assertions.assertThrows(NotFoundException.class,
                 () -> itemService.get(newItemDto.getId(), owner.getId()));
     }
+
+    @Test
+    public void listOfItemsShouldCostFixedNumberOfQueries() {
+        UserDto booker = userService.addUser(userDto2);
+        UserDto bigOwner = userService.addUser(UserDto.builder()
+                .name("BigOwner")
+                .email("big@owner.com")
+                .build());
+        itemService.create(itemDto2, newUserDto.getId());
+        for (ItemDto itemDto : itemDtoGenerator(11)) {
+            ItemDto created = itemService.create(itemDto, bigOwner.getId());
+            bookingService.create(IncomingBookingDto.builder()
+                    .itemId(created.getId())
+                    .start(LocalDateTime.now().plusDays(1))
+                    .end(LocalDateTime.now().plusDays(2))
+                    .build(), booker.getId());
+        }
+        long smallPage = queriesOf(() -> itemService.getAllItemsOfUser(newUserDto.getId(), 0, 10));
+        long bigPage = queriesOf(() -> itemService.getAllItemsOfUser(bigOwner.getId(), 0, 10));
+        Assertions.assertEquals(smallPage, bigPage);
+        Assertions.assertTrue(itemService.getAllItemsOfUser(bigOwner.getId(), 0, 10).stream()
+                .allMatch(item -> item.getNextBooking() != null && item.getLastBooking() == null));
+    }
+
+    @Test
+    public void itemDetailShouldNotInitializeLazyAssociations() {
+        UserDto booker = userService.addUser(userDto2);
+        bookingService.create(IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(LocalDateTime.now().plusDays(1))
+                .end(LocalDateTime.now().plusDays(2))
+                .build(), booker.getId());
+        Statistics statistics = statisticsOf(() -> itemService.get(newItemDto.getId(), newUserDto.getId()));
+        Assertions.assertEquals(0, statistics.getEntityFetchCount());
+        Assertions.assertEquals(1, statistics.getEntityStatistics(User.class.getName()).getLoadCount());
+    }
+
+    @Test
+    public void availabilityShouldMergeBusyPeriodsAndFollowBookingChanges() {
+        UserDto booker = userService.addUser(userDto2);
+        LocalDateTime day = LocalDateTime.now().plusDays(1).truncatedTo(ChronoUnit.HOURS);
+        for (int[] hours : new int[][]{{0, 2}, {2, 3}, {1, 2}, {5, 6}}) {
+            entityManager.persist(Booking.builder()
+                    .start(day.plusHours(hours[0]))
+                    .end(day.plusHours(hours[1]))
+                    .item(entityManager.getReference(Item.class, newItemDto.getId()))
+                    .booker(entityManager.getReference(User.class, booker.getId()))
+                    .status(BookingStatus.WAITING)
+                    .build());
+        }
+        entityManager.flush();
+        ItemAvailabilityDto availability = itemService.getAvailability(newItemDto.getId(),
+                day.minusHours(1), day.plusHours(8));
+        Assertions.assertEquals(List.of(new TimeSlot(day, day.plusHours(3)),
+                new TimeSlot(day.plusHours(5), day.plusHours(6))), availability.getBusy());
+        Assertions.assertEquals(List.of(new TimeSlot(day.minusHours(1), day),
+                new TimeSlot(day.plusHours(3), day.plusHours(5)),
+                new TimeSlot(day.plusHours(6), day.plusHours(8))), availability.getFree());
+
+        BookingDto added = bookingService.create(IncomingBookingDto.builder()
+                .itemId(newItemDto.getId())
+                .start(day.plusHours(3))
+                .end(day.plusHours(4))
+                .build(), booker.getId());
+        Assertions.assertEquals(List.of(new TimeSlot(day.plusHours(2), day.plusHours(4))),
+                itemService.getAvailability(newItemDto.getId(), day.plusHours(2), day.plusHours(5)).getBusy());
+        bookingService.update(added.getId(), newUserDto.getId(), false);
+        Assertions.assertEquals(List.of(new TimeSlot(day.plusHours(2), day.plusHours(3))),
+                itemService.getAvailability(newItemDto.getId(), day.plusHours(2), day.plusHours(5)).getBusy());
+
+        Assertions.assertThrows(ValidatonException.class,
+                () -> itemService.getAvailability(newItemDto.getId(), day, day));
+        Assertions.assertThrows(NotFoundException.class,
+                () -> itemService.getAvailability(Integer.MAX_VALUE, day, day.plusHours(1)));
+    }
+
+    private long queriesOf(Runnable action) {
+        return statisticsOf(action).getPrepareStatementCount();
+    }
+
+    private Statistics statisticsOf(Runnable action) {
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+        action.run();
+        return statistics;
+    }
 }
@@ -8,7 +8,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.context.SpringBootTest;
 import ru.practicum.shareit.exceptions.ItemRequestNotFound;
 import ru.practicum.shareit.item.storage.ItemRepository;
-import ru.practicum.shareit.item.utils.ItemMapper;
+import ru.practicum.shareit.item.utils.ItemDtoAssembler;
 import ru.practicum.shareit.request.service.ItemRequestService;
 import ru.practicum.shareit.request.service.ItemRequestServiceImpl;
 import ru.practicum.shareit.request.storage.ItemRequestRepository;
@@ -29,7 +29,7 @@ public class ItemRequestServiceImplTest {
     private ItemRequestRepository mockItemRequestRepository;
     private ItemRequestService itemRequestService;
     private ItemRequestMapper itemRequestMapper;
-    private ItemMapper itemMapper;
+    private ItemDtoAssembler assembler;
 
 
     @Mock
@@ -54,7 +54,7 @@ public class ItemRequestServiceImplTest {
                 mockItemRequestRepository,
                 mocUserRepository,
                 mocItemRepository,
-                itemMapper);
+                assembler);
         when(mockItemRequestRepository.findById(any(int.class))).thenReturn(Optional.empty());
         when(mocUserRepository.findById(any(int.class))).thenReturn(Optional.of(user));
         Assertions.assertThrows(ItemRequestNotFound.class,
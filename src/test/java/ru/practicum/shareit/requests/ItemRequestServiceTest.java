@@ -1,6 +1,8 @@
 package ru.practicum.shareit.requests;
 
 import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,6 +14,7 @@ import ru.practicum.shareit.request.service.ItemRequestService;
 import ru.practicum.shareit.user.dto.UserDto;
 import ru.practicum.shareit.user.service.UserService;
 
+import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
 
@@ -21,6 +24,7 @@ import java.time.LocalDateTime;
 public class ItemRequestServiceTest {
     private final ItemRequestService itemRequestService;
     private final UserService userService;
+    private final EntityManager entityManager;
     private UserDto userDto1 = UserDto.builder()
             .name("Valera")
             .email("valera@tvoevremya.nastalo")
@@ -54,7 +58,7 @@ public class ItemRequestServiceTest {
     @Test
     public void throwExceptionWhenCreatedWithWrongUserId() {
         Assertions.assertThrows(NotFoundException.class,
-                () -> itemRequestService.create(itemRequestDto, 100, LocalDateTime.now()));
+                () -> itemRequestService.create(itemRequestDto, Integer.MAX_VALUE, LocalDateTime.now()));
     }
 
     @Test
@@ -66,7 +70,7 @@ public class ItemRequestServiceTest {
                 LocalDateTime.of(2024, 1, 2, 3, 4, 5));
         Assertions.assertEquals(2, itemRequestService.getOwnItemRequests(userDto2.getId()).size());
         Assertions.assertThrows(NotFoundException.class,
-                () -> itemRequestService.getOwnItemRequests(100));
+                () -> itemRequestService.getOwnItemRequests(Integer.MAX_VALUE));
     }
 
     @Test
@@ -78,4 +82,20 @@ public class ItemRequestServiceTest {
                 userDto.getId());
         Assertions.assertEquals(itemRequestDto.getDescription(), result.getDescription());
     }
+
+    @Test
+    public void requestListShouldLoadRequestersWithoutSecondarySelects() {
+        UserDto requester1 = userService.addUser(userDto1);
+        UserDto requester2 = userService.addUser(userDto2);
+        itemRequestService.create(itemRequestDto, requester1.getId(), LocalDateTime.now());
+        itemRequestService.create(itemRequestDto, requester2.getId(), LocalDateTime.now());
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+        Assertions.assertEquals(1, itemRequestService.getAllItemRequests(requester1.getId(), 0, 10).size());
+        Assertions.assertEquals(0, statistics.getEntityFetchCount());
+    }
 }
@@ -0,0 +1,135 @@
+package ru.practicum.shareit.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.practicum.shareit.exceptions.ConflictException;
+import ru.practicum.shareit.exceptions.NotFoundException;
+import ru.practicum.shareit.exceptions.ValidatonException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IdempotencyStoreTest {
+    private final IdempotencyProperties properties = new IdempotencyProperties();
+    private final IdempotencyStore store = new IdempotencyStore(properties);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private String create() {
+        return "created-" + calls.incrementAndGet();
+    }
+
+    @Test
+    public void shouldReplayResponseForSameKeyAndRequest() {
+        Assertions.assertEquals("created-1", store.execute("items", 1, "key", "item", this::create));
+        Assertions.assertEquals("created-1", store.execute("items", 1, "key", "item", this::create));
+        Assertions.assertEquals("created-2", store.execute("items", 2, "key", "item", this::create));
+        Assertions.assertEquals("created-3", store.execute("requests", 1, "key", "item", this::create));
+        Assertions.assertEquals("created-4", store.execute("items", 1, null, "item", this::create));
+        Assertions.assertEquals(4, calls.get());
+        Assertions.assertThrows(ConflictException.class,
+                () -> store.execute("items", 1, "key", "other item", this::create));
+        Assertions.assertThrows(ValidatonException.class, () -> store.execute("items", 1, " ", "item", this::create));
+    }
+
+    @Test
+    public void shouldNotKeepFailedResponses() {
+        Assertions.assertThrows(NotFoundException.class, () -> store.execute("items", 1, "key", "item", () -> {
+            throw new NotFoundException("User id=1 not found");
+        }));
+        Assertions.assertEquals("created-1", store.execute("items", 1, "key", "item", this::create));
+    }
+
+    @Test
+    public void shouldDropOldestEntriesAboveLimit() {
+        properties.setMaxEntries(2);
+        store.execute("items", 1, "a", "item", this::create);
+        store.execute("items", 1, "b", "item", this::create);
+        store.execute("items", 1, "c", "item", this::create);
+        Assertions.assertEquals(2, store.size());
+        Assertions.assertEquals("created-3", store.execute("items", 1, "c", "item", this::create));
+        Assertions.assertEquals("created-4", store.execute("items", 1, "a", "item", this::create));
+    }
+
+    @Test
+    public void duplicateShouldGiveUpWaitingAndRunningRequestShouldOutliveOverflow() throws Exception {
+        properties.setMaxEntries(1);
+        properties.setReplayTimeout(Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = executor.submit(() -> store.execute("bookings", 1, "slow", "booking", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return create();
+            }));
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("created-1", store.execute("items", 1, "other", "item", this::create));
+
+            ConflictException conflict = Assertions.assertThrows(ConflictException.class,
+                    () -> store.execute("bookings", 1, "slow", "booking", this::create));
+            Assertions.assertTrue(conflict.getMessage().contains("in progress"));
+
+            release.countDown();
+            Assertions.assertEquals("created-2", first.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("created-2", store.execute("bookings", 1, "slow", "booking", this::create));
+            Assertions.assertEquals(2, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldDropExpiredEntries() throws InterruptedException {
+        properties.setTtl(Duration.ofMillis(1));
+        store.execute("items", 1, "a", "item", this::create);
+        store.execute("items", 1, "b", "item", this::create);
+        Thread.sleep(5);
+        Assertions.assertEquals("created-3", store.execute("items", 1, "b", "item", this::create));
+        Assertions.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void concurrentDuplicatesShouldRunActionOnce() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    go.await();
+                    return store.execute("bookings", 1, "key", "booking", () -> {
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return create();
+                    });
+                }));
+            }
+            ready.await();
+            go.countDown();
+            for (Future<String> result : results) {
+                Assertions.assertEquals("created-1", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(1, calls.get());
+    }
+}